@@ -34,6 +34,7 @@ import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.repository.DrawableRepository;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
+import com.github.adamantcheese.chan.core.saver.ImageSaver;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.service.LastPageNotification;
 import com.github.adamantcheese.chan.ui.service.SavingNotification;
@@ -42,6 +43,7 @@ import com.github.adamantcheese.chan.ui.widget.CancellableSnackbar;
 import com.github.adamantcheese.chan.ui.widget.CancellableToast;
 import com.github.adamantcheese.chan.utils.AndroidUtils;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.BitmapPool;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import org.codejargon.feather.Feather;
@@ -75,6 +77,10 @@ public class Chan
     @Inject
     ReportManager reportManager;
 
+    // created at startup so that it can resume album downloads once the app is in the foreground
+    @Inject
+    ImageSaver imageSaver;
+
     private static Feather feather;
 
     public static <T> T instance(Class<T> tClass) {
@@ -262,6 +268,7 @@ public class Chan
     public void onActivityDestroyed(@NonNull Activity activity) {
         BackgroundUtils.cleanup();
         NetUtils.cleanup();
+        BitmapPool.clear();
         CancellableToast.cleanup();
         CancellableSnackbar.cleanup();
     }
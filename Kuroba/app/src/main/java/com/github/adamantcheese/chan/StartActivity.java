@@ -576,6 +576,8 @@ public class StartActivity
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(Chan.ForegroundChangedMessage message) {
         if (!message.inForeground) {
+            // the app may be killed at any point now, don't hold on to anything
+            DatabaseUtils.flushWrites();
             DatabaseUtils.runTaskAsync(databaseLoadableManager.purgeOld());
             File requestedFiles = new File(getCacheDir(), "requested");
             File[] files = requestedFiles.listFiles();
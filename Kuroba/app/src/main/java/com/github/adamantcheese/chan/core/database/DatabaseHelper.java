@@ -24,6 +24,7 @@ import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
+import com.github.adamantcheese.chan.core.model.orm.SavedDownload;
 import com.github.adamantcheese.chan.core.model.orm.SavedReply;
 import com.github.adamantcheese.chan.core.model.orm.SiteModel;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -69,7 +70,7 @@ public class DatabaseHelper
     private static final String TAG = "DatabaseHelper";
 
     private static final String DATABASE_NAME = "ChanDB";
-    private static final int DATABASE_VERSION = 54;
+    private static final int DATABASE_VERSION = 56;
 
     // All of these are NOT instantiated in the constructor because it is possible that they are failed to be created before an upgrade
     // Therefore they are instantiated upon request instead; this doesn't guarantee a lack of exceptions however
@@ -80,6 +81,7 @@ public class DatabaseHelper
     private Dao<PostHide, Integer> postHideDao;
     private Dao<Filter, Integer> filterDao;
     private Dao<SiteModel, Integer> siteDao;
+    private Dao<SavedDownload, Integer> savedDownloadDao;
 
     public DatabaseHelper() {
         super(getAppContext(), DATABASE_NAME, null, DATABASE_VERSION);
@@ -146,6 +148,13 @@ public class DatabaseHelper
         return siteDao;
     }
 
+    public Dao<SavedDownload, Integer> getSavedDownloadDao() {
+        if (savedDownloadDao == null) {
+            savedDownloadDao = getDaoForClass(SavedDownload.class);
+        }
+        return savedDownloadDao;
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database, ConnectionSource connectionSource) {
         try {
@@ -165,6 +174,7 @@ public class DatabaseHelper
         TableUtils.createTable(connectionSource, PostHide.class);
         TableUtils.createTable(connectionSource, Filter.class);
         TableUtils.createTable(connectionSource, SiteModel.class);
+        TableUtils.createTable(connectionSource, SavedDownload.class);
     }
 
     public void dropTables(ConnectionSource connectionSource)
@@ -176,6 +186,7 @@ public class DatabaseHelper
         TableUtils.dropTable(connectionSource, PostHide.class, true);
         TableUtils.dropTable(connectionSource, Filter.class, true);
         TableUtils.dropTable(connectionSource, SiteModel.class, true);
+        TableUtils.dropTable(connectionSource, SavedDownload.class, true);
     }
 
     /**
@@ -585,6 +596,28 @@ public class DatabaseHelper
                 Logger.e(this, "Error upgrading to version 54", e);
             }
         }
+
+        if (oldVersion < 55) {
+            try {
+                // album downloads are kept in the database, so they can be resumed
+                TableUtils.createTable(connectionSource, SavedDownload.class);
+            } catch (Exception e) {
+                Logger.e(this, "Error upgrading to version 55", e);
+            }
+        }
+
+        if (oldVersion < 56) {
+            try {
+                // one index for how hides are actually looked up, instead of one per column
+                getPostHideDao().executeRawNoArgs(
+                        "CREATE INDEX IF NOT EXISTS posthide_site_board_no_idx ON posthide(site, board, no);");
+                getPostHideDao().executeRawNoArgs("DROP INDEX IF EXISTS posthide_site_idx;");
+                getPostHideDao().executeRawNoArgs("DROP INDEX IF EXISTS posthide_board_idx;");
+                getPostHideDao().executeRawNoArgs("DROP INDEX IF EXISTS posthide_no_idx;");
+            } catch (Exception e) {
+                Logger.e(this, "Error upgrading to version 56", e);
+            }
+        }
     }
 
     @Override
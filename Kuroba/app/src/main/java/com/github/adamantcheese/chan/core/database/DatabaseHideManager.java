@@ -14,94 +14,114 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseHideManager {
     private static final long TRIM_TRIGGER = 25000;
     private static final long TRIM_COUNT = 5000;
 
     DatabaseHelper helper;
+    // hides by board, see getBoardHides; boards are only loaded when they're first filtered
+    private final Map<String, Map<Integer, PostHide>> hidesByBoard = new ConcurrentHashMap<>();
 
     public DatabaseHideManager(DatabaseHelper helper) {
         this.helper = helper;
-        DatabaseUtils.runTaskAsync(DatabaseUtils.trimTable(helper.getPostHideDao(), TRIM_TRIGGER, TRIM_COUNT));
+        DatabaseUtils.runTaskAsync(() -> {
+            DatabaseUtils.trimTable(helper.getPostHideDao(), TRIM_TRIGGER, TRIM_COUNT).call();
+            // boards loaded in the meantime may still hold trimmed hides; they're read again when next needed
+            hidesByBoard.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Loads the board's hides in the background if they aren't in memory yet, so that the first filter or parse for
+     * the board doesn't have to wait for the database.
+     */
+    public void preloadBoardHides(int siteId, String board) {
+        if (hidesByBoard.containsKey(boardKey(siteId, board))) return;
+        DatabaseUtils.runTaskAsync(() -> loadBoardHides(siteId, board));
     }
 
     /**
      * Searches for hidden posts in the PostHide table then checks whether there are posts with a reply
-     * to already hidden posts and if there are hides them as well.
+     * to already hidden posts and if there are hides them as well.<br>
+     * Only the first call for a board goes to the database, see {@link #getBoardHides(int, String)}.
      */
     public List<Post> filterHiddenPosts(List<Post> posts, int siteId, String board) {
-        return DatabaseUtils.runTask(() -> {
-            List<Integer> postNoList = new ArrayList<>(posts.size());
-            for (Post post : posts) {
-                postNoList.add(post.no);
-            }
+        Map<Integer, PostHide> boardHides = getBoardHides(siteId, board);
 
-            Map<Integer, Post> postsFastLookupMap = new LinkedHashMap<>();
-            for (Post post : posts) {
-                postsFastLookupMap.put(post.no, post);
-            }
+        Map<Integer, Post> postsFastLookupMap = new LinkedHashMap<>();
+        for (Post post : posts) {
+            postsFastLookupMap.put(post.no, post);
+        }
 
-            applyFiltersToReplies(posts, postsFastLookupMap);
+        applyFiltersToReplies(posts, postsFastLookupMap);
 
-            Map<Integer, PostHide> hiddenPostsLookupMap = getHiddenPosts(siteId, board, postNoList);
+        Map<Integer, PostHide> hiddenPostsLookupMap = new HashMap<>();
+        for (Post post : posts) {
+            PostHide hide = boardHides.get(post.no);
+            if (hide != null) {
+                hiddenPostsLookupMap.put(post.no, hide);
+            }
+        }
 
-            // find replies to hidden posts and add them to the PostHide table in the database
-            // and to the hiddenPostsLookupMap
-            hideRepliesToAlreadyHiddenPosts(postsFastLookupMap, hiddenPostsLookupMap);
+        // find replies to hidden posts and add them to the PostHide table in the database
+        // and to the hiddenPostsLookupMap
+        hideRepliesToAlreadyHiddenPosts(postsFastLookupMap, hiddenPostsLookupMap, boardHides);
 
-            List<Post> resultList = new ArrayList<>();
+        List<Post> resultList = new ArrayList<>();
 
-            // filter out hidden posts
-            for (Post post : postsFastLookupMap.values()) {
-                if (post.filterRemove) {
-                    // this post is already filtered by some custom filter
-                    continue;
-                }
+        // filter out hidden posts
+        for (Post post : postsFastLookupMap.values()) {
+            if (post.filterRemove) {
+                // this post is already filtered by some custom filter
+                continue;
+            }
 
-                PostHide hiddenPost = findHiddenPost(hiddenPostsLookupMap, post, siteId, board);
-                if (hiddenPost != null) {
-                    if (hiddenPost.hide) {
-                        // hide post
-                        Post newPost = rebuildPostWithCustomFilter(post,
-                                0,
-                                true,
-                                false,
-                                false,
-                                hiddenPost.hideRepliesToThisPost,
-                                false
-                        );
-
-                        resultList.add(newPost);
-                    } else {
-                        // remove post
-                        if (post.isOP) {
-                            // hide OP post only if the user hid the whole thread
-                            if (!hiddenPost.wholeThread) {
-                                resultList.add(post);
-                            }
+            PostHide hiddenPost = findHiddenPost(hiddenPostsLookupMap, post, siteId, board);
+            if (hiddenPost != null) {
+                if (hiddenPost.hide) {
+                    // hide post
+                    Post newPost = rebuildPostWithCustomFilter(post,
+                            0,
+                            true,
+                            false,
+                            false,
+                            hiddenPost.hideRepliesToThisPost,
+                            false
+                    );
+
+                    resultList.add(newPost);
+                } else {
+                    // remove post
+                    if (post.isOP) {
+                        // hide OP post only if the user hid the whole thread
+                        if (!hiddenPost.wholeThread) {
+                            resultList.add(post);
                         }
                     }
-                } else {
-                    // no record of hidden post in the DB
-                    resultList.add(post);
                 }
+            } else {
+                // no record of hidden post in the DB
+                resultList.add(post);
             }
-            //return posts that are NOT hidden
-            return resultList;
-        });
+        }
+        //return posts that are NOT hidden
+        return resultList;
     }
 
     private void hideRepliesToAlreadyHiddenPosts(
-            Map<Integer, Post> postsFastLookupMap, Map<Integer, PostHide> hiddenPostsLookupMap
-    )
-            throws SQLException {
+            Map<Integer, Post> postsFastLookupMap,
+            Map<Integer, PostHide> hiddenPostsLookupMap,
+            Map<Integer, PostHide> boardHides
+    ) {
 
         List<PostHide> newHiddenPosts = new ArrayList<>();
 
@@ -121,6 +141,7 @@ public class DatabaseHideManager {
 
                     PostHide newHiddenPost = PostHide.hidePost(post, false, parentHiddenPost.hide, true);
                     hiddenPostsLookupMap.put(newHiddenPost.no, newHiddenPost);
+                    boardHides.put(newHiddenPost.no, newHiddenPost);
                     newHiddenPosts.add(newHiddenPost);
 
                     //post is already hidden no need to check other replies
@@ -133,9 +154,13 @@ public class DatabaseHideManager {
             return;
         }
 
-        for (PostHide postHide : newHiddenPosts) {
-            helper.getPostHideDao().createIfNotExists(postHide);
-        }
+        // already in memory, so the database can catch up whenever
+        DatabaseUtils.runTaskAsync(() -> {
+            for (PostHide postHide : newHiddenPosts) {
+                helper.getPostHideDao().createIfNotExists(postHide);
+            }
+            return null;
+        });
     }
 
     private void applyFiltersToReplies(List<Post> posts, Map<Integer, Post> postsFastLookupMap) {
@@ -154,26 +179,52 @@ public class DatabaseHideManager {
         }
     }
 
-    private Map<Integer, PostHide> getHiddenPosts(int siteId, String board, List<Integer> postNoList)
-            throws SQLException {
+    /**
+     * @return all hides for the board by post number, kept in memory after the first call for the board; the returned
+     * map is live and also written to by this manager
+     */
+    private Map<Integer, PostHide> getBoardHides(int siteId, String board) {
+        Map<Integer, PostHide> hides = hidesByBoard.get(boardKey(siteId, board));
+        if (hides != null) return hides;
+
+        try {
+            return DatabaseUtils.runTask(() -> loadBoardHides(siteId, board));
+        } catch (Exception e) {
+            Logger.e(this, "Failed to load post hides for /" + board + "/", e);
+            return new HashMap<>();
+        }
+    }
 
-        Set<PostHide> hiddenInDatabase = new HashSet<>(helper.getPostHideDao()
-                .queryBuilder()
-                .where()
-                .in("no", postNoList)
-                .and()
-                .eq("site", siteId)
-                .and()
-                .eq("board", board)
-                .query());
+    // only run this on the database thread, so that it can't miss a hide that is being written
+    private Map<Integer, PostHide> loadBoardHides(int siteId, String board)
+            throws SQLException {
+        String key = boardKey(siteId, board);
+        Map<Integer, PostHide> hides = hidesByBoard.get(key);
+        if (hides != null) return hides;
+
+        List<PostHide> inDatabase =
+                helper.getPostHideDao().queryBuilder().where().eq("site", siteId).and().eq("board", board).query();
+        hides = new ConcurrentHashMap<>();
+        for (PostHide postHide : inDatabase) {
+            hides.put(postHide.no, postHide);
+        }
+        hidesByBoard.put(key, hides);
+        return hides;
+    }
 
-        Map<Integer, PostHide> hiddenMap = new HashMap<>();
+    private static String boardKey(int siteId, String board) {
+        return siteId + "/" + board;
+    }
 
-        for (PostHide postHide : hiddenInDatabase) {
-            hiddenMap.put(postHide.no, postHide);
+    // keeps memory in step with the database for boards that are already loaded; unloaded ones read the database later
+    private void updateCachedHide(PostHide hide, boolean add) {
+        Map<Integer, PostHide> hides = hidesByBoard.get(boardKey(hide.site, hide.board));
+        if (hides == null) return;
+        if (add) {
+            hides.put(hide.no, hide);
+        } else {
+            hides.remove(hide.no);
         }
-
-        return hiddenMap;
     }
 
     /**
@@ -293,6 +344,7 @@ public class DatabaseHideManager {
             }
 
             helper.getPostHideDao().createIfNotExists(hide);
+            updateCachedHide(hide, true);
 
             return null;
         };
@@ -303,6 +355,7 @@ public class DatabaseHideManager {
             for (PostHide postHide : hideList) {
                 if (contains(postHide)) continue;
                 helper.getPostHideDao().createIfNotExists(postHide);
+                updateCachedHide(postHide, true);
             }
 
             return null;
@@ -326,6 +379,7 @@ public class DatabaseHideManager {
                         .eq("board", postHide.board);
 
                 deleteBuilder.delete();
+                updateCachedHide(postHide, false);
             }
 
             return null;
@@ -351,14 +405,23 @@ public class DatabaseHideManager {
     public Callable<Void> clearAllThreadHides() {
         return () -> {
             TableUtils.clearTable(helper.getConnectionSource(), PostHide.class);
+            hidesByBoard.clear();
 
             return null;
         };
     }
 
-    public List<PostHide> getRemovedPostsWithThreadNo(int threadNo)
-            throws SQLException {
-        return helper.getPostHideDao().queryBuilder().where().eq("thread_no", threadNo).and().eq("hide", false).query();
+    /**
+     * @return the posts that were removed (rather than hidden) in the given thread
+     */
+    public List<PostHide> getRemovedPosts(int siteId, String board, int threadNo) {
+        List<PostHide> removed = new ArrayList<>();
+        for (PostHide postHide : getBoardHides(siteId, board).values()) {
+            if (postHide.threadNo == threadNo && !postHide.hide) {
+                removed.add(postHide);
+            }
+        }
+        return removed;
     }
 
     public Callable<Void> deleteThreadHides(Site site) {
@@ -366,6 +429,10 @@ public class DatabaseHideManager {
             DeleteBuilder<PostHide, Integer> builder = helper.getPostHideDao().deleteBuilder();
             builder.where().eq("site", site.id());
             builder.delete();
+            Iterator<String> keys = hidesByBoard.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(site.id() + "/")) keys.remove();
+            }
 
             return null;
         };
@@ -19,6 +19,7 @@ package com.github.adamantcheese.chan.core.database;
 import android.annotation.SuppressLint;
 
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.ui.theme.Highlightable;
@@ -109,7 +110,7 @@ public class DatabaseLoadableManager {
     }
 
     private Callable<Loadable> getLoadable(final Loadable loadable) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             QueryBuilder<Loadable, Integer> builder = helper.getLoadableDao().queryBuilder();
             List<Loadable> results = builder.where()
                     .eq("site", loadable.siteId)
@@ -131,22 +132,22 @@ public class DatabaseLoadableManager {
             result.lastLoadDate = GregorianCalendar.getInstance().getTime();
             helper.getLoadableDao().update(result);
             return result;
-        };
+        }, Loadable.class);
     }
 
     public Callable<List<Loadable>> getLoadables(Site site) {
-        return () -> helper.getLoadableDao().queryForEq("site", site.id());
+        return DatabaseUtils.touching(() -> helper.getLoadableDao().queryForEq("site", site.id()), Loadable.class);
     }
 
     public Callable<Object> deleteLoadables(List<Loadable> siteLoadables) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             helper.getLoadableDao().delete(siteLoadables);
             return null;
-        };
+        }, Loadable.class);
     }
 
     public Callable<Void> updateLoadable(Loadable updatedLoadable, boolean commit) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             if (updatedLoadable.isThreadMode()) {
                 if (commit) {
                     DatabaseConnection connection = helper.getLoadableDao().startThreadConnection();
@@ -158,7 +159,7 @@ public class DatabaseLoadableManager {
                 }
             }
             return null;
-        };
+        }, Loadable.class);
     }
 
     /**
@@ -166,7 +167,7 @@ public class DatabaseLoadableManager {
      * the database clean and small. Avoids purging pin loadables.
      */
     public Callable<Void> purgeOld() {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             DatabaseConnection connection = helper.getLoadableDao().startThreadConnection();
             Calendar oneMonthAgo = GregorianCalendar.getInstance();
             oneMonthAgo.add(Calendar.MONTH, -1);
@@ -181,27 +182,27 @@ public class DatabaseLoadableManager {
             connection.commit(null);
             helper.getLoadableDao().endThreadConnection(connection);
             return null;
-        };
+        }, Loadable.class, Pin.class);
     }
 
     /**
      * @return A callable that "clears" history by setting the last load date to far in the past for all non-pin associated loadables.
      */
     public Callable<Void> clearHistory() {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             UpdateBuilder<Loadable, Integer> builder =
                     helper.getLoadableDao().updateBuilder().updateColumnValue("lastLoadDate", EPOCH_DATE);
             builder.where().notIn("id", helper.getPinDao().queryBuilder().selectColumns("loadable_id"));
             builder.update();
             return null;
-        };
+        }, Loadable.class, Pin.class);
     }
 
     /**
      * @return A callable that returns a list of history, ignoring pins.
      */
     public Callable<List<History>> getHistory() {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             List<History> history = new ArrayList<>();
             for (Loadable l : helper.getLoadableDao()
                     .queryBuilder()
@@ -217,7 +218,7 @@ public class DatabaseLoadableManager {
                 history.add(new History(l));
             }
             return history;
-        };
+        }, Loadable.class, Pin.class);
     }
 
     public static class History
@@ -40,10 +40,10 @@ public class DatabasePinManager {
             throw new IllegalArgumentException("Pin loadable is not yet in the db");
         }
 
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             helper.getPinDao().create(pin);
             return pin;
-        };
+        }, Pin.class);
     }
 
     public Callable<Void> deletePin(final Pin pin) {
@@ -51,42 +51,42 @@ public class DatabasePinManager {
     }
 
     public Callable<Void> deletePins(final List<Pin> pins) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             helper.getPinDao().delete(pins);
             return null;
-        };
+        }, Pin.class);
     }
 
     public Callable<Pin> updatePin(final Pin pin) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             helper.getPinDao().update(pin);
             return pin;
-        };
+        }, Pin.class);
     }
 
     public Callable<List<Pin>> updatePins(final List<Pin> pins) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             for (Pin pin : pins) {
                 helper.getPinDao().update(pin);
             }
 
             return null;
-        };
+        }, Pin.class);
     }
 
     public Callable<List<Pin>> getPins() {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             List<Pin> list = helper.getPinDao().queryForAll();
             for (int i = 0; i < list.size(); i++) {
                 Pin p = list.get(i);
                 p.loadable = databaseLoadableManager.refreshForeign(p.loadable);
             }
             return list;
-        };
+        }, Pin.class, Loadable.class);
     }
 
     public Callable<Void> deletePinsFromLoadables(List<Loadable> siteLoadables) {
-        return () -> {
+        return DatabaseUtils.touching(() -> {
             Set<Integer> loadableIdSet = new HashSet<>();
 
             for (Loadable loadable : siteLoadables) {
@@ -98,6 +98,6 @@ public class DatabasePinManager {
             builder.delete();
 
             return null;
-        };
+        }, Pin.class);
     }
 }
@@ -0,0 +1,98 @@
+package com.github.adamantcheese.chan.core.database;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.orm.SavedDownload;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The persistent queue for album downloads, see {@link SavedDownload}.
+ */
+public class DatabaseSavedDownloadManager {
+    private static final long TRIM_TRIGGER = 2000;
+    private static final long TRIM_COUNT = 500;
+
+    DatabaseHelper helper;
+
+    public DatabaseSavedDownloadManager(DatabaseHelper helper) {
+        this.helper = helper;
+        DatabaseUtils.runTask(trimFinished());
+    }
+
+    /**
+     * Like {@link DatabaseUtils#trimTable(Dao, long, long)}, but only for finished rows; pending rows are downloads that
+     * are still to be resumed, however old they are.
+     */
+    private Callable<Void> trimFinished() {
+        return () -> {
+            Dao<SavedDownload, Integer> dao = helper.getSavedDownloadDao();
+            try {
+                if (dao.queryBuilder().where().eq("done", true).countOf() > TRIM_TRIGGER) {
+                    QueryBuilder<SavedDownload, Integer> oldest = dao.queryBuilder()
+                            .selectColumns("id")
+                            .orderBy("id", true)
+                            .limit(TRIM_COUNT);
+                    oldest.where().eq("done", true);
+                    DeleteBuilder<SavedDownload, Integer> builder = dao.deleteBuilder();
+                    builder.where().in("id", oldest);
+                    builder.delete();
+                }
+            } catch (SQLException e) {
+                Logger.e("DatabaseManager", "Error trimming table " + dao.getTableName(), e);
+            }
+            return null;
+        };
+    }
+
+    public Callable<SavedDownload> addDownload(SavedDownload download) {
+        return () -> {
+            helper.getSavedDownloadDao().create(download);
+            return download;
+        };
+    }
+
+    public Callable<List<SavedDownload>> getPendingDownloads() {
+        return () -> helper.getSavedDownloadDao().queryBuilder().orderBy("id", true).where().eq("done", false).query();
+    }
+
+    public Callable<SavedDownload> markDone(SavedDownload download, String savedPath) {
+        return () -> {
+            download.done = true;
+            download.savedPath = savedPath;
+            helper.getSavedDownloadDao().update(download);
+            return download;
+        };
+    }
+
+    public Callable<Void> deleteDownload(SavedDownload download) {
+        return () -> {
+            helper.getSavedDownloadDao().delete(download);
+            return null;
+        };
+    }
+
+    /**
+     * @return the finished downloads of a file with the given hash, most recent first
+     */
+    public Callable<List<SavedDownload>> getSavedWithHash(@Nullable String fileHash) {
+        return () -> {
+            if (fileHash == null) return Collections.emptyList();
+            return helper.getSavedDownloadDao()
+                    .queryBuilder()
+                    .orderBy("id", false)
+                    .where()
+                    .eq("done", true)
+                    .and()
+                    .eq("fileHash", fileHash)
+                    .query();
+        };
+    }
+}
@@ -17,6 +17,7 @@
 package com.github.adamantcheese.chan.core.database;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
@@ -24,10 +25,16 @@ import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.misc.TransactionManager;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.adamantcheese.chan.Chan.instance;
 
@@ -35,6 +42,13 @@ public class DatabaseUtils {
     // The database only allows for one connection at a time, so we use this to schedule all database operations.
     private static final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
 
+    // How long a queued write waits for more writes, so that they can all be run in one transaction
+    private static final long WRITE_BEHIND_DELAY_MS = 1000;
+    // Queued writes by the row they write; a later write to the same row replaces the one already queued
+    private static final Map<String, Callable<?>> queuedWrites = new LinkedHashMap<>();
+    @Nullable
+    private static ScheduledFuture<?> scheduledFlush;
+
     /**
      * Summary of the database tables row count, for the developer screen.
      *
@@ -52,6 +66,7 @@ public class DatabaseUtils {
             o += "PostHide rows: " + helper.getPostHideDao().countOf() + "\n";
             o += "Filter rows: " + helper.getFilterDao().countOf() + "\n";
             o += "Site rows: " + helper.getSiteModelDao().countOf() + "\n";
+            o += "SavedDownload rows: " + helper.getSavedDownloadDao().countOf() + "\n";
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -87,10 +102,12 @@ public class DatabaseUtils {
     }
 
     public static <T> void runTaskAsync(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
+        flushWritesFor(taskCallable);
         databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult));
     }
 
     public static <T> T runTask(final Callable<T> taskCallable) {
+        flushWritesFor(taskCallable);
         try {
             return databaseExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {})).get();
         } catch (InterruptedException e) {
@@ -103,6 +120,104 @@ public class DatabaseUtils {
         }
     }
 
+    /**
+     * @return a key for {@link #runWriteBehind(String, Callable)}, for the row with the given id in the given table
+     */
+    public static String row(Class<?> table, int id) {
+        return tablePrefix(table) + id;
+    }
+
+    private static String tablePrefix(Class<?> table) {
+        return table.getSimpleName() + ":";
+    }
+
+    /**
+     * Mark a task as reading or writing the given tables, so that writes to those tables that were queued with
+     * {@link #runWriteBehind(String, Callable)} are run before it. Unmarked tasks don't wait for queued writes.
+     */
+    public static <T> Callable<T> touching(Callable<T> task, Class<?>... tables) {
+        return new TableTask<>(task, tables);
+    }
+
+    /**
+     * Queue a write to a single row, for things that are written often like loadables and pins. Writes are held for a
+     * short time and then run together in one transaction; if the same row is written again in that time, only the
+     * last write is run.<br>
+     * Tasks marked with {@link #touching(Callable, Class[])} for the row's table that are run afterwards are run after
+     * the queued writes, so they never read a row before a write to it that was queued earlier, or have their own write
+     * overwritten by it.
+     *
+     * @param row   the row that is written, see {@link #row(Class, int)}
+     * @param write the write; this is run later, so it should capture the values to write rather than rely on them
+     *              staying the same, unless it's meant to write the latest values
+     */
+    public static synchronized void runWriteBehind(String row, Callable<?> write) {
+        queuedWrites.put(row, write);
+        if (scheduledFlush == null) {
+            scheduledFlush = BackgroundUtils.backgroundScheduledService.schedule(DatabaseUtils::flushWrites,
+                    WRITE_BEHIND_DELAY_MS,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Run any queued writes now, instead of waiting for more; call this when the app goes into the background, so that
+     * nothing is lost if it is killed.
+     */
+    public static synchronized void flushWrites() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (queuedWrites.isEmpty()) return;
+
+        final List<Callable<?>> writes = new ArrayList<>(queuedWrites.values());
+        queuedWrites.clear();
+        databaseExecutor.submit(new DatabaseCallable<Void>(() -> {
+            for (Callable<?> write : writes) {
+                try {
+                    write.call();
+                } catch (Exception e) {
+                    // one bad row shouldn't lose all the others
+                    Logger.e("DatabaseManager", "Error running queued write", e);
+                }
+            }
+            return null;
+        }, result -> {}));
+    }
+
+    private static synchronized void flushWritesFor(Callable<?> task) {
+        if (!(task instanceof TableTask) || queuedWrites.isEmpty()) return;
+
+        for (Class<?> table : ((TableTask<?>) task).tables) {
+            String prefix = tablePrefix(table);
+            for (String row : queuedWrites.keySet()) {
+                if (row.startsWith(prefix)) {
+                    flushWrites();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class TableTask<T>
+            implements Callable<T> {
+        private final Callable<T> task;
+        private final Class<?>[] tables;
+
+        private TableTask(Callable<T> task, Class<?>[] tables) {
+            this.task = task;
+            this.tables = tables;
+        }
+
+        @Override
+        public T call()
+                throws Exception {
+            return task.call();
+        }
+    }
+
     private static class DatabaseCallable<T>
             implements Callable<T> {
         private final Callable<T> task;
@@ -23,6 +23,7 @@ import com.github.adamantcheese.chan.core.database.DatabaseHelper;
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
 import com.github.adamantcheese.chan.core.database.DatabasePinManager;
+import com.github.adamantcheese.chan.core.database.DatabaseSavedDownloadManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSiteManager;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
@@ -112,6 +113,13 @@ public class AppModule {
         return new DatabaseHideManager(helper);
     }
 
+    @Provides
+    @Singleton
+    public DatabaseSavedDownloadManager provideDatabaseSavedDownloadManager(DatabaseHelper helper) {
+        Logger.d(AppModule.DI_TAG, "Database saved download manager");
+        return new DatabaseSavedDownloadManager(helper);
+    }
+
     @Provides
     @Singleton
     public SiteResolver provideSiteResolver(SiteRepository siteRepository) {
@@ -121,9 +129,11 @@ public class AppModule {
 
     @Provides
     @Singleton
-    public ImageSaver provideImageSaver(FileManager fileManager) {
+    public ImageSaver provideImageSaver(
+            FileManager fileManager, DatabaseSavedDownloadManager databaseSavedDownloadManager
+    ) {
         Logger.d(DI_TAG, "Image saver");
-        return new ImageSaver(fileManager);
+        return new ImageSaver(fileManager, databaseSavedDownloadManager);
     }
 
     @Provides
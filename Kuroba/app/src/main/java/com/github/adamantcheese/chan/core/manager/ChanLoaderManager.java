@@ -23,6 +23,7 @@ import androidx.annotation.NonNull;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader.ChanLoaderCallback;
+import com.github.adamantcheese.chan.core.site.loader.ThreadDiskCache;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
 import java.util.HashMap;
@@ -37,7 +38,8 @@ import java.util.Map;
  * as many times as you want as long as you call release an equal amount of times.<br>
  * <br>
  * The internal cache here acts as a sort of cache for recently visited threads, preserving their already processed API
- * responses and allows threads to be returned quickly and switched between with minimal overhead.
+ * responses and allows threads to be returned quickly and switched between with minimal overhead. Threads that have
+ * fallen out of it are still kept on disk for a while by {@link ThreadDiskCache}.
  * <br>
  * In addition, this class acts as a sort of "reply draft" cache; this is effectively the only place that loadables should
  * have a constant reference to them held. As a result, reply drafts are available in the following situations:<br><br>
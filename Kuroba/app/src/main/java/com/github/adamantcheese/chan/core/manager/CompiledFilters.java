@@ -0,0 +1,67 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A set of filters compiled for matching all of them at once, obtained through
+ * {@link FilterEngine#compileFilters(List)}.<br>
+ * Word and "quoted" filters are merged into one {@link FilterAutomaton} per {@link FilterType}, so that each post field
+ * is only scanned once; /regex/ filters and wildcard words still go through java.util.regex.<br>
+ * Immutable, and safe to share between threads.
+ */
+public class CompiledFilters {
+    public final List<Filter> filters;
+
+    // per filter, the part of the filter that couldn't be turned into literals, if any
+    final Pattern[] regexes;
+    // same as above, but case insensitive for /regex/ filters, as used for flag codes
+    final Pattern[] insensitiveRegexes;
+    // per FilterType ordinal
+    final FilterAutomaton[] automata;
+
+    CompiledFilters(
+            List<Filter> filters, Pattern[] regexes, Pattern[] insensitiveRegexes, FilterAutomaton[] automata
+    ) {
+        this.filters = Collections.unmodifiableList(filters);
+        this.regexes = regexes;
+        this.insensitiveRegexes = insensitiveRegexes;
+        this.automata = automata;
+    }
+
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    /**
+     * @return the literal match ranges for all filters in the given text, or null if there are none to look for
+     * @see FilterAutomaton#scan(CharSequence, int)
+     */
+    @Nullable
+    int[] scan(FilterType type, @Nullable CharSequence text) {
+        FilterAutomaton automaton = automata[type.ordinal()];
+        if (text == null || automaton.isEmpty()) return null;
+        return automaton.scan(text, filters.size());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton over the literal parts of a set of filters, matching ASCII case-insensitively.<br>
+ * Scanning a text once finds every filter that has a literal occurring in it, regardless of how many filters there are.
+ * Literals may optionally require word boundaries on both sides, the same as a {@code \b...\b} regex would.<br>
+ * Immutable once built, and safe to scan from multiple threads.
+ */
+class FilterAutomaton {
+    // per literal
+    private final int[] literalFilter;
+    private final int[] literalLength;
+    private final boolean[] literalBounded;
+
+    // per trie node; edges are sorted by character for a binary search
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // literals ending at a node, including those reached through failure links
+    private final int[][] outputs;
+
+    private FilterAutomaton(Builder builder) {
+        int literalCount = builder.literals.size();
+        literalFilter = new int[literalCount];
+        literalLength = new int[literalCount];
+        literalBounded = new boolean[literalCount];
+
+        List<List<Character>> chars = new ArrayList<>();
+        List<List<Integer>> targets = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        chars.add(new ArrayList<>());
+        targets.add(new ArrayList<>());
+        nodeOutputs.add(new ArrayList<>());
+
+        // build the trie
+        for (int i = 0; i < literalCount; i++) {
+            String literal = builder.literals.get(i);
+            literalFilter[i] = builder.filters.get(i);
+            literalLength[i] = literal.length();
+            literalBounded[i] = builder.bounded.get(i);
+
+            int node = 0;
+            for (int c = 0; c < literal.length(); c++) {
+                char ch = fold(literal.charAt(c));
+                int index = chars.get(node).indexOf(ch);
+                if (index >= 0) {
+                    node = targets.get(node).get(index);
+                } else {
+                    chars.get(node).add(ch);
+                    targets.get(node).add(chars.size());
+                    node = chars.size();
+                    chars.add(new ArrayList<>());
+                    targets.add(new ArrayList<>());
+                    nodeOutputs.add(new ArrayList<>());
+                }
+            }
+            nodeOutputs.get(node).add(i);
+        }
+
+        // freeze the edges
+        int nodeCount = chars.size();
+        edgeChars = new char[nodeCount][];
+        edgeTargets = new int[nodeCount][];
+        for (int n = 0; n < nodeCount; n++) {
+            List<Character> nodeChars = chars.get(n);
+            Integer[] order = new Integer[nodeChars.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Character.compare(nodeChars.get(a), nodeChars.get(b)));
+            edgeChars[n] = new char[order.length];
+            edgeTargets[n] = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                edgeChars[n][i] = nodeChars.get(order[i]);
+                edgeTargets[n][i] = targets.get(n).get(order[i]);
+            }
+        }
+
+        // breadth-first failure links, merging outputs along the way
+        failure = new int[nodeCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                char ch = edgeChars[node][i];
+                int child = edgeTargets[node][i];
+                int fail = failure[node];
+                while (fail != 0 && next(fail, ch) < 0) {
+                    fail = failure[fail];
+                }
+                int target = next(fail, ch);
+                failure[child] = target >= 0 && target != child ? target : 0;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(failure[child]));
+                queue.add(child);
+            }
+        }
+
+        outputs = new int[nodeCount][];
+        for (int n = 0; n < nodeCount; n++) {
+            List<Integer> nodeOutput = nodeOutputs.get(n);
+            outputs[n] = new int[nodeOutput.size()];
+            for (int i = 0; i < outputs[n].length; i++) {
+                outputs[n][i] = nodeOutput.get(i);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return literalFilter.length == 0;
+    }
+
+    /**
+     * Scan the given text for all literals.
+     *
+     * @param text        the text to scan
+     * @param filterCount the number of filters this automaton was built for
+     * @return for each filter index i, the range of its first match is at [2i, 2i + 1], or -1 if it did not match
+     */
+    public int[] scan(CharSequence text, int filterCount) {
+        int[] hits = new int[filterCount * 2];
+        Arrays.fill(hits, -1);
+        if (isEmpty()) return hits;
+
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = fold(text.charAt(i));
+            int target;
+            while ((target = next(node, ch)) < 0 && node != 0) {
+                node = failure[node];
+            }
+            node = Math.max(target, 0);
+
+            for (int literal : outputs[node]) {
+                int filter = literalFilter[literal];
+                if (hits[filter * 2] >= 0) continue;
+                int end = i + 1;
+                int start = end - literalLength[literal];
+                if (literalBounded[literal] && !(isBoundary(text, start) && isBoundary(text, end))) continue;
+                hits[filter * 2] = start;
+                hits[filter * 2 + 1] = end;
+            }
+        }
+        return hits;
+    }
+
+    private int next(int node, char ch) {
+        int index = Arrays.binarySearch(edgeChars[node], ch);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+
+    // ASCII only, the same as Pattern.CASE_INSENSITIVE without UNICODE_CASE
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    // same as a regex \b; a boundary is between a word and a non-word character, with the text edges being non-word
+    private static boolean isBoundary(CharSequence text, int index) {
+        boolean before = index > 0 && isWordChar(text.charAt(index - 1));
+        boolean after = index < text.length() && isWordChar(text.charAt(index));
+        return before != after;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    static class Builder {
+        private final List<String> literals = new ArrayList<>();
+        private final List<Integer> filters = new ArrayList<>();
+        private final List<Boolean> bounded = new ArrayList<>();
+
+        /**
+         * @param filterIndex the index of the filter this literal belongs to
+         * @param literal     the literal text, must not be empty
+         * @param wordBounded true if this literal must be surrounded by word boundaries
+         */
+        public Builder add(int filterIndex, String literal, boolean wordBounded) {
+            literals.add(literal);
+            filters.add(filterIndex);
+            bounded.add(wordBounded);
+            return this;
+        }
+
+        public FilterAutomaton build() {
+            return new FilterAutomaton(this);
+        }
+    }
+}
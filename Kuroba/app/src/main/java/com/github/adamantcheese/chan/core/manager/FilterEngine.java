@@ -26,6 +26,7 @@ import android.widget.Toast;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.database.DatabaseFilterManager;
@@ -39,15 +40,26 @@ import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
 import com.github.adamantcheese.chan.ui.helper.BoardHelper;
+import com.github.adamantcheese.chan.ui.helper.RefreshUIMessage;
 import com.github.adamantcheese.chan.ui.text.FilterHighlightSpan;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,6 +73,7 @@ import static com.github.adamantcheese.chan.core.manager.FilterType.IMAGE;
 import static com.github.adamantcheese.chan.core.manager.FilterType.NAME;
 import static com.github.adamantcheese.chan.core.manager.FilterType.SUBJECT;
 import static com.github.adamantcheese.chan.core.manager.FilterType.TRIPCODE;
+import static com.github.adamantcheese.chan.ui.helper.RefreshUIMessage.Reason.FILTERS_CHANGED;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
@@ -107,14 +120,31 @@ public class FilterEngine {
 
     private final DatabaseFilterManager databaseFilterManager;
 
-    private final Map<String, Pattern> patternCache = new HashMap<>();
+    private final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+    // filter.boards string to the board keys it contains, see boardKey
+    private final Map<String, Set<String>> boardSetCache = new ConcurrentHashMap<>();
+
+    // bumped whenever filters change; a snapshot with an older version is rebuilt when next requested
+    private final AtomicInteger filterVersion = new AtomicInteger();
+    private final AtomicReference<FilterSnapshot> snapshot = new AtomicReference<>();
 
     public FilterEngine(DatabaseFilterManager databaseFilterManager) {
         this.databaseFilterManager = databaseFilterManager;
+        EventBus.getDefault().register(this);
+    }
+
+    // higher priority so that the snapshot is invalidated before anything else reloads in response to this
+    @Subscribe(priority = 1)
+    public void onEvent(RefreshUIMessage message) {
+        if (message.reason != FILTERS_CHANGED) return;
+        invalidateSnapshot();
+        // warm up the new snapshot so the next load doesn't have to wait on the database
+        BackgroundUtils.runOnBackgroundThread(this::getSnapshot);
     }
 
     public void deleteFilter(Filter filter) {
         DatabaseUtils.runTask(databaseFilterManager.deleteFilter(filter));
+        invalidateSnapshot();
     }
 
     public void createOrUpdateFilter(Filter filter) {
@@ -123,6 +153,40 @@ public class FilterEngine {
         } else {
             DatabaseUtils.runTask(databaseFilterManager.updateFilter(filter));
         }
+        invalidateSnapshot();
+    }
+
+    /**
+     * Call this after changing filters in the database without going through this class.
+     */
+    @AnyThread
+    public void invalidateSnapshot() {
+        filterVersion.incrementAndGet();
+        boardSetCache.clear();
+    }
+
+    /**
+     * @return the current snapshot of enabled filters; this only goes to the database if filters changed since the last
+     * call. Nothing is locked, so many threads can use the same snapshot at once.
+     */
+    @AnyThread
+    public FilterSnapshot getSnapshot() {
+        FilterSnapshot current = snapshot.get();
+        int version = filterVersion.get();
+        if (current != null && current.version == version) return current;
+
+        FilterSnapshot fresh = new FilterSnapshot(this, version, getEnabledFilters());
+        // if filters changed again while building, this one is already stale and will be replaced on the next call
+        snapshot.compareAndSet(current, fresh);
+        return fresh;
+    }
+
+    /**
+     * @return the enabled filters for the given board, ready for matching
+     */
+    @AnyThread
+    public CompiledFilters getCompiledFilters(Board board) {
+        return getSnapshot().getCompiledFilters(board);
     }
 
     public List<Filter> getEnabledFilters() {
@@ -146,9 +210,12 @@ public class FilterEngine {
         }
     }
 
+    /**
+     * @return the enabled watch filters from the current snapshot; these must not be modified
+     */
     public List<Filter> getEnabledWatchFilters() {
         List<Filter> watchFilters = new ArrayList<>();
-        for (Filter f : getEnabledFilters()) {
+        for (Filter f : getSnapshot().filters) {
             if (f.action == FilterAction.WATCH.id) {
                 watchFilters.add(f);
             }
@@ -161,13 +228,35 @@ public class FilterEngine {
         if (filter.allBoards || TextUtils.isEmpty(filter.boards)) {
             return true;
         } else {
-            for (String uniqueId : filter.boards.split(",")) {
-                if (BoardHelper.matchesUniqueId(board, uniqueId)) {
-                    return true;
+            Set<String> boardSet = boardSetCache.get(filter.boards);
+            if (boardSet == null) {
+                boardSet = parseBoardSet(filter.boards);
+                boardSetCache.put(filter.boards, boardSet);
+            }
+            return boardSet.contains(boardKey(board.siteId, board.code));
+        }
+    }
+
+    // the same rules as BoardHelper.matchesUniqueId, but done once for all of the boards in a filter
+    private static Set<String> parseBoardSet(String boards) {
+        Set<String> boardSet = new HashSet<>();
+        for (String uniqueId : boards.split(",")) {
+            if (!uniqueId.contains(":")) {
+                boardSet.add(boardKey(0, uniqueId));
+            } else {
+                String[] splitted = uniqueId.split(":");
+                if (splitted.length != 2) continue;
+                try {
+                    boardSet.add(boardKey(Integer.parseInt(splitted[0]), splitted[1]));
+                } catch (NumberFormatException ignored) {
                 }
             }
-            return false;
         }
+        return Collections.unmodifiableSet(boardSet);
+    }
+
+    static String boardKey(int siteId, String code) {
+        return siteId + ":" + code;
     }
 
     public int getFilterBoardCount(Filter filter) {
@@ -222,19 +311,7 @@ public class FilterEngine {
         }
 
         //figure out if the post has a flag code, if so check the filter
-        String flagCode = "";
-        if (post.httpIcons != null) {
-            for (PostHttpIcon icon : post.httpIcons) {
-                if (icon.type == SiteEndpoints.ICON_TYPE.COUNTRY_FLAG) {
-                    flagCode = icon.code;
-                    break;
-                }
-                if (icon.type == SiteEndpoints.ICON_TYPE.BOARD_FLAG) {
-                    flagCode = icon.code;
-                    break;
-                }
-            }
-        }
+        String flagCode = getFlagCode(post);
         if (!flagCode.isEmpty() && matches(filter, FLAG_CODE, flagCode, false)) {
             return true;
         }
@@ -251,6 +328,194 @@ public class FilterEngine {
         return false;
     }
 
+    private String getFlagCode(Post.Builder post) {
+        if (post.httpIcons != null) {
+            for (PostHttpIcon icon : post.httpIcons) {
+                if (icon.type == SiteEndpoints.ICON_TYPE.COUNTRY_FLAG
+                        || icon.type == SiteEndpoints.ICON_TYPE.BOARD_FLAG) {
+                    return icon.code;
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Compile a list of filters for use with {@link #matches(CompiledFilters, Post.Builder)}. The filters should not be
+     * modified afterwards, make copies if they may be.
+     *
+     * @param filters the filters to compile, in the order they should be applied
+     * @return the compiled filters
+     */
+    @AnyThread
+    public CompiledFilters compileFilters(List<Filter> filters) {
+        int count = filters.size();
+        Pattern[] regexes = new Pattern[count];
+        Pattern[] insensitiveRegexes = new Pattern[count];
+        FilterType[] types = FilterType.values();
+        FilterAutomaton.Builder[] builders = new FilterAutomaton.Builder[types.length];
+        for (int t = 0; t < types.length; t++) {
+            builders[t] = new FilterAutomaton.Builder();
+        }
+
+        for (int i = 0; i < count; i++) {
+            Filter filter = filters.get(i);
+            String rawPattern = filter.pattern;
+            if (TextUtils.isEmpty(rawPattern)) continue;
+
+            List<String> literals = new ArrayList<>();
+            boolean wordBounded = true;
+            if (isRegexPattern.matcher(rawPattern).matches()) {
+                regexes[i] = compile(rawPattern, 0);
+                insensitiveRegexes[i] = compile(rawPattern, Pattern.CASE_INSENSITIVE);
+                continue;
+            } else if (isQuoted(rawPattern)) {
+                if (rawPattern.length() != 2) {
+                    literals.add(rawPattern.substring(1, rawPattern.length() - 1));
+                }
+                wordBounded = false;
+            } else {
+                String[] words = rawPattern.split(" ");
+                List<String> wildcards = new ArrayList<>();
+                for (String word : words) {
+                    if (word.isEmpty()) {
+                        // an empty word matches on any word boundary, leave this one to the regex
+                        literals.clear();
+                        wildcards = Arrays.asList(words);
+                        break;
+                    }
+                    if (word.contains("*")) {
+                        wildcards.add(word);
+                    } else {
+                        literals.add(word);
+                    }
+                }
+                regexes[i] = compileWords(wildcards);
+                insensitiveRegexes[i] = regexes[i];
+            }
+
+            for (FilterType type : types) {
+                if ((filter.type & type.flag) == 0) continue;
+                for (String literal : literals) {
+                    builders[type.ordinal()].add(i, literal, wordBounded);
+                }
+            }
+        }
+
+        FilterAutomaton[] automata = new FilterAutomaton[types.length];
+        for (int t = 0; t < types.length; t++) {
+            automata[t] = builders[t].build();
+        }
+        return new CompiledFilters(filters, regexes, insensitiveRegexes, automata);
+    }
+
+    /**
+     * The same as calling {@link #matches(Filter, Post.Builder)} for each filter in order, but each field of the post
+     * is only scanned once for all word and "quoted" filters.
+     *
+     * @param compiled the filters to use
+     * @param post     the post content to test against
+     * @return the filters that match and should be applied to the content, in order
+     */
+    @AnyThread
+    public List<Filter> matches(CompiledFilters compiled, Post.Builder post) {
+        List<Filter> matched = new ArrayList<>();
+        if (compiled.isEmpty() || !post.moderatorCapcode.isEmpty() || post.sticky) return matched;
+
+        int[] tripcodeHits = compiled.scan(TRIPCODE, post.tripcode);
+        int[] nameHits = compiled.scan(NAME, post.name);
+        int[] commentHits = compiled.scan(COMMENT, post.comment);
+        int[] idHits = compiled.scan(ID, post.posterId);
+        int[] subjectHits = compiled.scan(SUBJECT, post.subject);
+        String flagCode = getFlagCode(post);
+        int[] flagCodeHits = compiled.scan(FLAG_CODE, flagCode);
+        Map<PostImage, int[]> imageHits = new IdentityHashMap<>();
+        // filenames change if an image gets removed, so these are built as needed
+        String filenames = null;
+        int[] filenameHits = null;
+
+        for (int i = 0; i < compiled.filters.size(); i++) {
+            Filter filter = compiled.filters.get(i);
+            if (filter.onlyOnOP && !post.op) continue;
+            if (filter.applyToSaved && !post.isSavedReply) continue;
+
+            if (matches(compiled, i, TRIPCODE, post.tripcode, tripcodeHits)
+                    || matches(compiled, i, NAME, post.name, nameHits)
+                    || matches(compiled, i, COMMENT, post.comment, commentHits)
+                    || matches(compiled, i, ID, post.posterId, idHits)
+                    || matches(compiled, i, SUBJECT, post.subject, subjectHits)) {
+                matched.add(filter);
+                continue;
+            }
+
+            PostImage matchedImage = null;
+            for (PostImage image : post.images) {
+                if (!imageHits.containsKey(image)) {
+                    imageHits.put(image, compiled.scan(IMAGE, image.fileHash));
+                }
+                if (matches(compiled, i, IMAGE, image.fileHash, imageHits.get(image))) {
+                    matchedImage = image;
+                    break;
+                }
+            }
+            if (matchedImage != null) {
+                // see matches(Filter, Post.Builder)
+                if (filter.action == FilterAction.HIDE.id) {
+                    matchedImage.hidden = true;
+                } else if (filter.action == FilterAction.REMOVE.id) {
+                    post.images.remove(matchedImage);
+                    filenames = null;
+                }
+                if (ChanSettings.applyImageFilterToPost.get()) {
+                    matched.add(filter);
+                }
+                continue;
+            }
+
+            if (!flagCode.isEmpty() && matches(compiled, i, FLAG_CODE, flagCode, flagCodeHits)) {
+                matched.add(filter);
+                continue;
+            }
+
+            if (post.images != null && (filter.type & FILENAME.flag) != 0) {
+                if (filenames == null) {
+                    StringBuilder files = new StringBuilder();
+                    for (PostImage image : post.images) {
+                        files.append(image.filename).append(" ");
+                    }
+                    filenames = files.toString();
+                    filenameHits = compiled.scan(FILENAME, filenames);
+                }
+                if (!filenames.isEmpty() && matches(compiled, i, FILENAME, filenames, filenameHits)) {
+                    matched.add(filter);
+                }
+            }
+        }
+        return matched;
+    }
+
+    private boolean matches(
+            CompiledFilters compiled, int index, FilterType type, CharSequence text, @Nullable int[] hits
+    ) {
+        Filter filter = compiled.filters.get(index);
+        if ((filter.type & type.flag) == 0) return false;
+        if (text == null) return false;
+
+        int start = hits != null ? hits[index * 2] : -1;
+        int end = hits != null ? hits[index * 2 + 1] : -1;
+        if (start < 0) {
+            // no literal matched, try whatever couldn't be put in the automaton
+            Pattern pattern = type == FLAG_CODE ? compiled.insensitiveRegexes[index] : compiled.regexes[index];
+            if (pattern == null) return false;
+            Matcher matcher = pattern.matcher(text);
+            if (!matcher.find()) return false;
+            start = matcher.start();
+            end = matcher.end();
+        }
+        addDebugSpans(filter, text, start, end);
+        return true;
+    }
+
     @AnyThread
     public boolean matches(Filter filter, FilterType type, CharSequence text, boolean forceCompile) {
         if ((filter.type & type.flag) == 0) return false;
@@ -258,18 +523,14 @@ public class FilterEngine {
 
         Pattern pattern = null;
         if (!forceCompile) {
-            synchronized (patternCache) {
-                pattern = patternCache.get(filter.pattern);
-            }
+            pattern = patternCache.get(filter.pattern);
         }
 
         if (pattern == null) {
             int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
             pattern = compile(filter.pattern, extraFlags);
             if (pattern != null) {
-                synchronized (patternCache) {
-                    patternCache.put(filter.pattern, pattern);
-                }
+                patternCache.put(filter.pattern, pattern);
                 Logger.d(this, "Resulting pattern: " + pattern.pattern());
             }
         }
@@ -278,26 +539,7 @@ public class FilterEngine {
             Matcher matcher = pattern.matcher(text);
             if (matcher.find()) {
                 MatchResult result = matcher.toMatchResult();
-                if (text instanceof Spannable && ChanSettings.debugFilters.get()) {
-                    ((Spannable) text).setSpan(
-                            new FilterHighlightSpan(ThemeHelper.getTheme()),
-                            result.start(),
-                            result.end(),
-                            Spanned.SPAN_INCLUSIVE_EXCLUSIVE
-                    );
-                    final String filterPattern = filter.pattern;
-                    ((Spannable) text).setSpan(new ClickableSpan() {
-                        @Override
-                        public void onClick(@NonNull View widget) {
-                            showToast(getAppContext(), "Matching filter: " + filterPattern, Toast.LENGTH_LONG);
-                        }
-
-                        @Override
-                        public void updateDrawState(@NonNull TextPaint ds) {
-                            ds.setUnderlineText(true);
-                        }
-                    }, result.start(), result.end(), Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
-                }
+                addDebugSpans(filter, text, result.start(), result.end());
                 return true;
             } else {
                 return false;
@@ -308,6 +550,28 @@ public class FilterEngine {
         }
     }
 
+    private void addDebugSpans(Filter filter, CharSequence text, int start, int end) {
+        if (text instanceof Spannable && ChanSettings.debugFilters.get()) {
+            ((Spannable) text).setSpan(new FilterHighlightSpan(ThemeHelper.getTheme()),
+                    start,
+                    end,
+                    Spanned.SPAN_INCLUSIVE_EXCLUSIVE
+            );
+            final String filterPattern = filter.pattern;
+            ((Spannable) text).setSpan(new ClickableSpan() {
+                @Override
+                public void onClick(@NonNull View widget) {
+                    showToast(getAppContext(), "Matching filter: " + filterPattern, Toast.LENGTH_LONG);
+                }
+
+                @Override
+                public void updateDrawState(@NonNull TextPaint ds) {
+                    ds.setUnderlineText(true);
+                }
+            }, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+        }
+    }
+
     private static final Pattern isRegexPattern = Pattern.compile("^/(.*)/(i?)$");
     private static final Pattern filterFilthyPattern = Pattern.compile("([.^$*+?()\\]\\[{}\\\\|-])");
     // an escaped \ and an escaped *, to replace an escaped * from escapeRegex
@@ -339,33 +603,40 @@ public class FilterEngine {
             } catch (PatternSyntaxException e) {
                 return null;
             }
-        } else if (rawPattern.length() >= 2 && rawPattern.charAt(0) == '"'
-                && rawPattern.charAt(rawPattern.length() - 1) == '"') {
+        } else if (isQuoted(rawPattern)) {
             // "matches an exact sentence"
             String text = escapeRegex(rawPattern.substring(1, rawPattern.length() - 1));
             //Don't allow only double quotes (would match everything)
             pattern = rawPattern.length() != 2 ? Pattern.compile(text, Pattern.CASE_INSENSITIVE) : null;
         } else {
-            String[] words = rawPattern.split(" ");
-            StringBuilder text = new StringBuilder();
-            for (int i = 0, wordsLength = words.length; i < wordsLength; i++) {
-                String word = words[i];
-                // Find a word (bounded by \b), replacing any * with \S*
-                text.append("(\\b")
-                        .append(wildcardPattern.matcher(escapeRegex(word)).replaceAll("\\\\S*"))
-                        .append("\\b)");
-                // Allow multiple words by joining them with |
-                if (i < words.length - 1) {
-                    text.append("|");
-                }
-            }
-            //Don't allow only spaces (would match everything after split)
-            pattern = !TextUtils.isEmpty(text) ? Pattern.compile(text.toString(), Pattern.CASE_INSENSITIVE) : null;
+            pattern = compileWords(Arrays.asList(rawPattern.split(" ")));
         }
 
         return pattern;
     }
 
+    private static boolean isQuoted(String rawPattern) {
+        return rawPattern.length() >= 2 && rawPattern.charAt(0) == '"'
+                && rawPattern.charAt(rawPattern.length() - 1) == '"';
+    }
+
+    private static Pattern compileWords(List<String> words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0, wordsLength = words.size(); i < wordsLength; i++) {
+            String word = words.get(i);
+            // Find a word (bounded by \b), replacing any * with \S*
+            text.append("(\\b")
+                    .append(wildcardPattern.matcher(escapeRegex(word)).replaceAll("\\\\S*"))
+                    .append("\\b)");
+            // Allow multiple words by joining them with |
+            if (i < words.size() - 1) {
+                text.append("|");
+            }
+        }
+        //Don't allow only spaces (would match everything after split)
+        return !TextUtils.isEmpty(text) ? Pattern.compile(text.toString(), Pattern.CASE_INSENSITIVE) : null;
+    }
+
     public static String escapeRegex(String filthy) {
         return filterFilthyPattern.matcher(filthy).replaceAll("\\\\$1"); // Escape regex special characters with a \
     }
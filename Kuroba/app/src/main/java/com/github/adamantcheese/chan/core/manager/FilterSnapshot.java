@@ -0,0 +1,70 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable view of the enabled filters at some point in time, obtained through {@link FilterEngine#getSnapshot()}.
+ * <br>
+ * The filters in here are copies and must not be modified; edit the ones from {@link FilterEngine#getAllFilters()}
+ * instead, which will cause a new snapshot to be made.<br>
+ * Compiled filters for a board are made once per snapshot and then shared by everything parsing posts for that board.
+ */
+public class FilterSnapshot {
+    public final int version;
+    // enabled filters, sorted by order
+    public final List<Filter> filters;
+
+    private final FilterEngine filterEngine;
+    private final Map<String, CompiledFilters> compiledByBoard = new ConcurrentHashMap<>();
+
+    FilterSnapshot(FilterEngine filterEngine, int version, List<Filter> enabledFilters) {
+        this.filterEngine = filterEngine;
+        this.version = version;
+        List<Filter> copies = new ArrayList<>(enabledFilters.size());
+        for (Filter filter : enabledFilters) {
+            copies.add(filter.clone());
+        }
+        filters = Collections.unmodifiableList(copies);
+    }
+
+    public CompiledFilters getCompiledFilters(Board board) {
+        String key = FilterEngine.boardKey(board.siteId, board.code);
+        CompiledFilters compiled = compiledByBoard.get(key);
+        if (compiled == null) {
+            List<Filter> boardFilters = new ArrayList<>();
+            for (Filter filter : filters) {
+                if (filterEngine.matchesBoard(filter, board)) {
+                    boardFilters.add(filter);
+                }
+            }
+            compiled = filterEngine.compileFilters(boardFilters);
+            // if two threads raced here, both results are equivalent; keep whichever got in first
+            CompiledFilters existing = compiledByBoard.putIfAbsent(key, compiled);
+            if (existing != null) compiled = existing;
+        }
+        return compiled;
+    }
+}
@@ -29,6 +29,7 @@ import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.ui.helper.RefreshUIMessage;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 import com.github.adamantcheese.chan.utils.StringUtils;
 import com.google.gson.reflect.TypeToken;
 
@@ -38,6 +39,7 @@ import org.greenrobot.eventbus.Subscribe;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -117,9 +119,10 @@ public class FilterWatchManager
         filterLoaders.clear();
         //get a set of boards to background load
         Set<Board> boards = new HashSet<>();
+        List<Filter> watchFilters = filterEngine.getEnabledWatchFilters();
         for (BoardRepository.SiteBoards siteBoard : boardRepository.getSaved()) {
             for (Board b : siteBoard.boards) {
-                for (Filter f : filterEngine.getEnabledWatchFilters()) {
+                for (Filter f : watchFilters) {
                     if (filterEngine.matchesBoard(f, b)) {
                         boards.add(b);
                     }
@@ -137,6 +140,11 @@ public class FilterWatchManager
 
     private class CatalogLoader
             implements ChanThreadLoader.ChanLoaderCallback {
+        @Override
+        public Priority getParsePriority() {
+            return Priority.LOW;
+        }
+
         @Override
         public void onChanLoaderData(ChanThread result) {
             Logger.d(this, "onChanLoaderData() for /" + result.getLoadable().boardCode + "/");
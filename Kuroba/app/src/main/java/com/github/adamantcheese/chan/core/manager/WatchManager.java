@@ -32,6 +32,7 @@ import com.github.adamantcheese.chan.core.database.DatabasePinManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
@@ -43,6 +44,7 @@ import com.github.adamantcheese.chan.ui.service.WatchNotification;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Debouncer;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
 import org.greenrobot.eventbus.EventBus;
@@ -90,8 +92,8 @@ public class WatchManager
 
     enum IntervalType {
         /**
-         * A timer that uses a {@link Handler} that calls {@link #update(boolean)} every
-         * {@link #FOREGROUND_INTERVAL}
+         * A timer that uses a {@link Handler} that calls {@link #update(boolean)} whenever the next thread is due
+         * according to the {@link WatchScheduler}
          */
         FOREGROUND,
 
@@ -107,8 +109,11 @@ public class WatchManager
     }
 
     private final Handler handler;
-    private static final long FOREGROUND_INTERVAL = SECONDS.toMillis(15);
     private static final int MESSAGE_UPDATE = 1;
+    // the least time between the end of a load and the next one for a pin, also when loading failed
+    private static final long MIN_RELOAD_DELAY = SECONDS.toMillis(10);
+    // how long a pin waits for its board's pages before it loads without them
+    private static final long PAGES_TIMEOUT = SECONDS.toMillis(30);
 
     private static final long STATE_UPDATE_DEBOUNCE_TIME_MS = 1000L;
 
@@ -119,6 +124,7 @@ public class WatchManager
     private final Debouncer stateUpdateDebouncer;
 
     private final Map<Pin, PinWatcher> pinWatchers = new HashMap<>();
+    private final WatchScheduler<PinWatcher> scheduler;
     private Set<PinWatcher> waitingForPinWatchersForBackgroundUpdate;
 
     public WatchManager(
@@ -142,6 +148,7 @@ public class WatchManager
                 return false;
             }
         });
+        scheduler = new WatchScheduler<>(handler);
 
         updateState();
     }
@@ -471,6 +478,7 @@ public class WatchManager
     private void destroyPinWatcher(Pin pin) {
         PinWatcher pinWatcher = pinWatchers.remove(pin);
         if (pinWatcher != null) {
+            scheduler.remove(pinWatcher);
             pinWatcher.destroy();
         }
     }
@@ -482,7 +490,10 @@ public class WatchManager
                 clonedPins.add(pin.clone());
             }
         }
-        DatabaseUtils.runTaskAsync(databasePinManager.updatePins(clonedPins));
+        // pins are updated all the time while watching, so these are coalesced with other writes to the same pins
+        for (Pin pin : clonedPins) {
+            DatabaseUtils.runWriteBehind(DatabaseUtils.row(Pin.class, pin.id), databasePinManager.updatePin(pin));
+        }
     }
 
     private boolean isTimerEnabled() {
@@ -556,6 +567,13 @@ public class WatchManager
 
                 if (ChanSettings.watchEnabled.get()) {
                     createPinWatcher(pin);
+                    PinWatcher pinWatcher = pinWatchers.get(pin);
+                    if (pin.watching) {
+                        // new or resumed pins get their first load when their loader says it's time
+                        scheduler.scheduleIfAbsent(pinWatcher, pinWatcher.chanLoader.getTimeUntilLoadMore());
+                    } else {
+                        scheduler.remove(pinWatcher);
+                    }
                 } else {
                     destroyPinWatcher(pin);
                 }
@@ -577,6 +595,7 @@ public class WatchManager
                 updatePins(pinsToUpdateInDatabase, false);
             }
         }
+        scheduleNextUpdate();
 
         return hasActiveUnreadPins;
     }
@@ -639,7 +658,7 @@ public class WatchManager
                 switch (newInterval) {
                     case FOREGROUND:
                         //Background/none -> foreground means start receiving foreground updates
-                        handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), FOREGROUND_INTERVAL);
+                        scheduleNextUpdate();
                         break;
                     case BACKGROUND:
                         //Foreground/none -> background means start receiving background updates
@@ -665,15 +684,10 @@ public class WatchManager
         return false;
     }
 
-    // Update the watching pins
+    // Update the watching pins that are due
     private void update(boolean fromBackground) {
         Logger.vd(this, "update from " + (fromBackground ? "background" : "foreground"));
 
-        if (currentInterval == FOREGROUND) {
-            // reschedule handler message
-            handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), FOREGROUND_INTERVAL);
-        }
-
         // A set of watchers that all have to complete being updated
         // before the wakelock is released again
         waitingForPinWatchersForBackgroundUpdate = null;
@@ -681,16 +695,36 @@ public class WatchManager
             waitingForPinWatchersForBackgroundUpdate = new HashSet<>();
         }
 
-        List<Pin> watchingPins = getWatchingPins();
-        for (Pin pin : watchingPins) {
-            PinWatcher pinWatcher = getPinWatcher(pin);
-            if (pinWatcher != null && pinWatcher.update(fromBackground)) {
-                if (fromBackground) {
-                    waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
+        // In the background there is no other chance to load until the next alarm, so this also loads threads that
+        // are expected to be due before the next alarm would be halfway there
+        List<PinWatcher> dueWatchers =
+                scheduler.pollDue(fromBackground ? ChanSettings.watchBackgroundInterval.get() / 2 : 0);
+
+        // With board pages checking, the pages are fetched once per board and the watchers waiting on them only load
+        // their thread if the board says it was modified since
+        boolean checkBoardPages = ChanSettings.watchBoardPages.get();
+        Set<Board> boardsToCheck = new HashSet<>();
+
+        for (PinWatcher pinWatcher : dueWatchers) {
+            boolean started;
+            if (checkBoardPages) {
+                started = pinWatcher.waitForPages();
+                if (started) {
+                    boardsToCheck.add(pinWatcher.pin.loadable.board);
                 }
+            } else {
+                started = pinWatcher.update();
+            }
+
+            if (started && fromBackground) {
+                waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
             }
         }
 
+        for (Board board : boardsToCheck) {
+            scheduler.dispatch(board.siteId, () -> PageRepository.requestBoard(board));
+        }
+
         if (fromBackground && !waitingForPinWatchersForBackgroundUpdate.isEmpty()) {
             Logger.d(this,
                     waitingForPinWatchersForBackgroundUpdate.size() + " pin watchers beginning updates, started at "
@@ -698,9 +732,25 @@ public class WatchManager
             );
             WakeManager.getInstance().manageLock(true, WatchManager.this);
         }
+
+        scheduleNextUpdate();
+    }
+
+    // In the foreground, wake up again when the next pin is due
+    private void scheduleNextUpdate() {
+        handler.removeMessages(MESSAGE_UPDATE);
+        long timeUntilNextDue = scheduler.getTimeUntilNextDue();
+        if (currentInterval == FOREGROUND && timeUntilNextDue >= 0) {
+            handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), timeUntilNextDue);
+        }
     }
 
     private void pinWatcherUpdated(PinWatcher pinWatcher) {
+        if (pinWatcher.chanLoader != null && pinWatcher.pin.watching && !pinWatcher.pin.isError) {
+            scheduler.schedule(pinWatcher, Math.max(MIN_RELOAD_DELAY, pinWatcher.chanLoader.getTimeUntilLoadMore()));
+            scheduleNextUpdate();
+        }
+
         updateState();
         postToEventBus(new PinMessages.PinChangedMessage(pinWatcher.pin));
 
@@ -760,6 +810,13 @@ public class WatchManager
 
         public int lastReplyCount = -1;
 
+        // the board's modified time for the thread at the last load and the load that is running
+        private long loadedModified = -1;
+        private long loadingModified = -1;
+        private boolean waitingForPages = false;
+        // identifies the current wait, so that a timeout for an earlier one does nothing
+        private int pagesWait;
+
         public PinWatcher(Pin pin) {
             this.pin = pin;
 
@@ -817,24 +874,69 @@ public class WatchManager
             PageRepository.removeListener(this);
         }
 
-        private boolean update(boolean fromBackground) {
+        /**
+         * Sets this watcher up to check the board's pages instead of loading right away.
+         *
+         * @return true if the board's pages need to be requested for this watcher
+         */
+        private boolean waitForPages() {
+            if (pin.isError || !pin.watching || waitingForPages) return false;
+
+            waitingForPages = true;
+            // not every site calls back for its pages, so don't wait forever
+            final int wait = ++pagesWait;
+            BackgroundUtils.runOnMainThread(() -> {
+                if (wait == pagesWait) {
+                    stopWaitingForPages();
+                }
+            }, PAGES_TIMEOUT);
+            return true;
+        }
+
+        /**
+         * Loads the thread without the board's pages, if it is still waiting on them.
+         */
+        private void stopWaitingForPages() {
+            if (chanLoader == null || !waitingForPages) return; // destroyed or done in the meantime
+
+            waitingForPages = false;
+            loadingModified = -1;
+            load();
+        }
+
+        private void loadIfModified() {
+            long modified = PageRepository.getThreadModified(pin.loadable);
+            if (modified > 0 && modified <= loadedModified && chanLoader.getThread() != null) {
+                // nothing changed since the last load
+                chanLoader.markUnchanged();
+            } else {
+                // also the case for threads that aren't on the pages anymore, the load will say if they are archived
+                loadingModified = modified;
+                load();
+            }
+        }
+
+        /**
+         * @return true if a load was started
+         */
+        private boolean update() {
             if (!pin.isError && pin.watching) {
                 //check last page stuff, get the page for the OP and notify in the onPages method
                 doPageNotification();
-                if (fromBackground) {
-                    // Always load regardless of timer, since the time left is not accurate for 15min+ intervals
-                    chanLoader.clearTimer();
-                    chanLoader.requestMoreData();
-                    return true;
-                } else {
-                    // true if a load was started
-                    return chanLoader.loadMoreIfTime();
-                }
+                load();
+                return true;
             } else {
                 return false;
             }
         }
 
+        private void load() {
+            scheduler.dispatch(pin.loadable.siteId, () -> {
+                if (chanLoader == null) return; // destroyed in the meantime
+                chanLoader.requestMoreData();
+            });
+        }
+
         @Override
         public void onChanLoaderError(ChanThreadLoader.ChanLoaderException error) {
             Logger.d(this, "onChanLoaderError()");
@@ -846,6 +948,10 @@ public class WatchManager
                 pin.watching = false;
             }
 
+            // whatever is shown might be out of date, so load again next time
+            loadedModified = -1;
+            loadingModified = -1;
+
             pinWatcherUpdated(this);
         }
 
@@ -860,6 +966,7 @@ public class WatchManager
             }
 
             pin.isError = false;
+            onLoaded();
 
             // Populate posts list
             posts.clear();
@@ -932,8 +1039,43 @@ public class WatchManager
         }
 
         @Override
-        public void onPagesReceived() {
-            doPageNotification();
+        public void onChanLoaderUnchanged(ChanThread thread) {
+            pin.isError = false;
+            onLoaded();
+            pinWatcherUpdated(this);
+        }
+
+        private void onLoaded() {
+            // only the first callback after the board's pages started a load gets its modified time, see loadIfModified
+            loadedModified = loadingModified;
+            loadingModified = -1;
+        }
+
+        @Override
+        public Priority getParsePriority() {
+            return Priority.LOW;
+        }
+
+        @Override
+        public void onPagesReceived(Board board) {
+            BackgroundUtils.runOnMainThread(() -> {
+                if (chanLoader == null) return; // destroyed in the meantime
+
+                doPageNotification();
+                if (waitingForPages && board.equals(pin.loadable.board)) {
+                    waitingForPages = false;
+                    loadIfModified();
+                }
+            });
+        }
+
+        @Override
+        public void onPagesFailed(Board board) {
+            BackgroundUtils.runOnMainThread(() -> {
+                if (board.equals(pin.loadable.board)) {
+                    stopWaitingForPages();
+                }
+            });
         }
 
         private void doPageNotification() {
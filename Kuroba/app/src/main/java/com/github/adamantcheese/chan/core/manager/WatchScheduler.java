@@ -0,0 +1,176 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Keeps track of when each watched thread should be loaded next, in a queue ordered by due time.<br>
+ * Every due time gets some jitter so threads that were loaded together drift apart instead of all being refreshed at
+ * the same moment. Work for a site is also never dispatched more often than once per {@link #SITE_SPACING}, so that a
+ * lot of threads becoming due at once is spread out over time instead of hitting the site all at once.<br>
+ * Times are kept in {@link SystemClock#elapsedRealtime()}, as uptime stops while the device sleeps in the
+ * background. Everything here happens on the main thread.
+ *
+ * @param <T> the type of what is scheduled
+ */
+class WatchScheduler<T> {
+    private static final long SITE_SPACING = SECONDS.toMillis(1);
+    // up to this fraction of a delay is added to it
+    private static final double JITTER = 0.1;
+
+    private final MainThread mainThread;
+    private final Random random = new Random();
+
+    private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>();
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+    // per site id, the earliest time at which the next work for that site can run
+    private final Map<Integer, Long> nextSiteSlot = new HashMap<>();
+
+    WatchScheduler(Handler handler) {
+        this(new MainThread() {
+            @Override
+            public long elapsedRealtime() {
+                return SystemClock.elapsedRealtime();
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void ensureOn() {
+                BackgroundUtils.ensureMainThread();
+            }
+        });
+    }
+
+    WatchScheduler(MainThread mainThread) {
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * Schedules the item to be due after the given delay plus jitter, replacing any earlier schedule for it.
+     */
+    void schedule(T item, long delayMs) {
+        mainThread.ensureOn();
+        remove(item);
+
+        long delay = Math.max(0, delayMs);
+        long jitter = (long) (random.nextDouble() * Math.max(delay * JITTER, SITE_SPACING));
+        Entry<T> entry = new Entry<>(item, mainThread.elapsedRealtime() + delay + jitter);
+        entries.put(item, entry);
+        queue.add(entry);
+    }
+
+    void scheduleIfAbsent(T item, long delayMs) {
+        if (!entries.containsKey(item)) {
+            schedule(item, delayMs);
+        }
+    }
+
+    void remove(T item) {
+        mainThread.ensureOn();
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            queue.remove(entry);
+        }
+    }
+
+    /**
+     * @param withinMs also count items as due if they will be within this time
+     * @return all items that are due, in order; they are removed from the queue
+     */
+    List<T> pollDue(long withinMs) {
+        mainThread.ensureOn();
+        long horizon = mainThread.elapsedRealtime() + withinMs;
+        List<T> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().dueTime <= horizon) {
+            Entry<T> entry = queue.poll();
+            entries.remove(entry.item);
+            due.add(entry.item);
+        }
+        return due;
+    }
+
+    /**
+     * @return the time in milliseconds until the next item is due, or -1 if nothing is scheduled
+     */
+    long getTimeUntilNextDue() {
+        Entry<T> next = queue.peek();
+        return next == null ? -1 : Math.max(0, next.dueTime - mainThread.elapsedRealtime());
+    }
+
+    /**
+     * Runs the task on the main thread, but no sooner than {@link #SITE_SPACING} after the previous task for that site.
+     */
+    void dispatch(int siteId, Runnable task) {
+        mainThread.ensureOn();
+        long now = mainThread.elapsedRealtime();
+        Long slot = nextSiteSlot.get(siteId);
+        long runAt = slot == null ? now : Math.max(now, slot);
+        nextSiteSlot.put(siteId, runAt + SITE_SPACING);
+
+        if (runAt <= now) {
+            task.run();
+        } else {
+            mainThread.postDelayed(task, runAt - now);
+        }
+    }
+
+    /**
+     * The clock and the thread that everything here runs on; the main thread, other than in tests.
+     */
+    interface MainThread {
+        long elapsedRealtime();
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void ensureOn();
+    }
+
+    private static class Entry<T>
+            implements Comparable<Entry<T>> {
+        private final T item;
+        private final long dueTime;
+
+        private Entry(T item, long dueTime) {
+            this.item = item;
+            this.dueTime = dueTime;
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry<T> o) {
+            return Long.compare(dueTime, o.dueTime);
+        }
+    }
+}
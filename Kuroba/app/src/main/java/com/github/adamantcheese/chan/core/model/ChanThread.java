@@ -22,6 +22,9 @@ import android.text.SpannableStringBuilder;
 import android.text.style.StyleSpan;
 import android.text.style.UnderlineSpan;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
@@ -29,6 +32,8 @@ import com.github.adamantcheese.chan.core.site.archives.ExternalSiteArchive;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs;
 import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+import com.github.adamantcheese.chan.utils.SearchIndex;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -46,6 +51,8 @@ public class ChanThread {
     private List<Post> posts;
     private boolean closed = false;
     private boolean archived = false;
+    // only built once the thread is searched, then kept up to date as posts come in
+    private SearchIndex searchIndex;
 
     public ChanThread(Loadable loadable, List<Post> posts) {
         this.loadable = loadable;
@@ -84,6 +91,39 @@ public class ChanThread {
         this.posts = Collections.unmodifiableList(new ArrayList<>(newPosts));
     }
 
+    /**
+     * Brings the search index up to date with the current posts, only indexing the ones it hasn't seen yet.
+     *
+     * @return the numbers of the posts that might contain the query in their comment, subject, name or filenames, to be
+     * checked further; null if the query is too short to narrow anything down
+     */
+    @Nullable
+    public IntHashSet findSearchCandidates(@NonNull String query) {
+        SearchIndex index;
+        List<Post> current;
+        synchronized (this) {
+            // catalogs keep replacing their posts, so start over once most of what's indexed is gone
+            if (searchIndex == null || searchIndex.size() > posts.size() * 2) {
+                searchIndex = new SearchIndex();
+            }
+            index = searchIndex;
+            current = posts;
+        }
+
+        for (Post post : current) {
+            CharSequence[] texts = new CharSequence[3 + post.images.size()];
+            texts[0] = post.comment;
+            texts[1] = post.subject;
+            texts[2] = post.name;
+            for (int i = 0; i < post.images.size(); i++) {
+                texts[3 + i] = post.images.get(i).filename;
+            }
+            // embedding replaces the comment and can add images, so those are what make a post change
+            index.add(post.no, 31 * System.identityHashCode(post.comment) + post.images.size(), texts);
+        }
+        return index.search(query);
+    }
+
     /**
      * Not safe! Only use for read-only operations!
      */
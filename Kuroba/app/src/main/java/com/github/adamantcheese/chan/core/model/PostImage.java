@@ -121,6 +121,13 @@ public class PostImage {
         return spoiler || hidden;
     }
 
+    /**
+     * @return whether the image itself is spoilered, regardless of the hide images setting
+     */
+    public boolean isSpoilered() {
+        return spoiler;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
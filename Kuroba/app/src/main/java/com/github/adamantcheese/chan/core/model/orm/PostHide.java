@@ -28,16 +28,17 @@ public class PostHide {
     @DatabaseField(generatedId = true)
     public int id;
 
-    @DatabaseField
+    // every lookup is by board and post number, see DatabaseHelper's upgrade to version 56 for existing installs
+    @DatabaseField(indexName = "posthide_site_board_no_idx")
     public int site;
 
-    @DatabaseField
+    @DatabaseField(indexName = "posthide_site_board_no_idx")
     public String board;
 
     /**
      * The post number that is being hidden
      */
-    @DatabaseField
+    @DatabaseField(indexName = "posthide_site_board_no_idx")
     public int no;
 
     /**
@@ -0,0 +1,88 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.orm;
+
+import com.github.adamantcheese.chan.core.database.HttpUrlType;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import okhttp3.HttpUrl;
+
+/**
+ * An image saved as part of an album download. Pending rows are downloads that haven't finished yet, and are picked up
+ * again if the app was closed in the middle of an album; finished rows remember where an image with a given hash was
+ * saved, so the same file isn't downloaded again.
+ */
+@DatabaseTable(tableName = "saved_download")
+public class SavedDownload {
+    public SavedDownload() {
+    }
+
+    public static SavedDownload fromPostImage(PostImage postImage, String subFolder) {
+        SavedDownload download = new SavedDownload();
+        download.imageUrl = postImage.imageUrl;
+        download.serverFilename = postImage.serverFilename;
+        download.filename = postImage.filename;
+        download.extension = postImage.extension;
+        download.fileHash = postImage.fileHash;
+        download.size = postImage.size;
+        download.subFolder = subFolder;
+        return download;
+    }
+
+    @DatabaseField(generatedId = true)
+    public int id;
+
+    @DatabaseField(persisterClass = HttpUrlType.class, canBeNull = false)
+    public HttpUrl imageUrl;
+
+    @DatabaseField
+    public String serverFilename;
+
+    @DatabaseField
+    public String filename;
+
+    @DatabaseField
+    public String extension;
+
+    @DatabaseField(index = true)
+    public String fileHash;
+
+    @DatabaseField
+    public long size;
+
+    @DatabaseField
+    public String subFolder;
+
+    @DatabaseField(index = true)
+    public boolean done;
+
+    // where the image ended up, once done
+    @DatabaseField
+    public String savedPath;
+
+    public PostImage toPostImage() {
+        return new PostImage.Builder().imageUrl(imageUrl)
+                .serverFilename(serverFilename)
+                .filename(filename)
+                .extension(extension)
+                .fileHash(fileHash, false)
+                .size(size)
+                .build();
+    }
+}
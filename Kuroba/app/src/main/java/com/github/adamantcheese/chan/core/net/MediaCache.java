@@ -0,0 +1,106 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils.Cancelable;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+import static com.github.adamantcheese.chan.core.net.NetUtils.VIDEO_CACHE_SIZE;
+
+/**
+ * The one cache for videos, shared by ExoPlayer and the image viewer's preloading. Videos are only stored here and
+ * not in OkHttp's cache as well, and preloading only fetches the start of a video, which is enough for playback to
+ * start right away; ExoPlayer fetches the rest of it with a range request when it gets there.<br>
+ * Its size is a share of the file cache size setting, see {@link NetUtils#VIDEO_CACHE_SIZE}.
+ */
+public class MediaCache {
+    private static final String TAG = "MediaCache";
+    // about the first few seconds of a typical webm
+    private static final long PREFETCH_BYTES = MB;
+    // prefetches spend most of their time waiting on the network, so they're kept to a couple of threads of their own
+    // instead of taking up the shared background pool
+    private static final ThreadPoolExecutor PREFETCH_EXECUTOR =
+            new ThreadPoolExecutor(2, 2, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    private static final SimpleCache CACHE = new SimpleCache(new File(getCacheDir(), "exoplayer"),
+            new LeastRecentlyUsedCacheEvictor(VIDEO_CACHE_SIZE)
+    );
+    private static final CacheDataSource.Factory DATA_SOURCE_FACTORY;
+    public static final ProgressiveMediaSource.Factory MEDIA_SOURCE_FACTORY;
+
+    static {
+        PREFETCH_EXECUTOR.allowCoreThreadTimeOut(true);
+
+        // no OkHttp cache here, everything is already kept in the media cache
+        OkHttpDataSource.Factory okHttpFactory =
+                new OkHttpDataSource.Factory(NetUtils.applicationClient.newBuilder().cache(null).build());
+        okHttpFactory.setUserAgent(NetUtils.USER_AGENT);
+        DATA_SOURCE_FACTORY = new CacheDataSource.Factory();
+        DATA_SOURCE_FACTORY.setCache(CACHE);
+        DATA_SOURCE_FACTORY.setUpstreamDataSourceFactory(okHttpFactory);
+        MEDIA_SOURCE_FACTORY = new ProgressiveMediaSource.Factory(DATA_SOURCE_FACTORY);
+    }
+
+    /**
+     * Fetches the start of the video at the given url into the cache, if it isn't there yet.
+     *
+     * @param onFinished called on a background thread when the prefetch is done, failed or was canceled
+     * @return to cancel the prefetch
+     */
+    public static Cancelable prefetch(@NonNull HttpUrl url, @Nullable Runnable onFinished) {
+        CacheWriter writer = new CacheWriter(DATA_SOURCE_FACTORY.createDataSource(),
+                new DataSpec.Builder().setUri(url.toString()).setLength(PREFETCH_BYTES).build(),
+                null,
+                null
+        );
+        PREFETCH_EXECUTOR.execute(() -> {
+            try {
+                writer.cache();
+            } catch (InterruptedIOException ignored) {
+                // canceled
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed to prefetch " + url, e);
+            } finally {
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            }
+        });
+        return writer::cancel;
+    }
+}
@@ -13,23 +13,30 @@ import com.franmontiel.persistentcookiejar.cache.SetCookieCache;
 import com.franmontiel.persistentcookiejar.persistence.SharedPrefsCookiePersistor;
 import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.BitmapResult;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.CallOptions;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.MainThreadResponseResult;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.OkHttpClientWithUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
+import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.http.HttpCall;
+import com.github.adamantcheese.chan.core.site.loader.ThreadArchive;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.BitmapUtils;
 import com.github.adamantcheese.chan.utils.ExceptionCatchingInputStream;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 import com.github.adamantcheese.chan.utils.StringUtils;
 import com.google.common.io.Files;
 
 import org.jetbrains.annotations.NotNull;
 import org.jsoup.nodes.Document;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -37,9 +44,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
-import kotlin.io.FilesKt;
 import okhttp3.Cache;
 import okhttp3.CacheControl;
 import okhttp3.Call;
@@ -52,6 +59,9 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.internal.http2.StreamResetException;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
 
 import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
 import static com.github.adamantcheese.chan.core.net.DnsSelector.Mode.IPV4_ONLY;
@@ -72,12 +82,15 @@ public class NetUtils {
     public static final String USER_AGENT = BuildConfig.APP_LABEL + "/" + BuildConfig.VERSION_NAME;
 
     public static final int MB = 1024 * 1024;
+    // The file cache size setting covers both OkHttp's cache and the video cache in MediaCache
+    private static final long FILE_CACHE_SIZE = ChanSettings.autoLoadThreadImages.get()
+            ? (long) ChanSettings.fileCacheSize.get() * 2 * MB
+            : (long) ChanSettings.fileCacheSize.get() * MB;
+    // Videos are stored only in the media cache, and are few but large next to everything else
+    public static final long VIDEO_CACHE_SIZE = FILE_CACHE_SIZE / 2;
     // The OkHttpClient installed cache, used for all requests
-    private static final Cache OK_HTTP_CACHE = new Cache(new File(getCacheDir(), "okhttp"),
-            ChanSettings.autoLoadThreadImages.get()
-                    ? (long) ChanSettings.fileCacheSize.get() * 2 * MB
-                    : (long) ChanSettings.fileCacheSize.get() * MB
-    );
+    private static final Cache OK_HTTP_CACHE =
+            new Cache(new File(getCacheDir(), "okhttp"), FILE_CACHE_SIZE - VIDEO_CACHE_SIZE);
 
     public static final OkHttpClientWithUtils applicationClient =
             new OkHttpClientWithUtils(new OkHttpClient.Builder().cache(OK_HTTP_CACHE)
@@ -89,6 +102,8 @@ public class NetUtils {
                     .cookieJar(new WebviewSyncCookieManager(new PersistentCookieJar(new SetCookieCache(),
                             new SharedPrefsCookiePersistor(getAppContext())
                     )))
+                    // saved threads have their media on disk already
+                    .addInterceptor(ThreadArchive.MEDIA_INTERCEPTOR)
                     .addNetworkInterceptor(chain -> {
                         // interceptor to add the User-Agent for all requests
                         Request request = chain.request().newBuilder().header("User-Agent", USER_AGENT).build();
@@ -107,6 +122,9 @@ public class NetUtils {
 
     private static final Map<HttpUrl, List<BitmapResult>> resultListeners = new HashMap<>();
 
+    // how much of a webm is read before trying to get a preview frame out of it, in bytes
+    private static final long[] VIDEO_PREVIEW_PREFIXES = {256 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+
     public synchronized static void cleanup() {
         resultListeners.clear();
     }
@@ -162,14 +180,103 @@ public class NetUtils {
             File tempFile = new File(new File(getCacheDir(), "requested"),
                     StringUtils.fileNameRemoveBadCharacters(filename) + "." + fileExt
             );
-            ResponseBody body = response.body();
-            if (body == null) throw new IOException("No body!");
             tempFile.getParentFile().mkdirs();
-            FilesKt.writeBytes(tempFile, body.bytes());
+            try {
+                writeBody(response, new FileOutputStream(tempFile));
+            } catch (Exception e) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                throw e;
+            }
             return tempFile;
         }, new MainThreadResponseResult<>(result), progressListener, ONE_DAY_CACHE, 0);
     }
 
+    /**
+     * Get a raw response, written straight into the given destination instead of a cached file.
+     *
+     * @param url              the url to download
+     * @param destination      opens the stream to write to; only called once a successful response has arrived
+     * @param result           the result callback, with the number of bytes written
+     * @param progressListener an optional progress listener
+     * @return An enqueued file call. WILL RUN RESULT ON MAIN THREAD!
+     */
+    public static Call makeFileRequest(
+            @NonNull final HttpUrl url,
+            @NonNull final Callable<OutputStream> destination,
+            @NonNull final ResponseResult<Long> result,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener
+    ) {
+        return makeRequest(applicationClient.getHttpRedirectClient(),
+                url,
+                (response) -> writeBody(response, destination.call()),
+                new MainThreadResponseResult<>(result),
+                progressListener,
+                ONE_DAY_CACHE,
+                0
+        );
+    }
+
+    /**
+     * Get a raw response into the given file, continuing it with a range request if the file already holds the start of
+     * the response from an earlier, interrupted call. If the call fails part way, what was written is kept so the next
+     * call can continue from there.
+     *
+     * @param url              the url to download
+     * @param partialFile      the file to download into
+     * @param result           the result callback, with the completed file
+     * @param progressListener an optional progress listener, for the bytes in this call only
+     * @param priority         How urgent this call is, see {@link RequestLimiter}
+     * @return An enqueued file call. WILL RUN RESULT ON MAIN THREAD!
+     */
+    public static Call makeResumableFileRequest(
+            @NonNull final HttpUrl url,
+            @NonNull final File partialFile,
+            @NonNull final ResponseResult<File> result,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener,
+            @NonNull Priority priority
+    ) {
+        final long existing = partialFile.length();
+        Converter<File, Response> converter = (response) -> {
+            boolean append = false;
+            if (response.code() == 206) {
+                String contentRange = response.header("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + existing + "-")) {
+                    // what was already downloaded doesn't fit with this response; start over the next time
+                    //noinspection ResultOfMethodCallIgnored
+                    partialFile.delete();
+                    throw new IOException("Unexpected range in response: " + contentRange);
+                }
+                append = true;
+            }
+            partialFile.getParentFile().mkdirs();
+            writeBody(response, new FileOutputStream(partialFile, append));
+            return partialFile;
+        };
+        return makeCall(applicationClient.getHttpRedirectClient(),
+                url,
+                converter,
+                new MainThreadResponseResult<>(result),
+                new CallOptions().progressListener(progressListener)
+                        .extraHeaders(existing > 0 ? Headers.of("Range", "bytes=" + existing + "-") : null)
+                        .priority(priority)
+        ).first;
+    }
+
+    /**
+     * Streams the body to the output in segments, so the whole body is never in memory at once. Closes the output.
+     *
+     * @return the number of bytes written
+     */
+    private static long writeBody(Response response, OutputStream output)
+            throws IOException {
+        try (BufferedSink sink = Okio.buffer(Okio.sink(output))) {
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("No body!");
+            return sink.writeAll(body.source());
+        }
+    }
+
     /**
      * Request a bitmap without resizing.
      *
@@ -235,6 +342,8 @@ public class NetUtils {
             performBitmapSuccess(url, cachedBitmap, true, mainThread);
             return null;
         }
+        final boolean video = "webm".equalsIgnoreCase(Files.getFileExtension(url.toString()));
+        final boolean sized = width > 0 || height > 0;
         Call call = applicationClient.getHttpRedirectClient()
                 .newCall(new Request.Builder().url(url).addHeader("Referer", url.toString()).build());
         Callback callback = new Callback() {
@@ -252,42 +361,33 @@ public class NetUtils {
 
             @Override
             public void onResponse(@NotNull Call call, @NotNull Response response) {
-                try (ResponseBody body = response.body()) {
-                    if (body == null) {
-                        performBitmapFailure(url, new NullPointerException("No response data"), mainThread);
-                        return;
-                    }
+                ResponseBody body = response.body();
+                if (body == null) {
+                    performBitmapFailure(url, new NullPointerException("No response data"), mainThread);
+                    return;
+                }
 
-                    if (!response.isSuccessful()) {
-                        performBitmapFailure(url, new HttpCodeException(response), mainThread);
-                        return;
-                    }
+                if (!response.isSuccessful()) {
+                    body.close();
+                    performBitmapFailure(url, new HttpCodeException(response), mainThread);
+                    return;
+                }
 
-                    if ("webm".equalsIgnoreCase(Files.getFileExtension(url.toString()))) {
-                        File tempFile = new File(getCacheDir(), UUID.randomUUID().toString());
-                        if (!tempFile.createNewFile()) {
-                            tempFile.delete();
-                            performBitmapFailure(url,
-                                    new IOException("Failed to create temp file for decode."),
-                                    mainThread
-                            );
-                        }
-                        FilesKt.writeBytes(tempFile, body.bytes());
-                        BitmapUtils.decodeFilePreviewImage(tempFile, 0, 0, bitmap -> {
-                            //noinspection ResultOfMethodCallIgnored
-                            tempFile.delete();
-                            checkBitmap(url, bitmap, mainThread);
-                        }, false);
-                    } else {
-                        ExceptionCatchingInputStream wrappedStream =
-                                new ExceptionCatchingInputStream(body.byteStream());
-                        Bitmap result = BitmapUtils.decode(wrappedStream, width, height);
-                        if (wrappedStream.getException() != null) {
-                            performBitmapFailure(url, wrappedStream.getException(), mainThread);
-                            return;
-                        }
-                        checkBitmap(url, result, mainThread);
+                if (video) {
+                    decodeVideoPreview(url, body, width, height, mainThread);
+                    return;
+                }
+
+                try (ResponseBody ignored = body) {
+                    long decodeStart = System.nanoTime();
+                    ExceptionCatchingInputStream wrappedStream = new ExceptionCatchingInputStream(body.byteStream());
+                    Bitmap result = BitmapUtils.decode(wrappedStream, width, height);
+                    if (wrappedStream.getException() != null) {
+                        performBitmapFailure(url, wrappedStream.getException(), mainThread);
+                        return;
                     }
+                    ThumbnailDiskCache.recordDecode(System.nanoTime() - decodeStart);
+                    checkBitmap(url, result, width, height, sized, mainThread);
                 } catch (Exception e) {
                     performBitmapFailure(url, e, mainThread);
                 } catch (OutOfMemoryError e) {
@@ -297,17 +397,144 @@ public class NetUtils {
             }
         };
         if (enqueue) {
-            call.enqueue(callback);
+            if (sized || video) {
+                // a thumbnail that was already decoded and scaled before is likely on disk; only go to the network
+                // (and its cache) if it isn't
+                BackgroundUtils.runOnBackgroundThread(() -> {
+                    Bitmap storedBitmap = ThumbnailDiskCache.get(url, width, height);
+                    if (storedBitmap == null) {
+                        RequestLimiter.enqueue(call, callback, Priority.HIGH);
+                    } else if (call.isCanceled()) {
+                        synchronized (NetUtils.class) {
+                            resultListeners.remove(url);
+                        }
+                    } else {
+                        imageCache.put(url, storedBitmap);
+                        performBitmapSuccess(url, storedBitmap, true, mainThread);
+                    }
+                });
+            } else {
+                RequestLimiter.enqueue(call, callback, Priority.HIGH);
+            }
         }
         return new Pair<>(call, callback);
     }
 
-    private static void checkBitmap(HttpUrl url, Bitmap result, boolean mainThread) {
+    /**
+     * Webms only have their first frame decoded for a preview. That frame is at the start of the file, so the body is
+     * streamed to a temp file and a decode is tried after each of {@link #VIDEO_PREVIEW_PREFIXES}; the rest of the body
+     * is only read if none of those were enough.<br>
+     * The first prefix is read on the calling OkHttp thread; decoding is slow, so it and any further reads are done on
+     * a background thread, which then passes on the result.
+     */
+    private static void decodeVideoPreview(
+            HttpUrl url, ResponseBody body, int width, int height, boolean mainThread
+    ) {
+        VideoPreviewFile previewFile = null;
+        try {
+            previewFile = new VideoPreviewFile(body);
+            previewFile.readUpTo(VIDEO_PREVIEW_PREFIXES[0]);
+        } catch (Exception e) {
+            if (previewFile != null) {
+                previewFile.close();
+            } else {
+                body.close();
+            }
+            performBitmapFailure(url, e, mainThread);
+            return;
+        }
+
+        final VideoPreviewFile readFile = previewFile;
+        BackgroundUtils.backgroundService.execute(() -> {
+            try (VideoPreviewFile file = readFile) {
+                long decodeStart = System.nanoTime();
+                Bitmap result = file.decode(width, height);
+                ThumbnailDiskCache.recordDecode(System.nanoTime() - decodeStart);
+                checkBitmap(url, result, width, height, true, mainThread);
+            } catch (Exception e) {
+                performBitmapFailure(url, e, mainThread);
+            } catch (OutOfMemoryError e) {
+                getRuntime().gc();
+                performBitmapFailure(url, new IOException(e), mainThread);
+            }
+        });
+    }
+
+    /**
+     * The start of a webm's body, in a temp file that is deleted again on close.
+     */
+    private static class VideoPreviewFile
+            implements Closeable {
+        private final File tempFile = new File(getCacheDir(), UUID.randomUUID().toString());
+        private final ResponseBody body;
+        private final BufferedSource source;
+        private final BufferedSink sink;
+        private long written;
+        private boolean exhausted;
+
+        private VideoPreviewFile(ResponseBody body)
+                throws IOException {
+            this.body = body;
+            source = body.source();
+            sink = Okio.buffer(Okio.sink(tempFile));
+        }
+
+        /**
+         * @param length how much of the body should be in the file after this, or -1 for all of it
+         */
+        private void readUpTo(long length)
+                throws IOException {
+            while (!exhausted && (length == -1 || written < length)) {
+                long read = source.read(sink.getBuffer(), 8192);
+                if (read == -1) {
+                    exhausted = true;
+                    break;
+                }
+                written += read;
+                sink.emitCompleteSegments();
+            }
+            sink.flush();
+        }
+
+        /**
+         * @return the preview, or null or {@link BitmapRepository#error} if no frame could be decoded
+         */
+        private Bitmap decode(int width, int height)
+                throws IOException {
+            for (long prefix : VIDEO_PREVIEW_PREFIXES) {
+                readUpTo(prefix);
+                Bitmap result = BitmapUtils.decodeFilePreviewImage(tempFile, width, height, null, false);
+                if (exhausted || (result != null && result != BitmapRepository.error)) {
+                    // closing the source early drops the connection instead of reading the rest of the video
+                    return result;
+                }
+            }
+            readUpTo(-1);
+            return BitmapUtils.decodeFilePreviewImage(tempFile, width, height, null, false);
+        }
+
+        @Override
+        public void close() {
+            try {
+                sink.close();
+            } catch (IOException ignored) {}
+            body.close();
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    private static void checkBitmap(
+            HttpUrl url, Bitmap result, int width, int height, boolean storeOnDisk, boolean mainThread
+    ) {
         if (result == null) {
             performBitmapFailure(url, new NullPointerException("Bitmap returned is null"), mainThread);
             return;
         }
         imageCache.put(url, result);
+        if (storeOnDisk && result != BitmapRepository.error) {
+            ThumbnailDiskCache.put(url, width, height, result);
+        }
         performBitmapSuccess(url, result, false, mainThread);
     }
 
@@ -452,7 +679,12 @@ public class NetUtils {
             @Nullable final CacheControl cacheControl,
             int timeoutMs
     ) {
-        return makeCall(client, url, converter, result, progressListener, cacheControl, timeoutMs, true).first;
+        return makeCall(client,
+                url,
+                converter,
+                result,
+                new CallOptions().progressListener(progressListener).cacheControl(cacheControl).timeoutMs(timeoutMs)
+        ).first;
     }
 
     /**
@@ -460,14 +692,11 @@ public class NetUtils {
      * Generally don't use this! Use one of the wrapper methods instead. This class ensures that all responses are properly
      * closed.
      *
-     * @param url              The request URL.
-     * @param converter        The converter that will convert the response into a form the reader can process.
-     * @param result           The callback for this call.
-     * @param progressListener An optional progress listener for this response
-     * @param <T>              Your result type
-     * @param cacheControl     Set cache parameters for this request
-     * @param timeoutMs        Optional timeout in milliseconds
-     * @param enqueue          whether or not to enqueue this call as a step
+     * @param url       The request URL.
+     * @param converter The converter that will convert the response into a form the reader can process.
+     * @param result    The callback for this call.
+     * @param options   Everything optional about the call, see {@link CallOptions}
+     * @param <T>       Your result type
      * @return An optionally enqueued call along with the callback it is associated with. WILL RUN RESULT ON BACKGROUND OKHTTP THREAD!
      */
     public static <T> Pair<Call, Callback> makeCall(
@@ -475,13 +704,11 @@ public class NetUtils {
             @NonNull final HttpUrl url,
             @NonNull final Converter<T, Response> converter,
             @NonNull final ResponseResult<T> result,
-            @Nullable final ProgressResponseBody.ProgressListener progressListener,
-            @Nullable final CacheControl cacheControl,
-            int timeoutMs,
-            boolean enqueue
+            @NonNull final CallOptions options
     ) {
+        final ProgressResponseBody.ProgressListener progressListener = options.progressListener;
         OkHttpClient.Builder clientBuilder = client.newBuilder();
-        clientBuilder.callTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        clientBuilder.callTimeout(options.timeoutMs, TimeUnit.MILLISECONDS);
         clientBuilder.addNetworkInterceptor(chain -> {
             Response originalResponse = chain.proceed(chain.request());
             return originalResponse.newBuilder()
@@ -489,8 +716,13 @@ public class NetUtils {
                     .build();
         });
         Request.Builder builder = new Request.Builder().url(url).addHeader("Referer", url.toString());
-        if (cacheControl != null) {
-            builder.cacheControl(cacheControl);
+        if (options.cacheControl != null) {
+            builder.cacheControl(options.cacheControl);
+        }
+        if (options.extraHeaders != null) {
+            for (int i = 0; i < options.extraHeaders.size(); i++) {
+                builder.addHeader(options.extraHeaders.name(i), options.extraHeaders.value(i));
+            }
         }
         Call call = clientBuilder.build().newCall(builder.build());
         Callback callback = new Callback() {
@@ -515,8 +747,8 @@ public class NetUtils {
                 }
             }
         };
-        if (enqueue) {
-            call.enqueue(callback);
+        if (options.enqueue) {
+            call = RequestLimiter.enqueue(call, callback, options.priority);
         }
         return new Pair<>(call, callback);
     }
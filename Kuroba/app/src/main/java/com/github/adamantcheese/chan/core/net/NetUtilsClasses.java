@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -20,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -188,6 +190,62 @@ public class NetUtilsClasses {
         }
     }
 
+    /**
+     * The optional parts of a call made through {@link NetUtils#makeCall}. The defaults are an enqueued, high priority
+     * call without a progress listener, cache control, extra headers or timeout.
+     */
+    public static class CallOptions {
+        @Nullable
+        ProgressResponseBody.ProgressListener progressListener;
+        @Nullable
+        CacheControl cacheControl;
+        @Nullable
+        Headers extraHeaders;
+        int timeoutMs;
+        boolean enqueue = true;
+        @NonNull
+        Priority priority = Priority.HIGH;
+
+        public CallOptions progressListener(@Nullable ProgressResponseBody.ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public CallOptions cacheControl(@Nullable CacheControl cacheControl) {
+            this.cacheControl = cacheControl;
+            return this;
+        }
+
+        /**
+         * @param extraHeaders headers to add to the request, ie for conditional requests
+         */
+        public CallOptions extraHeaders(@Nullable Headers extraHeaders) {
+            this.extraHeaders = extraHeaders;
+            return this;
+        }
+
+        public CallOptions timeoutMs(int timeoutMs) {
+            this.timeoutMs = timeoutMs;
+            return this;
+        }
+
+        /**
+         * Don't enqueue the call, the caller runs it with the returned callback.
+         */
+        public CallOptions noEnqueue() {
+            enqueue = false;
+            return this;
+        }
+
+        /**
+         * @param priority How urgent this call is, lower priorities are spread out more, see {@link RequestLimiter}
+         */
+        public CallOptions priority(@NonNull Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+    }
+
     /**
      * Converts input I into output O
      *
@@ -278,6 +336,10 @@ public class NetUtilsClasses {
         public boolean isServerErrorNotFound() {
             return code == 404;
         }
+
+        public boolean isNotModified() {
+            return code == 304;
+        }
     }
 
     /**
@@ -0,0 +1,293 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+/**
+ * Decides when enqueued calls actually go to OkHttp, per host.<br>
+ * Each host has a token bucket; {@link Priority#NORMAL} (prefetching) and {@link Priority#LOW} (background watching)
+ * calls need a token to start and otherwise wait in a queue, highest priority first. They can also only have a few
+ * calls running per host at once, so that they never take up all of OkHttp's connections to a host.<br>
+ * {@link Priority#HIGH} calls are for what the user is looking at; they ignore both the tokens and the running caps,
+ * start right away and are not counted against either, so they can't starve the lower priorities.<br>
+ * Canceling the call returned from {@link #enqueue(Call, Callback, Priority)} takes it out of the queue right away.
+ */
+public class RequestLimiter {
+    // sustained calls per second per host, and how many can start at once after a quiet period
+    private static final double TOKENS_PER_SECOND = 2;
+    private static final double MAX_TOKENS = 4;
+    // how many calls of each priority or lower may run at once per host, by Priority's ordinal; HIGH is uncapped
+    private static final int[] MAX_RUNNING = {Integer.MAX_VALUE, 4, 2};
+
+    private static final Map<String, Host> hosts = new HashMap<>();
+    private static long sequence;
+
+    /**
+     * Enqueues the call with OkHttp as soon as the host's limits allow it.
+     *
+     * @return the call to cancel instead of the given one, so that a call that is still queued here is dropped from
+     * the queue right away; the callback still gets the usual cancellation failure from OkHttp
+     */
+    public static Call enqueue(@NonNull Call call, @NonNull Callback callback, @NonNull Priority priority) {
+        String hostName = call.request().url().host();
+        synchronized (RequestLimiter.class) {
+            Host host = hosts.get(hostName);
+            if (host == null) {
+                host = new Host(hostName);
+                hosts.put(hostName, host);
+            }
+            Pending pending = new Pending(host, call, callback, priority, sequence++);
+            if (priority == Priority.HIGH) {
+                host.running[priority.ordinal()]++;
+                start(pending);
+                return call;
+            }
+
+            host.pending.add(pending);
+            if (host.pending.size() > host.maxQueued) {
+                host.maxQueued = host.pending.size();
+            }
+            drain(host);
+            return new LimitedCall(pending);
+        }
+    }
+
+    private static synchronized void drain(Host host) {
+        host.refill();
+        while (!host.pending.isEmpty()) {
+            Pending next = host.pending.peek();
+            if (host.runningAtOrBelow(next.priority) >= MAX_RUNNING[next.priority.ordinal()]) {
+                // a running call finishing drains again
+                markThrottled(host, next);
+                return;
+            }
+            if (host.tokens < 1) {
+                markThrottled(host, next);
+                scheduleDrain(host);
+                return;
+            }
+
+            host.pending.poll();
+            host.tokens--;
+            host.running[next.priority.ordinal()]++;
+            start(next);
+        }
+    }
+
+    private static void start(Pending pending) {
+        pending.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                try {
+                    pending.callback.onFailure(call, e);
+                } finally {
+                    finished(pending);
+                }
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response)
+                    throws IOException {
+                try {
+                    pending.callback.onResponse(call, response);
+                } finally {
+                    finished(pending);
+                }
+            }
+        });
+    }
+
+    private static synchronized void canceled(Pending pending) {
+        if (pending.host.pending.remove(pending)) {
+            // OkHttp fails this right away, with the usual cancellation exception
+            pending.call.enqueue(pending.callback);
+            drain(pending.host);
+        }
+    }
+
+    private static void markThrottled(Host host, Pending pending) {
+        if (!pending.throttled) {
+            pending.throttled = true;
+            host.throttled++;
+        }
+    }
+
+    private static synchronized void finished(Pending pending) {
+        pending.host.running[pending.priority.ordinal()]--;
+        drain(pending.host);
+    }
+
+    private static void scheduleDrain(Host host) {
+        if (host.drainScheduled) return;
+        host.drainScheduled = true;
+        long waitMs = (long) Math.ceil((1 - host.tokens) * 1000 / TOKENS_PER_SECOND);
+        BackgroundUtils.backgroundScheduledService.schedule(() -> {
+            synchronized (RequestLimiter.class) {
+                host.drainScheduled = false;
+                drain(host);
+            }
+        }, waitMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized String getSummary() {
+        if (hosts.isEmpty()) return "No requests yet";
+
+        StringBuilder summary = new StringBuilder();
+        for (Host host : hosts.values()) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(String.format(Locale.ENGLISH,
+                    "%s: running %d, queued %d (max %d), throttled %d",
+                    host.name,
+                    host.runningAtOrBelow(Priority.HIGH),
+                    host.pending.size(),
+                    host.maxQueued,
+                    host.throttled
+            ));
+        }
+        return summary.toString();
+    }
+
+    private static class Host {
+        private final String name;
+        private final PriorityQueue<Pending> pending = new PriorityQueue<>();
+        private double tokens = MAX_TOKENS;
+        private long lastRefill = System.nanoTime();
+        // calls started and not yet finished, indexed by Priority's ordinal
+        private final int[] running = new int[Priority.values().length];
+        private boolean drainScheduled;
+
+        private int maxQueued;
+        private long throttled;
+
+        private Host(String name) {
+            this.name = name;
+        }
+
+        private int runningAtOrBelow(Priority priority) {
+            int count = 0;
+            for (int i = priority.ordinal(); i < running.length; i++) {
+                count += running[i];
+            }
+            return count;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double earned = (now - lastRefill) * TOKENS_PER_SECOND / TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(MAX_TOKENS, tokens + earned);
+            lastRefill = now;
+        }
+    }
+
+    private static class Pending
+            implements Comparable<Pending> {
+        private final Host host;
+        private final Call call;
+        private final Callback callback;
+        private final Priority priority;
+        private final long order;
+        private boolean throttled;
+
+        private Pending(Host host, Call call, Callback callback, Priority priority, long order) {
+            this.host = host;
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(@NonNull Pending o) {
+            int byPriority = priority.compareTo(o.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, o.order);
+        }
+    }
+
+    private static class LimitedCall
+            implements Call {
+        private final Pending pending;
+
+        private LimitedCall(Pending pending) {
+            this.pending = pending;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return pending.call.request();
+        }
+
+        @NotNull
+        @Override
+        public Response execute()
+                throws IOException {
+            return pending.call.execute();
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback callback) {
+            pending.call.enqueue(callback);
+        }
+
+        @Override
+        public void cancel() {
+            pending.call.cancel();
+            canceled(pending);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return pending.call.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return pending.call.isCanceled();
+        }
+
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return pending.call.timeout();
+        }
+
+        @NotNull
+        @Override
+        public Call clone() {
+            return pending.call.clone();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.HttpUrl;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+
+/**
+ * The disk tier below the decoded bitmap cache in {@link NetUtils}. It keeps thumbnails as they were handed out, already
+ * scaled down to the size they were requested at, so that a thumbnail that was evicted from memory doesn't need its
+ * original image decoded and scaled again; for webms, that means not running the media retriever again either.<br>
+ * Entries are keyed by the URL and the requested size. Files are touched when read, and the least recently used ones
+ * are removed once the cache grows past its limit.
+ */
+public class ThumbnailDiskCache {
+    private static final String TAG = "ThumbnailDiskCache";
+    private static final long MAX_SIZE = 50 * 1024 * 1024;
+    // trimming goes down to this much of the max size, so it doesn't happen on every write after the cache is full
+    private static final double TRIM_TO = 0.8;
+    private static final int QUALITY = 90;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final File cacheDir = new File(getCacheDir(), "thumbnails");
+    // -1 until the directory is first scanned
+    private static long cacheSize = -1;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong readNanos = new AtomicLong();
+    private static final AtomicLong decodes = new AtomicLong();
+    private static final AtomicLong decodeNanos = new AtomicLong();
+
+    /**
+     * Blocks on disk, don't call this on the main thread.
+     *
+     * @return the stored thumbnail, or null if there isn't one
+     */
+    @Nullable
+    public static Bitmap get(@NonNull HttpUrl url, int width, int height) {
+        BackgroundUtils.ensureBackgroundThread();
+        long start = System.nanoTime();
+        File file = getFile(url, width, height);
+        Bitmap bitmap = file.exists() ? BitmapFactory.decodeFile(file.getAbsolutePath()) : null;
+        if (bitmap == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        readNanos.addAndGet(System.nanoTime() - start);
+        return bitmap;
+    }
+
+    /**
+     * Stores the thumbnail on a background thread.
+     */
+    public static void put(@NonNull HttpUrl url, int width, int height, @NonNull Bitmap bitmap) {
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            File file = getFile(url, width, height);
+            File tempFile = null;
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                cacheDir.mkdirs();
+                // unique, as the same thumbnail can be stored by two threads at once
+                tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX, cacheDir);
+                try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                    // WEBP keeps transparency and is still small
+                    //noinspection deprecation
+                    if (bitmap.isRecycled() || !bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, out)) {
+                        throw new IOException("Could not compress thumbnail");
+                    }
+                }
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Could not move thumbnail into place");
+                }
+                added(file.length());
+            } catch (Exception e) {
+                Logger.w(TAG, "Failed to store thumbnail for " + url, e);
+                if (tempFile != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * For the counters, the time spent decoding and scaling a thumbnail that wasn't on disk.
+     */
+    public static void recordDecode(long nanos) {
+        decodes.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    public static String getSummary() {
+        long hitCount = hits.get();
+        long decodeCount = decodes.get();
+        return String.format(Locale.ENGLISH,
+                "Hits: %d (average read %d µs), misses: %d\nDecoded: %d (average %d µs)",
+                hitCount,
+                hitCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(readNanos.get() / hitCount),
+                misses.get(),
+                decodeCount,
+                decodeCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(decodeNanos.get() / decodeCount)
+        );
+    }
+
+    private static File getFile(HttpUrl url, int width, int height) {
+        return new File(cacheDir, Cache.key(url) + "_" + width + "x" + height);
+    }
+
+    private static synchronized void added(long size) {
+        if (cacheSize < 0) {
+            cacheSize = 0;
+            File[] files = cacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    cacheSize += file.length();
+                }
+            }
+        } else {
+            cacheSize += size;
+        }
+
+        if (cacheSize > MAX_SIZE) {
+            trim();
+        }
+    }
+
+    // keep the most recently used thumbnails
+    private static void trim() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        // reads touch files while this runs, so sort on the times from before, not ones that change mid-sort
+        List<CachedFile> cachedFiles = new ArrayList<>(files.length);
+        for (File file : files) {
+            // thumbnails still being written
+            if (file.getName().endsWith(TEMP_SUFFIX)) continue;
+            cachedFiles.add(new CachedFile(file));
+        }
+        Collections.sort(cachedFiles, (a, b) -> Long.compare(b.lastModified, a.lastModified));
+        long size = 0;
+        for (CachedFile cachedFile : cachedFiles) {
+            if (size + cachedFile.length > MAX_SIZE * TRIM_TO) {
+                //noinspection ResultOfMethodCallIgnored
+                cachedFile.file.delete();
+            } else {
+                size += cachedFile.length;
+            }
+        }
+        cacheSize = size;
+    }
+
+    private static class CachedFile {
+        private final File file;
+        private final long lastModified;
+        private final long length;
+
+        private CachedFile(File file) {
+            this.file = file;
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import androidx.viewpager.widget.ViewPager;
 
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.MediaCache;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -33,12 +34,15 @@ import com.github.adamantcheese.chan.ui.view.FloatingMenu;
 import com.github.adamantcheese.chan.ui.view.FloatingMenuItem;
 import com.github.adamantcheese.chan.ui.view.MultiImageView;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.BackgroundUtils.Cancelable;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import okhttp3.Call;
@@ -78,7 +82,8 @@ public class ImageViewerPresenter
     private int selectedPosition = 0;
     private SwipeDirection swipeDirection = SwipeDirection.Default;
     private Loadable loadable;
-    private final Set<Call> preloadingImages = new CopyOnWriteArraySet<>();
+    // preloads in progress, by image url
+    private final Map<HttpUrl, Cancelable> preloadingImages = new ConcurrentHashMap<>();
     private final Set<HttpUrl> nonCancelableImages = new CopyOnWriteArraySet<>();
 
     // Disables swiping until the view pager is visible
@@ -132,7 +137,7 @@ public class ImageViewerPresenter
         callback.startPreviewOutTransition(postImage);
         callback.showProgress(false);
 
-        for (Call preloadingImage : preloadingImages) {
+        for (Cancelable preloadingImage : preloadingImages.values()) {
             preloadingImage.cancel();
         }
 
@@ -343,79 +348,69 @@ public class ImageViewerPresenter
             load = videoAutoLoad(postImage);
         }
 
-        if (load) {
-            // If downloading, remove from preloadingImages if it finished.
-            // Array to allow access from within the callback
-            final Call[] preloadDownload = new Call[1];
+        if (!load || preloadingImages.containsKey(postImage.imageUrl)) return;
 
-            preloadDownload[0] = NetUtils.makeRequest(NetUtils.applicationClient.getHttpRedirectClient(),
-                    postImage.imageUrl,
-                    EMPTY_CONVERTER,
-                    new NetUtilsClasses.ResponseResult<Object>() {
-                        @Override
-                        public void onFailure(Exception e) {
-                            updatePreload();
-                        }
+        HttpUrl url = postImage.imageUrl;
+        if (postImage.type == MOVIE) {
+            // only the start of a video, straight into the cache the player reads from
+            // the prefetch can finish before it's registered here, so its removal is posted to run after this, and only
+            // removes this prefetch's own entry
+            Cancelable[] prefetch = new Cancelable[1];
+            prefetch[0] = MediaCache.prefetch(url,
+                    () -> BackgroundUtils.runOnMainThread(() -> preloadingImages.remove(url, prefetch[0]))
+            );
+            preloadingImages.put(url, prefetch[0]);
+            return;
+        }
 
-                        @Override
-                        public void onSuccess(Object result) {
-                            updatePreload();
-                        }
+        Call preloadDownload = NetUtils.makeRequest(NetUtils.applicationClient.getHttpRedirectClient(),
+                url,
+                EMPTY_CONVERTER,
+                new NetUtilsClasses.ResponseResult<Object>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        preloadingImages.remove(url);
+                    }
 
-                        private void updatePreload() {
-                            if (preloadDownload[0] != null) {
-                                preloadingImages.remove(preloadDownload[0]);
-                            }
-                        }
-                    },
-                    null,
-                    NetUtilsClasses.ONE_DAY_CACHE
-            );
+                    @Override
+                    public void onSuccess(Object result) {
+                        preloadingImages.remove(url);
+                    }
+                },
+                null,
+                NetUtilsClasses.ONE_DAY_CACHE
+        );
 
-            if (preloadDownload[0] != null) {
-                preloadingImages.add(preloadDownload[0]);
-            }
+        if (preloadDownload != null) {
+            preloadingImages.put(url, preloadDownload::cancel);
         }
     }
 
     private void cancelPreviousFromEndImageDownload(int position) {
-        for (Call downloader : preloadingImages) {
-            int index = position + CANCEL_IMAGE_INDEX;
-            if (index < images.size()) {
-                if (cancelImageDownload(index, downloader)) {
-                    return;
-                }
-            }
+        int index = position + CANCEL_IMAGE_INDEX;
+        if (index < images.size()) {
+            cancelImageDownload(index);
         }
     }
 
     private void cancelPreviousFromStartImageDownload(int position) {
-        for (Call downloader : preloadingImages) {
-            int index = position - CANCEL_IMAGE_INDEX;
-            if (index >= 0) {
-                if (cancelImageDownload(index, downloader)) {
-                    return;
-                }
-            }
+        int index = position - CANCEL_IMAGE_INDEX;
+        if (index >= 0) {
+            cancelImageDownload(index);
         }
     }
 
-    private boolean cancelImageDownload(int position, Call downloader) {
-        if (nonCancelableImages.contains(downloader.request().url())) {
-            Logger.d(this,
-                    "Attempt to cancel non cancelable download for image with url: " + downloader.request().url()
-            );
-            return false;
+    private void cancelImageDownload(int position) {
+        HttpUrl url = images.get(position).imageUrl;
+        if (nonCancelableImages.contains(url)) {
+            Logger.d(this, "Attempt to cancel non cancelable download for image with url: " + url);
+            return;
         }
 
-        PostImage previousImage = images.get(position);
-        if (downloader.request().url().equals(previousImage.imageUrl)) {
-            downloader.cancel();
-            preloadingImages.remove(downloader);
-            return true;
+        Cancelable preload = preloadingImages.remove(url);
+        if (preload != null) {
+            preload.cancel();
         }
-
-        return false;
     }
 
     @Override
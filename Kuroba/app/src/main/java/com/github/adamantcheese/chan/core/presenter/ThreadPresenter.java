@@ -33,6 +33,7 @@ import androidx.appcompat.app.AlertDialog;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
+import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
@@ -76,6 +77,7 @@ import com.github.adamantcheese.chan.ui.view.ThumbnailView;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.PostUtils;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 import com.github.adamantcheese.chan.utils.RecyclerUtils.RecyclerViewPosition;
 
 import java.io.IOException;
@@ -144,6 +146,9 @@ public class ThreadPresenter
     @Inject
     private DatabaseLoadableManager databaseLoadableManager;
 
+    @Inject
+    private DatabaseHideManager databaseHideManager;
+
     @Inject
     private DatabaseSavedReplyManager databaseSavedReplyManager;
 
@@ -180,8 +185,12 @@ public class ThreadPresenter
             this.loadable = loadable;
 
             loadable.lastLoadDate = GregorianCalendar.getInstance().getTime();
-            DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
+            DatabaseUtils.runWriteBehind(DatabaseUtils.row(Loadable.class, loadable.id),
+                    databaseLoadableManager.updateLoadable(loadable, false)
+            );
 
+            // needed to filter the posts once they're loaded
+            databaseHideManager.preloadBoardHides(loadable.siteId, loadable.boardCode);
             chanLoader = ChanLoaderManager.obtain(loadable, this);
             threadPresenterCallback.showLoading();
         }
@@ -199,7 +208,9 @@ public class ThreadPresenter
     }
 
     public void updateDatabaseLoadable() {
-        DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
+        DatabaseUtils.runWriteBehind(DatabaseUtils.row(Loadable.class, loadable.id),
+                databaseLoadableManager.updateLoadable(loadable, false)
+        );
     }
 
     public boolean isBound() {
@@ -259,12 +270,14 @@ public class ThreadPresenter
     public void onSearchEntered(String entered) {
         searchQuery = entered;
         if (isBound() && chanLoader.getThread() != null) {
-            showPosts();
-            if (TextUtils.isEmpty(entered)) {
-                threadPresenterCallback.setSearchStatus(null, true, false);
-            } else {
-                threadPresenterCallback.setSearchStatus(entered, false, false);
-            }
+            // the search status shows the number of results, so wait for them to be displayed
+            showPosts(() -> {
+                if (TextUtils.isEmpty(entered)) {
+                    threadPresenterCallback.setSearchStatus(null, true, false);
+                } else {
+                    threadPresenterCallback.setSearchStatus(entered, false, false);
+                }
+            });
         }
     }
 
@@ -366,14 +379,18 @@ public class ThreadPresenter
         if (loadable.markedNo >= 0) {
             Post markedPost = PostUtils.findPostById(loadable.markedNo, chanLoader.getThread());
             if (markedPost != null) {
-                highlightPostNo(markedPost.no);
-                if (BackgroundUtils.isInForeground()) {
-                    scrollToPost(markedPost, false);
-                }
-                if (StartActivity.loadedFromURL) {
-                    BackgroundUtils.runOnMainThread(() -> scrollToPost(markedPost, false), 1000);
-                    StartActivity.loadedFromURL = false;
-                }
+                // the posts shown above may still be on their way to the list
+                threadPresenterCallback.runWhenPostsApplied(() -> {
+                    if (!isBound()) return;
+                    highlightPostNo(markedPost.no);
+                    if (BackgroundUtils.isInForeground()) {
+                        scrollToPost(markedPost, false);
+                    }
+                    if (StartActivity.loadedFromURL) {
+                        BackgroundUtils.runOnMainThread(() -> scrollToPost(markedPost, false), 1000);
+                        StartActivity.loadedFromURL = false;
+                    }
+                });
             }
             loadable.markedNo = -1;
         }
@@ -381,12 +398,44 @@ public class ThreadPresenter
         updateDatabaseLoadable();
     }
 
+    @Override
+    public Priority getParsePriority() {
+        // this is what the user is looking at
+        return Priority.HIGH;
+    }
+
+    @Override
+    public void onChanLoaderPartialData(ChanThread result) {
+        BackgroundUtils.ensureMainThread();
+        if (!isBound()) return;
+
+        // only the posts are shown here, everything else is handled once the full catalog comes in
+        if (!TextUtils.isEmpty(searchQuery)) {
+            onSearchEntered(searchQuery);
+        } else {
+            showPosts();
+        }
+    }
+
     @Override
     public void onChanLoaderError(ChanThreadLoader.ChanLoaderException error) {
         Logger.d(this, "onChanLoaderError()");
         threadPresenterCallback.showError(error);
     }
 
+    @Override
+    public void onChanLoaderUnchanged(ChanThread result) {
+        BackgroundUtils.ensureMainThread();
+
+        if (isBound()) {
+            if (isWatching()) {
+                chanLoader.setTimer();
+            } else {
+                chanLoader.clearTimer();
+            }
+        }
+    }
+
     /*
      * PostAdapter callbacks
      */
@@ -411,20 +460,23 @@ public class ThreadPresenter
 
     public void onNewPostsViewClicked() {
         if (!isBound()) return;
-        Post post = PostUtils.findPostById(loadable.lastViewed, chanLoader.getThread());
-        int position = -1;
-        if (post != null) {
-            List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-            for (int i = 0; i < posts.size(); i++) {
-                Post needle = posts.get(i);
-                if (post.no == needle.no) {
-                    position = i;
-                    break;
+        threadPresenterCallback.runWhenPostsApplied(() -> {
+            if (!isBound()) return;
+            Post post = PostUtils.findPostById(loadable.lastViewed, chanLoader.getThread());
+            int position = -1;
+            if (post != null) {
+                List<Post> posts = threadPresenterCallback.getDisplayingPosts();
+                for (int i = 0; i < posts.size(); i++) {
+                    Post needle = posts.get(i);
+                    if (post.no == needle.no) {
+                        position = i;
+                        break;
+                    }
                 }
             }
-        }
-        // scroll to post after last viewed
-        threadPresenterCallback.smoothScrollNewPosts(position + 1);
+            // scroll to post after last viewed
+            threadPresenterCallback.smoothScrollNewPosts(position + 1);
+        });
     }
 
     public void scrollTo(int displayPosition, boolean smooth) {
@@ -433,38 +485,42 @@ public class ThreadPresenter
 
     public void scrollToImage(PostImage postImage, boolean smooth) {
         if (!searchOpen) {
+            threadPresenterCallback.runWhenPostsApplied(() -> {
+                int position = -1;
+                List<Post> posts = threadPresenterCallback.getDisplayingPosts();
+
+                out:
+                for (int i = 0; i < posts.size(); i++) {
+                    Post post = posts.get(i);
+                    for (PostImage image : post.images) {
+                        if (image == postImage) {
+                            position = i;
+                            break out;
+                        }
+                    }
+                }
+                if (position >= 0) {
+                    scrollTo(position, smooth);
+                }
+            });
+        }
+    }
+
+    public void scrollToPost(Post needle, boolean smooth) {
+        threadPresenterCallback.runWhenPostsApplied(() -> {
             int position = -1;
             List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-
-            out:
             for (int i = 0; i < posts.size(); i++) {
                 Post post = posts.get(i);
-                for (PostImage image : post.images) {
-                    if (image == postImage) {
-                        position = i;
-                        break out;
-                    }
+                if (post.no == needle.no) {
+                    position = i;
+                    break;
                 }
             }
             if (position >= 0) {
                 scrollTo(position, smooth);
             }
-        }
-    }
-
-    public void scrollToPost(Post needle, boolean smooth) {
-        int position = -1;
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        for (int i = 0; i < posts.size(); i++) {
-            Post post = posts.get(i);
-            if (post.no == needle.no) {
-                position = i;
-                break;
-            }
-        }
-        if (position >= 0) {
-            scrollTo(position, smooth);
-        }
+        });
     }
 
     public void highlightPostNo(int postNo) {
@@ -515,8 +571,7 @@ public class ThreadPresenter
         if (isBound() && loadable.isThreadMode()) {
             if (searchOpen) {
                 searchQuery = null;
-                showPosts();
-                threadPresenterCallback.setSearchStatus(null, false, true);
+                showPosts(() -> threadPresenterCallback.setSearchStatus(null, false, true));
                 threadPresenterCallback.showSearch(false);
                 highlightPostNo(post.no);
                 scrollToPost(post, false);
@@ -1201,8 +1256,15 @@ public class ThreadPresenter
     }
 
     private void showPosts() {
+        showPosts(null);
+    }
+
+    /**
+     * @param onApplied run once the posts are actually in the displayed list, may be null
+     */
+    private void showPosts(Runnable onApplied) {
         if (chanLoader != null && chanLoader.getThread() != null) {
-            threadPresenterCallback.showPosts(chanLoader.getThread(), new PostsFilter(order, searchQuery));
+            threadPresenterCallback.showPosts(chanLoader.getThread(), new PostsFilter(order, searchQuery), onApplied);
         }
     }
 
@@ -1297,7 +1359,9 @@ public class ThreadPresenter
     }
 
     public interface ThreadPresenterCallback {
-        void showPosts(ChanThread thread, PostsFilter filter);
+        void showPosts(ChanThread thread, PostsFilter filter, Runnable onApplied);
+
+        void runWhenPostsApplied(Runnable runnable);
 
         void postClicked(Post post);
 
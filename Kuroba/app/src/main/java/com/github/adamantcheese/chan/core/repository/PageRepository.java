@@ -53,6 +53,23 @@ public class PageRepository {
         return findPage(opLoadable.board, opLoadable.no);
     }
 
+    /**
+     * @return the board's last modified time for the given thread as of the last time the pages were received, or -1 if
+     * the thread isn't on the pages or the site doesn't say
+     */
+    public static long getThreadModified(@NonNull Loadable opLoadable) {
+        ChanPages pages = boardPagesMap.get(opLoadable.board);
+        if (pages == null) return -1;
+        for (ChanPage page : pages) {
+            for (ThreadNoTimeModPair threadNoTimeModPair : page.threads) {
+                if (opLoadable.no == threadNoTimeModPair.no) {
+                    return threadNoTimeModPair.modified;
+                }
+            }
+        }
+        return -1;
+    }
+
     public static void forceUpdateForBoard(final Board b) {
         if (b != null) {
             BackgroundUtils.runOnBackgroundThread(() -> requestBoard(b), 10000);
@@ -94,10 +111,33 @@ public class PageRepository {
         }
     }
 
-    private static synchronized void requestBoard(final Board b) {
+    /**
+     * Requests the pages for the board right away, unless a request for it is already running; listeners are notified
+     * when they are received.
+     */
+    public static synchronized void requestBoard(final Board b) {
         if (!requestedBoards.contains(b)) {
             requestedBoards.add(b);
-            b.site.actions().pages(b, (NetUtilsClasses.NoFailResponseResult<ChanPages>) result -> addPages(b, result));
+            b.site.actions().pages(b, new NetUtilsClasses.ResponseResult<ChanPages>() {
+                @Override
+                public void onFailure(Exception e) {
+                    onPagesFailed(b);
+                }
+
+                @Override
+                public void onSuccess(ChanPages result) {
+                    addPages(b, result);
+                }
+            });
+        }
+    }
+
+    private static synchronized void onPagesFailed(Board board) {
+        // allow the next request to go through
+        requestedBoards.remove(board);
+
+        for (PageCallback callback : callbackList) {
+            callback.onPagesFailed(board);
         }
     }
 
@@ -108,7 +148,7 @@ public class PageRepository {
         boardPagesMap.put(board, pages);
 
         for (PageCallback callback : callbackList) {
-            callback.onPagesReceived();
+            callback.onPagesReceived(board);
         }
     }
 
@@ -129,6 +169,14 @@ public class PageRepository {
     }
 
     public interface PageCallback {
-        void onPagesReceived();
+        /**
+         * Called on a background thread.
+         */
+        void onPagesReceived(Board board);
+
+        /**
+         * Called when requesting the board's pages failed.
+         */
+        default void onPagesFailed(Board board) {}
     }
 }
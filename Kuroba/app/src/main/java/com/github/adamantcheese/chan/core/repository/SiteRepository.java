@@ -12,8 +12,10 @@ import com.github.adamantcheese.chan.core.database.DatabasePinManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSiteManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.model.orm.SiteModel;
 import com.github.adamantcheese.chan.core.settings.primitives.JsonSettings;
 import com.github.adamantcheese.chan.core.site.Site;
@@ -151,7 +153,7 @@ public class SiteRepository {
     }
 
     public void removeSite(Site site) {
-        DatabaseUtils.runTask(() -> {
+        DatabaseUtils.runTask(DatabaseUtils.touching(() -> {
             removeFilters(site);
             instance(DatabaseBoardManager.class).deleteBoards(site).call();
 
@@ -165,7 +167,9 @@ public class SiteRepository {
             instance(DatabaseHideManager.class).deleteThreadHides(site).call();
             instance(DatabaseSiteManager.class).deleteSite(site).call();
             return null;
-        });
+        }, Loadable.class, Pin.class));
+        // the site's filters were deleted along with it
+        instance(FilterEngine.class).invalidateSnapshot();
     }
 
     private void removeFilters(Site site)
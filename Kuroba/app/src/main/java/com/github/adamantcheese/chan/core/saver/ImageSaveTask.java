@@ -24,16 +24,23 @@ import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 
 import com.github.adamantcheese.chan.BuildConfig;
+import com.github.adamantcheese.chan.core.database.DatabaseSavedDownloadManager;
+import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.SavedDownload;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 import com.github.k1rakishou.fsaf.FileManager;
 import com.github.k1rakishou.fsaf.file.AbstractFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -43,6 +50,7 @@ import io.reactivex.subjects.SingleSubject;
 import okhttp3.Call;
 
 import static com.github.adamantcheese.chan.Chan.inject;
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Failure;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Success;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
@@ -50,14 +58,30 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.openIntent;
 
 public class ImageSaveTask {
+    // where downloads are kept while they are incomplete
+    public static final String PARTIAL_DIR = "saving";
+
     @Inject
     FileManager fileManager;
 
+    @Inject
+    DatabaseSavedDownloadManager databaseSavedDownloadManager;
+
     private final PostImage postImage;
     private AbstractFile destination;
     private final boolean share;
     private String subFolder;
     private boolean success = false;
+    // set for album downloads, which are resumable
+    @Nullable
+    private SavedDownload record;
+    @Nullable
+    private ProgressResponseBody.ProgressListener progressListener;
+    private long downloadedBytes;
+    private long callBytes;
+    @Nullable
+    private Call download;
+    private boolean canceled;
     private final SingleSubject<ImageSaver.BundledDownloadResult> imageSaveTaskAsyncResult;
 
     public ImageSaveTask(PostImage postImage, boolean share) {
@@ -92,6 +116,59 @@ public class ImageSaveTask {
         return share;
     }
 
+    public void setRecord(@Nullable SavedDownload record) {
+        this.record = record;
+    }
+
+    @Nullable
+    public SavedDownload getRecord() {
+        return record;
+    }
+
+    public void setProgressListener(@Nullable ProgressResponseBody.ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @param callBytesRead the bytes read so far in the current call, as a progress listener gets them
+     * @param start         whether this is the first progress of a call
+     * @return the bytes that were read since the last time this was called
+     */
+    public synchronized long addDownloadedBytes(long callBytesRead, boolean start) {
+        if (start) {
+            callBytes = 0;
+        }
+        long read = callBytesRead - callBytes;
+        callBytes = callBytesRead;
+        downloadedBytes += read;
+        return read;
+    }
+
+    public synchronized long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    /**
+     * Cancels the download, if it was started or once it is; the task then fails with the call's cancellation.
+     */
+    public synchronized void cancel() {
+        canceled = true;
+        if (download != null) {
+            download.cancel();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return canceled || (download != null && download.isCanceled());
+    }
+
+    private synchronized void setDownload(@Nullable Call download) {
+        this.download = download;
+        if (canceled && download != null) {
+            download.cancel();
+        }
+    }
+
     public Single<ImageSaver.BundledDownloadResult> run() {
         BackgroundUtils.ensureBackgroundThread();
         Logger.d(this, "ImageSaveTask.run() destination = " + destination.getFullPath());
@@ -101,61 +178,229 @@ public class ImageSaveTask {
 
         try {
             if (fileManager.exists(destination)) {
+                if (record != null) {
+                    DatabaseUtils.runTaskAsync(databaseSavedDownloadManager.markDone(record,
+                            destination.getFullPath()
+                    ));
+                }
                 BackgroundUtils.runOnMainThread(() -> {
                     onDestination();
                     onEnd();
                 });
             } else {
-                Call download = NetUtils.makeFileRequest(postImage.imageUrl,
-                        postImage.filename,
-                        postImage.extension,
-                        new NetUtilsClasses.ResponseResult<File>() {
-                            @Override
-                            public void onFailure(Exception e) {
-                                BackgroundUtils.ensureMainThread();
-                                imageSaveTaskAsyncResult.onError(e);
+                if (share) {
+                    setDownload(downloadToCache());
+                } else if (record != null) {
+                    copyAlreadySavedOrDownload(record);
+                } else {
+                    setDownload(downloadToDestination());
+                }
+
+                onDisposeFunc = this::cancel;
+            }
+        } catch (Exception e) {
+            imageSaveTaskAsyncResult.onError(e);
+        }
+
+        if (onDisposeFunc != null) {
+            return imageSaveTaskAsyncResult.doOnDispose(onDisposeFunc);
+        }
 
+        return imageSaveTaskAsyncResult;
+    }
+
+    /**
+     * Shared files are handed out from the cache, so they are downloaded there.
+     */
+    private Call downloadToCache() {
+        return NetUtils.makeFileRequest(postImage.imageUrl,
+                postImage.filename,
+                postImage.extension,
+                new NetUtilsClasses.ResponseResult<File>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        BackgroundUtils.ensureMainThread();
+                        imageSaveTaskAsyncResult.onError(e);
+
+                        onEnd();
+                    }
+
+                    @Override
+                    public void onSuccess(File response) {
+                        BackgroundUtils.ensureMainThread();
+                        destination = fileManager.fromRawFile(response);
+                        onDestination();
+                        onEnd();
+                    }
+                },
+                null
+        );
+    }
+
+    /**
+     * If a file with the same hash was saved by an earlier album download and is still there, it's copied over instead
+     * of being downloaded again; otherwise the download is started, or continued if it was interrupted before.
+     */
+    private void copyAlreadySavedOrDownload(SavedDownload record) {
+        DatabaseUtils.runTaskAsync(databaseSavedDownloadManager.getSavedWithHash(record.fileHash),
+                alreadySaved -> BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService,
+                        () -> copyAlreadySaved(alreadySaved),
+                        copied -> {
+                            if (copied) {
+                                DatabaseUtils.runTaskAsync(databaseSavedDownloadManager.markDone(record,
+                                        destination.getFullPath()
+                                ));
+                                onDestination();
                                 onEnd();
+                            } else {
+                                setDownload(downloadResumable(record));
                             }
+                        }
+                )
+        );
+    }
 
-                            @Override
-                            public void onSuccess(File response) {
-                                BackgroundUtils.ensureMainThread();
-
-                                if (copyToDestination(response)) {
-                                    onDestination();
-                                } else {
-                                    if (fileManager.exists(destination)) {
-                                        if (!fileManager.delete(destination)) {
-                                            Logger.e(this, "Could not delete destination file after error");
-                                        }
-                                    }
-                                }
+    /**
+     * @return true if one of the given saved files still exists and is now in the destination
+     */
+    private boolean copyAlreadySaved(List<SavedDownload> alreadySaved) {
+        for (SavedDownload saved : alreadySaved) {
+            AbstractFile savedFile = saved.savedPath.startsWith("content://")
+                    ? fileManager.fromUri(Uri.parse(saved.savedPath))
+                    : fileManager.fromRawFile(new File(saved.savedPath));
+            if (savedFile == null || !fileManager.exists(savedFile)) continue;
 
-                                if (!share && !response.delete()) {
-                                    Logger.e(this, "Could not delete cached file");
+            try {
+                if (saved.savedPath.equals(destination.getFullPath())
+                        || fileManager.copyFileContents(savedFile, createDestination())) {
+                    Logger.d(this, "Already saved " + saved.savedPath + ", not downloading again");
+                    return true;
+                }
+            } catch (IOException e) {
+                Logger.e(this, "Could not copy saved file into destination", e);
+            }
+            // downloading it is still an option
+            if (fileManager.exists(destination) && !fileManager.delete(destination)) {
+                Logger.e(this, "Could not delete destination file after error");
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Album downloads go into a partial file first, so that they can continue from where they were if the app is closed
+     * in the middle of an album; the partial file is copied into the destination once it's complete.
+     */
+    private Call downloadResumable(SavedDownload record) {
+        File partialFile = new File(new File(getCacheDir(), PARTIAL_DIR), record.id + "." + record.extension);
+        return NetUtils.makeResumableFileRequest(postImage.imageUrl,
+                partialFile,
+                new NetUtilsClasses.ResponseResult<File>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        BackgroundUtils.ensureMainThread();
+                        if (isCanceled()) {
+                            // canceled album downloads aren't resumed
+                            //noinspection ResultOfMethodCallIgnored
+                            partialFile.delete();
+                        } else if (e instanceof NetUtilsClasses.HttpCodeException
+                                && ((NetUtilsClasses.HttpCodeException) e).code == 416) {
+                            // the partial file was already complete or is broken, start over the next time
+                            //noinspection ResultOfMethodCallIgnored
+                            partialFile.delete();
+                        }
+                        imageSaveTaskAsyncResult.onError(e);
+
+                        onEnd();
+                    }
+
+                    @Override
+                    public void onSuccess(File response) {
+                        BackgroundUtils.ensureMainThread();
+                        // a whole file is copied here, so it's kept off the main thread
+                        BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+                            try {
+                                if (!fileManager.copyFileContents(fileManager.fromRawFile(response),
+                                        createDestination()
+                                )) {
+                                    throw new IOException("Could not copy downloaded file into destination");
                                 }
-                                onEnd();
+                                DatabaseUtils.runTask(databaseSavedDownloadManager.markDone(record,
+                                        destination.getFullPath()
+                                ));
+                                return true;
+                            } catch (IOException e) {
+                                Logger.e(ImageSaveTask.this,
+                                        "Error writing to file: (" + destination.getFullPath() + ")",
+                                        e
+                                );
+                                if (fileManager.exists(destination) && !fileManager.delete(destination)) {
+                                    Logger.e(ImageSaveTask.this, "Could not delete destination file after error");
+                                }
+                                return false;
+                            } finally {
+                                //noinspection ResultOfMethodCallIgnored
+                                response.delete();
                             }
-                        },
-                        null
-                );
-
-                onDisposeFunc = () -> {
-                    if (download != null) {
-                        download.cancel();
+                        }, copied -> {
+                            if (copied) {
+                                onDestination();
+                            }
+                            onEnd();
+                        });
                     }
-                };
+                },
+                progressListener,
+                Priority.NORMAL
+        );
+    }
+
+    /**
+     * Saved files are written into their destination as they are downloaded, instead of being downloaded somewhere else
+     * and copied over after. If the download fails part way the destination is deleted again, so that a truncated file
+     * never counts as already saved.
+     */
+    private Call downloadToDestination() {
+        return NetUtils.makeFileRequest(postImage.imageUrl, () -> {
+            OutputStream outputStream = fileManager.getOutputStream(createDestination());
+            if (outputStream == null) {
+                throw new IOException("Could not open destination file, path = " + destination.getFullPath());
             }
-        } catch (Exception e) {
-            imageSaveTaskAsyncResult.onError(e);
-        }
+            return outputStream;
+        }, new NetUtilsClasses.ResponseResult<Long>() {
+            @Override
+            public void onFailure(Exception e) {
+                BackgroundUtils.ensureMainThread();
+                Logger.e(ImageSaveTask.this, "Error writing to file: (" + destination.getFullPath() + ")", e);
+                if (fileManager.exists(destination) && !fileManager.delete(destination)) {
+                    Logger.e(ImageSaveTask.this, "Could not delete destination file after error");
+                }
+                imageSaveTaskAsyncResult.onError(e);
 
-        if (onDisposeFunc != null) {
-            return imageSaveTaskAsyncResult.doOnDispose(onDisposeFunc);
+                onEnd();
+            }
+
+            @Override
+            public void onSuccess(Long response) {
+                BackgroundUtils.ensureMainThread();
+                onDestination();
+                onEnd();
+            }
+        }, progressListener);
+    }
+
+    private AbstractFile createDestination()
+            throws IOException {
+        AbstractFile createdDestinationFile = fileManager.create(destination);
+        if (createdDestinationFile == null) {
+            throw new IOException("Could not create destination file, path = " + destination.getFullPath());
         }
 
-        return imageSaveTaskAsyncResult;
+        if (fileManager.isDirectory(createdDestinationFile)) {
+            throw new IOException("Destination file is already a directory");
+        }
+        return createdDestinationFile;
     }
 
     private void onEnd() {
@@ -188,37 +433,4 @@ public class ImageSaveTask {
             MediaScannerConnection.scanFile(getAppContext(), paths, null, null);
         } catch (Exception ignored) {}
     }
-
-    private boolean copyToDestination(File source) {
-        try {
-            if (share) {
-                destination = fileManager.fromRawFile(source);
-            } else {
-                AbstractFile createdDestinationFile = fileManager.create(destination);
-                if (createdDestinationFile == null) {
-                    throw new IOException("Could not create destination file, path = " + destination.getFullPath());
-                }
-
-                if (fileManager.isDirectory(createdDestinationFile)) {
-                    throw new IOException("Destination file is already a directory");
-                }
-
-                if (!fileManager.copyFileContents(fileManager.fromRawFile(source), createdDestinationFile)) {
-                    throw new IOException("Could not copy source file into destination");
-                }
-            }
-            return true;
-        } catch (Throwable e) {
-            boolean exists = fileManager.exists(destination);
-            boolean canWrite = fileManager.canWrite(destination);
-
-            Logger.e(this,
-                    "Error writing to file: (" + destination.getFullPath() + "), " + "exists = " + exists
-                            + ", canWrite = " + canWrite,
-                    e
-            );
-        }
-
-        return false;
-    }
 }
@@ -20,6 +20,7 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.widget.Toast;
 
 import androidx.annotation.GuardedBy;
@@ -27,9 +28,13 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
+import com.github.adamantcheese.chan.Chan;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
+import com.github.adamantcheese.chan.core.database.DatabaseSavedDownloadManager;
+import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.SavedDownload;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.helper.RuntimePermissionsHelper;
 import com.github.adamantcheese.chan.ui.service.SavingNotification;
@@ -49,12 +54,14 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
@@ -74,6 +81,7 @@ import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 import static com.github.adamantcheese.chan.utils.StringUtils.maskImageUrl;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class ImageSaver {
     /**
@@ -82,6 +90,8 @@ public class ImageSaver {
      * for maximum amount of images processed concurrently.
      */
     private static final int CONCURRENT_REQUESTS_COUNT = 4;
+    // how often the notification is updated with download progress
+    private static final long NOTIFICATION_UPDATE_INTERVAL = SECONDS.toMillis(1);
     /**
      * We use unbounded queue and this variable is it's initial capacity.
      */
@@ -100,7 +110,20 @@ public class ImageSaver {
      */
     private final AtomicInteger failedTasks = new AtomicInteger(0);
 
+    /**
+     * For throughput and time left in a batch: the expected size of all images, the expected size of
+     * the images that are finished, all bytes downloaded and the bytes downloaded for finished images
+     */
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final AtomicLong finishedBytes = new AtomicLong(0);
+    private final AtomicLong downloadedBytes = new AtomicLong(0);
+    private final AtomicLong finishedDownloadedBytes = new AtomicLong(0);
+    private volatile long batchStartTime;
+    private volatile long lastNotificationUpdate;
+
     private final FileManager fileManager;
+    private final DatabaseSavedDownloadManager databaseSavedDownloadManager;
+    private boolean resumedPending;
 
     /**
      * Reactive queue used for batch image downloads.
@@ -114,6 +137,12 @@ public class ImageSaver {
     @GuardedBy("itself")
     private final Set<HttpUrl> activeDownloads = new HashSet<>(64);
 
+    /**
+     * The tasks that were started and haven't finished yet, so that their downloads can be canceled.
+     */
+    @GuardedBy("itself")
+    private final Set<ImageSaveTask> runningTasks = new HashSet<>();
+
     private final Scheduler workerScheduler = Schedulers.from(new ForkJoinPool(1));
 
     /**
@@ -121,8 +150,9 @@ public class ImageSaver {
      * dispose of this stream
      */
     @SuppressLint("CheckResult")
-    public ImageSaver(FileManager fileManager) {
+    public ImageSaver(FileManager fileManager, DatabaseSavedDownloadManager databaseSavedDownloadManager) {
         this.fileManager = fileManager;
+        this.databaseSavedDownloadManager = databaseSavedDownloadManager;
         EventBus.getDefault().register(this);
 
         imageSaverQueue
@@ -141,6 +171,9 @@ public class ImageSaver {
                                     return Single.just(Canceled);
                                 }
                             }
+                            synchronized (runningTasks) {
+                                runningTasks.add(task);
+                            }
 
                             return task.run();
                         })
@@ -290,11 +323,18 @@ public class ImageSaver {
     private void imageSaveTaskFailed(ImageSaveTask task, Throwable error) {
         BackgroundUtils.ensureMainThread();
         failedTasks.incrementAndGet();
+        taskSettled(task);
 
         synchronized (activeDownloads) {
             activeDownloads.remove(task.getPostImage().imageUrl);
         }
 
+        // connection problems leave the download to be resumed later; anything else won't get better by retrying
+        SavedDownload record = task.getRecord();
+        if (record != null && (!(error instanceof IOException) || task.isCanceled())) {
+            DatabaseUtils.runTaskAsync(databaseSavedDownloadManager.deleteDownload(record));
+        }
+
         if (checkBatchCompleted()) {
             onBatchCompleted();
         }
@@ -308,6 +348,12 @@ public class ImageSaver {
     private void imageSaveTaskFinished(ImageSaveTask task, BundledDownloadResult result) {
         BackgroundUtils.ensureMainThread();
         doneTasks.incrementAndGet();
+        taskSettled(task);
+
+        SavedDownload record = task.getRecord();
+        if (record != null && result != Success) {
+            DatabaseUtils.runTaskAsync(databaseSavedDownloadManager.deleteDownload(record));
+        }
 
         synchronized (activeDownloads) {
             activeDownloads.remove(task.getPostImage().imageUrl);
@@ -333,6 +379,14 @@ public class ImageSaver {
         }
     }
 
+    private void taskSettled(ImageSaveTask task) {
+        synchronized (runningTasks) {
+            runningTasks.remove(task);
+        }
+        finishedBytes.addAndGet(task.getPostImage().size);
+        finishedDownloadedBytes.addAndGet(task.getDownloadedBytes());
+    }
+
     private boolean checkBatchCompleted() {
         return doneTasks.get() + failedTasks.get() >= totalTasks.get();
     }
@@ -341,6 +395,10 @@ public class ImageSaver {
         totalTasks.set(0);
         doneTasks.set(0);
         failedTasks.set(0);
+        totalBytes.set(0);
+        finishedBytes.set(0);
+        downloadedBytes.set(0);
+        finishedDownloadedBytes.set(0);
 
         updateNotification();
     }
@@ -350,6 +408,56 @@ public class ImageSaver {
         cancelAll();
     }
 
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onEvent(Chan.ForegroundChangedMessage message) {
+        if (message.inForeground && !resumedPending) {
+            resumedPending = true;
+            resumePendingDownloads();
+        }
+    }
+
+    /**
+     * Album downloads that didn't finish the last time the app ran are started again, continuing
+     * any partially downloaded files.
+     */
+    @SuppressLint("CheckResult")
+    private void resumePendingDownloads() {
+        Single.fromCallable(() -> {
+            BackgroundUtils.ensureBackgroundThread();
+            List<SavedDownload> pending = DatabaseUtils.runTask(databaseSavedDownloadManager.getPendingDownloads());
+            if (pending.isEmpty()) return false;
+
+            boolean hasPermission = ContextCompat.checkSelfPermission(getAppContext(),
+                    Manifest.permission.WRITE_EXTERNAL_STORAGE
+            ) == PackageManager.PERMISSION_GRANTED;
+            if (!hasPermission || !fileManager.baseDirectoryExists(SavedFilesBaseDirectory.class)) {
+                // leave them for when this is fixed
+                return false;
+            }
+
+            Logger.d(this, "Resuming " + pending.size() + " album downloads");
+            for (SavedDownload record : pending) {
+                ImageSaveTask task = new ImageSaveTask(record.toPostImage(), false);
+                task.setSubFolder(record.subFolder);
+
+                AbstractFile saveLocation = getSaveLocation(task);
+                if (saveLocation == null) {
+                    DatabaseUtils.runTask(databaseSavedDownloadManager.deleteDownload(record));
+                    continue;
+                }
+
+                task.setDestination(deduplicateFile(task.getPostImage(), task, saveLocation, true));
+                startAlbumTask(task, record);
+            }
+            return true;
+        })
+                .subscribeOn(workerScheduler)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe((resumed) -> updateNotification(),
+                        (error) -> Logger.e(this, "Could not resume album downloads", error)
+                );
+    }
+
     /**
      * We really need to run this thing on a background thread because all the file-checks may take
      * a lot of times (and ANR the app) if the base directory uses SAF and there a lot of files in
@@ -370,7 +478,9 @@ public class ImageSaver {
                 }
 
                 task.setDestination(deduplicateFile(postImage, task, saveLocation, true));
-                startTask(task);
+                SavedDownload record = DatabaseUtils.runTask(databaseSavedDownloadManager.addDownload(
+                        SavedDownload.fromPostImage(postImage, task.getSubFolder())));
+                startAlbumTask(task, record);
             }
 
             return allSuccess;
@@ -380,20 +490,49 @@ public class ImageSaver {
                 .doOnEvent((event, throwable) -> updateNotification());
     }
 
+    private void startAlbumTask(ImageSaveTask task, SavedDownload record) {
+        task.setRecord(record);
+        task.setProgressListener((source, bytesRead, contentLength, start, done) -> {
+            downloadedBytes.addAndGet(task.addDownloadedBytes(bytesRead, start));
+
+            long now = System.currentTimeMillis();
+            if (now - lastNotificationUpdate > NOTIFICATION_UPDATE_INTERVAL) {
+                lastNotificationUpdate = now;
+                BackgroundUtils.runOnMainThread(this::updateNotification);
+            }
+        });
+        totalBytes.addAndGet(task.getPostImage().size);
+        startTask(task);
+    }
+
     private void startTask(ImageSaveTask task) {
         synchronized (activeDownloads) {
             activeDownloads.add(task.getPostImage().imageUrl);
         }
 
-        totalTasks.incrementAndGet();
+        if (totalTasks.getAndIncrement() == 0) {
+            batchStartTime = System.currentTimeMillis();
+        }
         imageSaverQueue.onNext(task);
     }
 
+    /**
+     * Tasks that haven't started yet finish as canceled, and running tasks have their downloads canceled; either way
+     * their album rows and partial files are deleted as they finish, so canceled album downloads aren't resumed.
+     */
     private void cancelAll() {
         synchronized (activeDownloads) {
             activeDownloads.clear();
         }
 
+        List<ImageSaveTask> running;
+        synchronized (runningTasks) {
+            running = new ArrayList<>(runningTasks);
+        }
+        for (ImageSaveTask task : running) {
+            task.cancel();
+        }
+
         onBatchCompleted();
     }
 
@@ -408,6 +547,7 @@ public class ImageSaver {
                 service.putExtra(SavingNotification.DONE_TASKS_KEY, doneTasks.get());
                 service.putExtra(SavingNotification.FAILED_TASKS_KEY, failedTasks.get());
                 service.putExtra(SavingNotification.TOTAL_TASKS_KEY, totalTasks.get());
+                putThroughput(service);
                 ContextCompat.startForegroundService(getAppContext(), service);
             } else {
                 getAppContext().stopService(service);
@@ -415,6 +555,20 @@ public class ImageSaver {
         }
     }
 
+    private void putThroughput(Intent service) {
+        long elapsed = System.currentTimeMillis() - batchStartTime;
+        long downloaded = downloadedBytes.get();
+        if (elapsed <= 0 || downloaded <= 0) return;
+
+        long bytesPerSecond = downloaded * 1000 / elapsed;
+        long inProgress = downloaded - finishedDownloadedBytes.get();
+        long remaining = Math.max(0, totalBytes.get() - finishedBytes.get() - inProgress);
+        service.putExtra(SavingNotification.BYTES_PER_SECOND_KEY, bytesPerSecond);
+        if (bytesPerSecond > 0) {
+            service.putExtra(SavingNotification.SECONDS_LEFT_KEY, remaining / bytesPerSecond);
+        }
+    }
+
     private String getText(ImageSaveTask task, boolean wasAlbumSave) {
         BackgroundUtils.ensureMainThread();
 
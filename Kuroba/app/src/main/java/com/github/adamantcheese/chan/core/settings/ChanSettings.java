@@ -180,6 +180,7 @@ public class ChanSettings {
     public static final OptionsSetting<WatchNotifyMode> watchNotifyMode;
     public static final OptionsSetting<WatchNotifyMode> watchSound;
     public static final BooleanSetting watchPeek;
+    public static final BooleanSetting watchBoardPages;
     //endregion
 
     //region APPEARANCE
@@ -293,6 +294,7 @@ public class ChanSettings {
     public static final OptionsSetting<ImageClickPreloadStrategy> imageClickPreloadStrategy;
     public static final BooleanSetting autoLoadThreadImages;
     public static final IntegerSetting fileCacheSize;
+    public static final IntegerSetting savedThreadsSize;
     //endregion
 
     //region EXPERIMENTAL
@@ -309,6 +311,7 @@ public class ChanSettings {
     public static final BooleanSetting debugFilters;
     public static final BooleanSetting crashOnWrongThread;
     public static final BooleanSetting verboseLogs;
+    public static final BooleanSetting singlePassCommentParsing;
     //endregion
 
     //region DATA
@@ -342,6 +345,7 @@ public class ChanSettings {
                     WatchNotifyMode.NOTIFY_ONLY_QUOTES
             );
             watchPeek = new BooleanSetting(p, "preference_watch_peek", true);
+            watchBoardPages = new BooleanSetting(p, "preference_watch_board_pages", true);
             //endregion
 
             //region APPEARANCE
@@ -479,6 +483,7 @@ public class ChanSettings {
             );
             autoLoadThreadImages = new BooleanSetting(p, "preference_auto_load_thread", false);
             fileCacheSize = new IntegerSetting(p, "preference_file_cache_size", 512);
+            savedThreadsSize = new IntegerSetting(p, "preference_saved_threads_size", 500);
             //endregion
 
             //region EXPERIMENTAL
@@ -495,6 +500,7 @@ public class ChanSettings {
             debugFilters = new BooleanSetting(p, "debug_filters", false);
             crashOnWrongThread = new BooleanSetting(p, "crash_on_wrong_thread", true);
             verboseLogs = new BooleanSetting(p, "verbose_logs", false);
+            singlePassCommentParsing = new BooleanSetting(p, "single_pass_comment_parsing", true);
             //endregion
 
             //region DATA
@@ -28,6 +28,7 @@ import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.R;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
@@ -50,6 +51,9 @@ import org.jsoup.parser.Parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,7 +68,16 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
 @AnyThread
 public class DefaultPostParser
         implements PostParser {
+    // comment html to spans, by the way it was parsed; see getSummary()
+    private static final AtomicLong singlePassComments = new AtomicLong();
+    private static final AtomicLong singlePassNanos = new AtomicLong();
+    private static final AtomicLong jsoupComments = new AtomicLong();
+    private static final AtomicLong jsoupNanos = new AtomicLong();
+    private static final AtomicLong fallbackComments = new AtomicLong();
+    private static final AtomicLong fallbackNanos = new AtomicLong();
+
     private final CommentParser commentParser;
+    private final SinglePassCommentParser singlePassParser;
     @Inject
     private FilterEngine filterEngine;
 
@@ -81,11 +94,12 @@ public class DefaultPostParser
 
     public DefaultPostParser(CommentParser commentParser) {
         this.commentParser = commentParser;
+        singlePassParser = commentParser.isSinglePass() ? new SinglePassCommentParser(commentParser, this) : null;
         inject(this);
     }
 
     @Override
-    public Post parse(@NonNull Theme theme, Post.Builder builder, List<Filter> filters, Callback callback) {
+    public Post parse(@NonNull Theme theme, Post.Builder builder, CompiledFilters filters, Callback callback) {
         if (!TextUtils.isEmpty(builder.name)) {
             builder.name = Parser.unescapeEntities(builder.name, false);
         }
@@ -226,9 +240,33 @@ public class DefaultPostParser
                 comment = strikePattern.matcher(comment).replaceAll("<strike>$1</strike>");
             }
 
+            long start = System.nanoTime();
+            boolean singlePass = singlePassParser != null && ChanSettings.singlePassCommentParsing.get();
+            if (singlePass) {
+                try {
+                    SpannableStringBuilder parsed =
+                            singlePassParser.parse(theme, post, callback, comment, ChanSettings.enableEmoji.get());
+                    if (parsed != null) {
+                        singlePassNanos.addAndGet(System.nanoTime() - start);
+                        singlePassComments.incrementAndGet();
+                        return parsed;
+                    }
+                } catch (Exception e) {
+                    Logger.e(this, "Error parsing comment html in a single pass, retrying with Jsoup", e);
+                }
+            }
+
             for (Node node : Jsoup.parseBodyFragment(comment).body().childNodes()) {
                 total.append(parseNode(theme, post, callback, node));
             }
+            // fallbacks include the single pass attempt, and are mostly comments with tables or misnested tags
+            if (singlePass) {
+                fallbackNanos.addAndGet(System.nanoTime() - start);
+                fallbackComments.incrementAndGet();
+            } else {
+                jsoupNanos.addAndGet(System.nanoTime() - start);
+                jsoupComments.incrementAndGet();
+            }
         } catch (Exception e) {
             Logger.e(this, "Error parsing comment html", e);
         }
@@ -236,6 +274,23 @@ public class DefaultPostParser
         return total;
     }
 
+    public static String getSummary() {
+        return String.format(Locale.ENGLISH,
+                "Single pass: %d (average %d µs)\nJsoup: %d (average %d µs)\nFell back to Jsoup: %d (average %d µs)",
+                singlePassComments.get(),
+                averageMicros(singlePassNanos, singlePassComments),
+                jsoupComments.get(),
+                averageMicros(jsoupNanos, jsoupComments),
+                fallbackComments.get(),
+                averageMicros(fallbackNanos, fallbackComments)
+        );
+    }
+
+    private static long averageMicros(AtomicLong nanos, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos.get() / n);
+    }
+
     private SpannableStringBuilder parseNode(@NonNull Theme theme, Post.Builder post, Callback callback, Node node) {
         if (node instanceof TextNode) {
             String text = ((TextNode) node).getWholeText();
@@ -269,7 +324,7 @@ public class DefaultPostParser
     // find that bad boy on LibGen, it's good stuff
     private final Pattern MATH_PATTERN = Pattern.compile("\\[(math|eqn)].*?\\[/\\1]");
 
-    private String processEmojiMath(String text) {
+    String processEmojiMath(String text) {
         StringBuilder rebuilder = new StringBuilder();
         Matcher regexMatcher = MATH_PATTERN.matcher(text);
         int lastIndex = 0;
@@ -282,24 +337,22 @@ public class DefaultPostParser
         return rebuilder.toString();
     }
 
-    private void processPostFilter(List<Filter> filters, Post.Builder post) {
-        for (Filter f : filters) {
+    private void processPostFilter(CompiledFilters filters, Post.Builder post) {
+        for (Filter f : filterEngine.matches(filters, post)) {
             FilterEngine.FilterAction action = FilterEngine.FilterAction.forId(f.action);
-            if (filterEngine.matches(f, post)) {
-                switch (action) {
-                    case COLOR:
-                        post.filter(f.color, false, false, false, f.applyToReplies, f.onlyOnOP, f.applyToSaved);
-                        break;
-                    case HIDE:
-                        post.filter(0, true, false, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case REMOVE:
-                        post.filter(0, false, true, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case WATCH:
-                        post.filter(0, false, false, true, false, true, false);
-                        break;
-                }
+            switch (action) {
+                case COLOR:
+                    post.filter(f.color, false, false, false, f.applyToReplies, f.onlyOnOP, f.applyToSaved);
+                    break;
+                case HIDE:
+                    post.filter(0, true, false, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case REMOVE:
+                    post.filter(0, false, true, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case WATCH:
+                    post.filter(0, false, false, true, false, true, false);
+                    break;
             }
         }
     }
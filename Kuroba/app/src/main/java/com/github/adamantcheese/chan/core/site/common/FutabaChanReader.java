@@ -31,7 +31,7 @@ public class FutabaChanReader
     private final PostParser postParser;
 
     public FutabaChanReader() {
-        CommentParser commentParser = new CommentParser().addDefaultRules();
+        CommentParser commentParser = new CommentParser().addDefaultRules().singlePass();
         this.postParser = new DefaultPostParser(commentParser);
     }
 
@@ -85,6 +85,7 @@ public class FutabaChanReader
             }
 
             reader.endObject();
+            queue.endPage();
         }
 
         reader.endArray();
@@ -0,0 +1,114 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.common;
+
+import android.text.SpannableStringBuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser;
+import com.github.adamantcheese.chan.core.site.parser.PostParser;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+
+/**
+ * Turns comment HTML into a spannable in a single forward pass over the string, without building a Jsoup document
+ * first; see {@link SinglePassHtmlReader} for the walk itself.<br>
+ * Each open element collects the spans of its children so far; when an element is done, the {@link CommentParser}
+ * rules for it are applied and the result is appended to its parent. The rules get a detached {@link Element} with the
+ * tag's attributes and inner text, which is all the default rules look at.
+ */
+class SinglePassCommentParser {
+    private final CommentParser commentParser;
+    private final DefaultPostParser postParser;
+
+    SinglePassCommentParser(CommentParser commentParser, DefaultPostParser postParser) {
+        this.commentParser = commentParser;
+        this.postParser = postParser;
+    }
+
+    /**
+     * @return the parsed comment, or null if the HTML needs a full parse
+     */
+    @Nullable
+    SpannableStringBuilder parse(
+            @NonNull Theme theme, Post.Builder post, PostParser.Callback callback, String html, boolean emoji
+    ) {
+        Content root = new Content(null);
+        boolean read = SinglePassHtmlReader.read(html, root, new SinglePassHtmlReader.Handler<Content>() {
+            @Override
+            public Content open(String name, Attributes attributes) {
+                return new Content(attributes);
+            }
+
+            @Override
+            public void text(Content parent, String text) {
+                //emoji parse disable for [code] and [eqn]
+                if (emoji && !(parent.attributes != null && hasClass(parent.attributes, "prettyprint"))
+                        && !text.startsWith("[eqn]")) {
+                    text = postParser.processEmojiMath(text);
+                }
+                parent.text.append(text);
+            }
+
+            @Override
+            public void close(Content parent, Content content, Element element, boolean hasNextSibling) {
+                // block rules only add a line break if something follows the element
+                CharSequence result = commentParser.handleTag(callback,
+                        theme,
+                        post,
+                        element.tagName(),
+                        content.text,
+                        element,
+                        hasNextSibling
+                );
+                if (result != null) {
+                    parent.text.append(result);
+                }
+            }
+        });
+        return read ? root.text : null;
+    }
+
+    private static boolean hasClass(Attributes attributes, String className) {
+        String classes = attributes.get("class");
+        int index = classes.indexOf(className);
+        while (index >= 0) {
+            int end = index + className.length();
+            if ((index == 0 || Character.isWhitespace(classes.charAt(index - 1))) && (end == classes.length()
+                    || Character.isWhitespace(classes.charAt(end)))) {
+                return true;
+            }
+            index = classes.indexOf(className, index + 1);
+        }
+        return false;
+    }
+
+    private static class Content {
+        @Nullable
+        private final Attributes attributes;
+        private final SpannableStringBuilder text = new SpannableStringBuilder();
+
+        private Content(@Nullable Attributes attributes) {
+            this.attributes = attributes;
+        }
+    }
+}
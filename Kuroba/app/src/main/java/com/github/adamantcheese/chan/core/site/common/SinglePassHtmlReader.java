@@ -0,0 +1,403 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.common;
+
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The tree walk behind {@link SinglePassCommentParser}: one forward pass over comment HTML that hands its text and
+ * elements to a {@link Handler}, innermost first, the same way a walk over the Jsoup document would.<br>
+ * Only open elements are kept around. A closed element is held back until the next thing in its parent, or the end of
+ * its parent, shows whether anything follows it; that is Jsoup's {@link org.jsoup.nodes.Node#nextSibling()}, for which
+ * text (even only whitespace), comments and elements all count.<br>
+ * This covers the well-formed subset of HTML that imageboards put in comments. Anything that Jsoup's tree builder would
+ * restructure, like tables or misnested tags, makes {@link #read} give up so that the comment can go through Jsoup.
+ */
+class SinglePassHtmlReader {
+    // elements that never have content, same as Jsoup's void tags
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList("br",
+            "wbr",
+            "img",
+            "hr",
+            "input",
+            "meta",
+            "link",
+            "area",
+            "base",
+            "col",
+            "embed",
+            "param",
+            "source",
+            "track"
+    ));
+    // elements whose rules query child elements, that the tree builder moves or drops outside of their parents, or
+    // that have raw text in them
+    private static final Set<String> FULL_PARSE_TAGS = new HashSet<>(Arrays.asList("table",
+            "caption",
+            "colgroup",
+            "tbody",
+            "thead",
+            "tfoot",
+            "tr",
+            "td",
+            "th",
+            "ul",
+            "ol",
+            "dl",
+            "select",
+            "form",
+            "html",
+            "head",
+            "body",
+            "frameset",
+            "frame",
+            "template",
+            "script",
+            "style",
+            "title",
+            "textarea",
+            "xmp",
+            "iframe",
+            "noembed",
+            "noframes",
+            "noscript",
+            "plaintext",
+            "image",
+            "isindex",
+            "svg",
+            "math"
+    ));
+    // blocks implicitly close an open <p>
+    private static final Set<String> BLOCK_TAGS =
+            new HashSet<>(Arrays.asList("p", "div", "pre", "blockquote", "h1", "h2", "h3", "h4", "h5", "h6", "hr"));
+    // elements that implicitly close an open element with the same name
+    private static final Set<String> NON_NESTING_TAGS = new HashSet<>(Arrays.asList("a",
+            "p",
+            "li",
+            "dd",
+            "dt",
+            "option",
+            "button",
+            "nobr",
+            "h1",
+            "h2",
+            "h3",
+            "h4",
+            "h5",
+            "h6"
+    ));
+
+    interface Handler<T> {
+        /**
+         * @return what the content of a newly opened element is collected in
+         */
+        T open(String name, Attributes attributes);
+
+        /**
+         * @param text unescaped text in the parent
+         */
+        void text(T parent, String text);
+
+        /**
+         * An element is done; everything in it was handed to its content before this.
+         *
+         * @param element        a detached element with the tag's attributes and all of the text in it
+         * @param hasNextSibling whether anything follows the element in its parent
+         */
+        void close(T parent, T content, Element element, boolean hasNextSibling);
+    }
+
+    /**
+     * @param root what the top level content is collected in
+     * @return false if the HTML needs a full parse; the handler may have been given part of it already then
+     */
+    static <T> boolean read(String html, T root, Handler<T> handler) {
+        List<Open<T>> stack = new ArrayList<>();
+        stack.add(new Open<>(null, null, root));
+
+        int len = html.length();
+        int pos = 0;
+        while (pos < len) {
+            Open<T> current = stack.get(stack.size() - 1);
+            int tagStart = html.indexOf('<', pos);
+            if (tagStart < 0) tagStart = len;
+
+            if (tagStart > pos) {
+                appendText(current, html.substring(pos, tagStart), handler);
+                pos = tagStart;
+                continue;
+            }
+
+            // at a '<'
+            if (html.startsWith("<!--", pos)) {
+                int end = html.indexOf("-->", pos + 4);
+                pos = end < 0 ? len : end + 3;
+                // comments are nodes too
+                finishPending(current, true, handler);
+            } else if (pos + 1 < len && (html.charAt(pos + 1) == '!' || html.charAt(pos + 1) == '?')) {
+                int end = html.indexOf('>', pos);
+                // the tree builder drops a doctype, anything else like this becomes a comment
+                if (!html.regionMatches(true, pos + 2, "doctype", 0, 7)) {
+                    finishPending(current, true, handler);
+                }
+                pos = end < 0 ? len : end + 1;
+            } else if (pos + 1 < len && html.charAt(pos + 1) == '/') {
+                int nameEnd = readName(html, pos + 2);
+                int end = html.indexOf('>', nameEnd);
+                if (nameEnd == pos + 2 || end < 0) {
+                    // not a tag after all
+                    appendText(current, "<", handler);
+                    pos++;
+                    continue;
+                }
+                String name = html.substring(pos + 2, nameEnd).toLowerCase(Locale.ENGLISH);
+                pos = end + 1;
+
+                int match = -1;
+                for (int i = stack.size() - 1; i > 0; i--) {
+                    if (stack.get(i).name.equals(name)) {
+                        match = i;
+                        break;
+                    }
+                }
+                if (match > 0) {
+                    // misnested tags get reopened by the tree builder
+                    if (match != stack.size() - 1) return false;
+                    close(stack, handler);
+                } else if (name.equals("p") || name.equals("br")) {
+                    // these turn into elements when they don't close anything
+                    return false;
+                }
+                // other stray end tags are dropped
+            } else {
+                int nameEnd = readName(html, pos + 1);
+                if (nameEnd == pos + 1) {
+                    appendText(current, "<", handler);
+                    pos++;
+                    continue;
+                }
+                String name = html.substring(pos + 1, nameEnd).toLowerCase(Locale.ENGLISH);
+                if (FULL_PARSE_TAGS.contains(name)) return false;
+                if (BLOCK_TAGS.contains(name) && isOpen(stack, "p")) return false;
+                if (NON_NESTING_TAGS.contains(name) && isOpen(stack, name)) return false;
+
+                StartTag startTag = new StartTag();
+                pos = readAttributes(html, nameEnd, startTag);
+                if (pos < 0) return false;
+
+                finishPending(current, true, handler);
+                stack.add(new Open<>(name, startTag.attributes, handler.open(name, startTag.attributes)));
+                if (startTag.selfClosing || VOID_TAGS.contains(name)) {
+                    close(stack, handler);
+                } else if (name.equals("pre") && pos < len && html.charAt(pos) == '\n') {
+                    // a newline right after <pre> isn't content
+                    pos++;
+                }
+            }
+        }
+
+        while (stack.size() > 1) {
+            close(stack, handler);
+        }
+        finishPending(stack.get(0), false, handler);
+        return true;
+    }
+
+    private static <T> void appendText(Open<T> parent, String text, Handler<T> handler) {
+        String decoded = unescape(text, false);
+        finishPending(parent, true, handler);
+        parent.plainText.append(decoded);
+        handler.text(parent.content, decoded);
+    }
+
+    private static <T> void close(List<Open<T>> stack, Handler<T> handler) {
+        Open<T> open = stack.remove(stack.size() - 1);
+        // nothing follows the last child of an element that is closing
+        finishPending(open, false, handler);
+        Open<T> parent = stack.get(stack.size() - 1);
+        parent.plainText.append(open.plainText);
+        parent.pending = open;
+    }
+
+    /**
+     * Hands the parent's last closed child to the handler, now that it's known whether anything follows it.
+     */
+    private static <T> void finishPending(Open<T> parent, boolean hasNextSibling, Handler<T> handler) {
+        Open<T> pending = parent.pending;
+        if (pending == null) return;
+        parent.pending = null;
+
+        Element element = new Element(Tag.valueOf(pending.name), "", pending.attributes);
+        if (pending.plainText.length() > 0) {
+            element.appendChild(new TextNode(pending.plainText.toString()));
+        }
+        handler.close(parent.content, pending.content, element, hasNextSibling);
+    }
+
+    /**
+     * Unescapes the handful of entities that imageboards actually send by hand, as Jsoup sets up a whole tokeniser for
+     * every call; anything else still goes through Jsoup.
+     */
+    private static String unescape(String text, boolean inAttribute) {
+        int amp = text.indexOf('&');
+        if (amp < 0) return text;
+
+        StringBuilder result = new StringBuilder(text.length());
+        result.append(text, 0, amp);
+        int pos = amp;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c != '&') {
+                result.append(c);
+                pos++;
+                continue;
+            }
+            int semicolon = text.indexOf(';', pos);
+            String entity = semicolon < 0 ? "" : text.substring(pos + 1, semicolon);
+            char decoded = 0;
+            switch (entity) {
+                case "gt":
+                    decoded = '>';
+                    break;
+                case "lt":
+                    decoded = '<';
+                    break;
+                case "amp":
+                    decoded = '&';
+                    break;
+                case "quot":
+                    decoded = '"';
+                    break;
+                case "#039":
+                case "#39":
+                case "apos":
+                    decoded = '\'';
+                    break;
+            }
+            if (decoded == 0) {
+                return Parser.unescapeEntities(text, inAttribute);
+            }
+            result.append(decoded);
+            pos = semicolon + 1;
+        }
+        return result.toString();
+    }
+
+    private static <T> boolean isOpen(List<Open<T>> stack, String name) {
+        for (int i = stack.size() - 1; i > 0; i--) {
+            if (stack.get(i).name.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private static int readName(String html, int pos) {
+        int len = html.length();
+        if (pos >= len || !Character.isLetter(html.charAt(pos))) return pos;
+        while (pos < len) {
+            char c = html.charAt(pos);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != ':') break;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the position after the tag's closing '>', or -1 if the tag doesn't end
+     */
+    private static int readAttributes(String html, int pos, StartTag startTag) {
+        int len = html.length();
+        while (pos < len) {
+            char c = html.charAt(pos);
+            if (c == '>') return pos + 1;
+            if (Character.isWhitespace(c) || c == '/') {
+                startTag.selfClosing = c == '/' && pos + 1 < len && html.charAt(pos + 1) == '>';
+                pos++;
+                continue;
+            }
+
+            int nameStart = pos;
+            while (pos < len) {
+                c = html.charAt(pos);
+                if (Character.isWhitespace(c) || c == '=' || c == '>' || c == '/') break;
+                pos++;
+            }
+            String name = html.substring(nameStart, pos).toLowerCase(Locale.ENGLISH);
+
+            while (pos < len && Character.isWhitespace(html.charAt(pos))) pos++;
+            String value = "";
+            if (pos < len && html.charAt(pos) == '=') {
+                pos++;
+                while (pos < len && Character.isWhitespace(html.charAt(pos))) pos++;
+                if (pos >= len) return -1;
+                char quote = html.charAt(pos);
+                int valueEnd;
+                if (quote == '"' || quote == '\'') {
+                    valueEnd = html.indexOf(quote, pos + 1);
+                    if (valueEnd < 0) return -1;
+                    value = html.substring(pos + 1, valueEnd);
+                    pos = valueEnd + 1;
+                } else {
+                    valueEnd = pos;
+                    while (valueEnd < len && !Character.isWhitespace(html.charAt(valueEnd))
+                            && html.charAt(valueEnd) != '>') {
+                        valueEnd++;
+                    }
+                    value = html.substring(pos, valueEnd);
+                    pos = valueEnd;
+                }
+                value = unescape(value, true);
+            }
+            // first one wins, like in Jsoup
+            if (!name.isEmpty() && !startTag.attributes.hasKey(name)) {
+                startTag.attributes.put(name, value);
+            }
+        }
+        return -1;
+    }
+
+    private static class StartTag {
+        private final Attributes attributes = new Attributes();
+        private boolean selfClosing;
+    }
+
+    private static class Open<T> {
+        private final String name;
+        private final Attributes attributes;
+        private final T content;
+        // the text of all descendants without any rules applied, for Element.text()
+        private final StringBuilder plainText = new StringBuilder();
+        // the last child, if it's a closed element that isn't handed to the handler yet
+        private Open<T> pending;
+
+        private Open(String name, Attributes attributes, T content) {
+            this.name = name;
+            this.attributes = attributes;
+            this.content = content;
+        }
+    }
+}
@@ -75,6 +75,7 @@ public class TaimabaApi
             }
 
             reader.endObject();
+            queue.endPage();
         }
 
         reader.endArray();
@@ -91,10 +91,7 @@ public class VichanAntispam {
                     return res;
                 }).chain(NetUtilsClasses.HTML_CONVERTER),
                 callback,
-                null,
-                NetUtilsClasses.NO_CACHE,
-                0,
-                true
+                new NetUtilsClasses.CallOptions().cacheControl(NetUtilsClasses.NO_CACHE)
         );
     }
 }
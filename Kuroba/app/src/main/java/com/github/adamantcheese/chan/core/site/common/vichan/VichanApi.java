@@ -99,6 +99,7 @@ public class VichanApi
             }
 
             reader.endObject();
+            queue.endPage();
         }
 
         reader.endArray();
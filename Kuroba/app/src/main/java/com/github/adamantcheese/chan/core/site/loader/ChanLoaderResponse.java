@@ -16,6 +16,8 @@
  */
 package com.github.adamantcheese.chan.core.site.loader;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 
@@ -25,6 +27,12 @@ public class ChanLoaderResponse {
     public final Post.Builder op;
     public final NoDeleteArrayList<Post> posts = new NoDeleteArrayList<>();
 
+    // For threads, the posts that had to be parsed, as they were before parsing; see ThreadDiskCache
+    @Nullable
+    public byte[] cacheRecords;
+    // Whether the cache records are for the whole thread, rather than just what's new since the previous load
+    public boolean cacheComplete;
+
     public ChanLoaderResponse(Post.Builder op) {
         this.op = op;
     }
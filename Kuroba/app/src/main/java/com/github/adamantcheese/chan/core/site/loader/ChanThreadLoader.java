@@ -31,37 +31,49 @@ import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.CallOptions;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Converter;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
+import com.github.adamantcheese.chan.core.repository.PageRepository;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
 import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 import javax.net.ssl.SSLException;
 
 import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
+import okhttp3.Response;
 
 import static com.github.adamantcheese.chan.Chan.inject;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.JSON_CONVERTER;
 
 /**
  * A ChanThreadLoader is the loader for Loadables.
  * <p>Obtain ChanLoaders with {@link ChanLoaderManager}.
  * <p>ChanLoaders can load boards and threads, and return {@link ChanThread} objects on success, through
  * {@link ChanLoaderCallback}.
- * <p>For threads timers can be started with {@link #setTimer()} to do a request later.
+ * <p>For threads timers can be started with {@link #setTimer()} to do a request later, when the
+ * {@link PostRateEstimator} expects the next post.
  */
 public class ChanThreadLoader {
-    private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
+    // how long a response may be served from OkHttp's cache, at most
+    private static final long MAX_CACHE_AGE_SECONDS = 5;
 
     private final List<ChanLoaderCallback> listeners = new CopyOnWriteArrayList<>();
 
@@ -74,9 +86,20 @@ public class ChanThreadLoader {
     @Nullable
     private ScheduledFuture<?> pendingFuture;
 
-    private int currentTimeout = 0;
-    private int lastPostCount;
+    private final PostRateEstimator postRate = new PostRateEstimator();
+    // time from the last load until the next one, in milliseconds
+    private long loadInterval = PostRateEstimator.MIN_INTERVAL;
     private long lastLoadTime;
+    // incremented for every fresh load, so that partial results from a cancelled load are dropped
+    private int loadGeneration;
+    // the disk cache is only used for the first load, reloading after that always goes to the network
+    private boolean diskCacheChecked;
+
+    // Validators from the last successfully parsed response; sent back on refreshes so unchanged threads return a 304
+    @Nullable
+    private String lastModified;
+    @Nullable
+    private String etag;
 
     @Inject
     private WatchManager watchManager;
@@ -150,13 +173,92 @@ public class ChanThreadLoader {
             loadable.listViewTop = 0;
         }
 
-        currentTimeout = -1;
+        postRate.reset();
 
         synchronized (this) {
             thread = null;
+            lastModified = null;
+            etag = null;
+            loadGeneration++;
         }
 
-        call = getData();
+        if (loadable.isThreadMode() && !diskCacheChecked) {
+            diskCacheChecked = true;
+            loadFromDiskCache();
+        } else {
+            call = getData();
+        }
+    }
+
+    /**
+     * Show the thread from the disk cache, or from {@link ThreadArchive} if it was saved, then refresh it from the
+     * network like any loaded thread.
+     */
+    private void loadFromDiskCache() {
+        final int generation;
+        synchronized (this) {
+            generation = loadGeneration;
+        }
+        final Priority priority = getParsePriority();
+
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            ChanThread cachedThread = null;
+            try {
+                ThreadDiskCache.CachedThread cachedPosts = ThreadDiskCache.read(loadable);
+                if (cachedPosts == null) {
+                    cachedPosts = ThreadArchive.read(loadable);
+                }
+                cachedThread = setCachedThread(cachedPosts, generation, priority);
+            } catch (Exception e) {
+                Logger.e(ChanThreadLoader.this, "Error loading thread from the disk cache", e);
+                ThreadDiskCache.remove(loadable);
+            }
+
+            final ChanThread localThread = cachedThread;
+            BackgroundUtils.runOnMainThread(() -> {
+                synchronized (this) {
+                    // another load was started in the meantime, which takes care of everything
+                    if (generation != loadGeneration) return;
+                }
+                if (listeners.isEmpty()) return;
+
+                if (localThread != null) {
+                    for (ChanLoaderCallback l : listeners) {
+                        l.onChanLoaderData(localThread);
+                    }
+                }
+                if (call == null) {
+                    call = getData();
+                }
+            });
+        });
+    }
+
+    /**
+     * Sets the thread to the given cached posts, if nothing was loaded in the meantime.
+     *
+     * @return the thread that was set, or null if there was nothing to set
+     */
+    @Nullable
+    private ChanThread setCachedThread(
+            @Nullable ThreadDiskCache.CachedThread cachedPosts, int generation, Priority priority
+    ) {
+        if (cachedPosts == null) return null;
+        ChanReaderParser parser = new ChanReaderParser(loadable, new ArrayList<>(), null, priority, null);
+        ChanLoaderResponse response = parser.convert(cachedPosts);
+        if (response.posts.isEmpty()) return null;
+
+        List<Post> posts = preparePosts(response);
+        synchronized (this) {
+            if (generation != loadGeneration || thread != null) return null;
+            thread = new ChanThread(loadable, new ArrayList<>());
+            thread.setNewPosts(posts);
+            thread.setClosed(posts.get(0).isClosed());
+            thread.setArchived(posts.get(0).isArchived());
+            lastModified = cachedPosts.lastModified;
+            etag = cachedPosts.etag;
+            return thread;
+        }
     }
 
     /**
@@ -170,7 +272,13 @@ public class ChanThreadLoader {
         clearPendingRunnable();
 
         if (loadable.isThreadMode() && call == null) {
-            call = getData();
+            if (!diskCacheChecked && getThread() == null) {
+                // nothing loaded yet, which happens for pins
+                diskCacheChecked = true;
+                loadFromDiskCache();
+            } else {
+                call = getData();
+            }
             return true;
         } else {
             return false;
@@ -178,11 +286,14 @@ public class ChanThreadLoader {
     }
 
     /**
-     * Request more data if {@link #getTimeUntilLoadMore()} is negative.
+     * Handle the thread as if the server said it wasn't modified, without making a request; for when something else
+     * already showed that nothing changed, like the board's pages.
      */
-    public boolean loadMoreIfTime() {
+    public void markUnchanged() {
         BackgroundUtils.ensureMainThread();
-        return getTimeUntilLoadMore() < 0L && requestMoreData();
+        if (call == null && getThread() != null) {
+            onNotModified();
+        }
     }
 
     public void quickLoad() {
@@ -213,17 +324,15 @@ public class ChanThreadLoader {
         BackgroundUtils.ensureMainThread();
         clearPendingRunnable();
 
-        int watchTimeout = WATCH_TIMEOUTS[currentTimeout];
-
         pendingFuture =
                 BackgroundUtils.backgroundScheduledService.schedule(() -> BackgroundUtils.runOnMainThread(() -> {
                     pendingFuture = null;
                     requestMoreData();
-                }), watchTimeout, TimeUnit.SECONDS);
+                }), loadInterval, TimeUnit.MILLISECONDS);
     }
 
     public void clearTimer() {
-        currentTimeout = 0;
+        loadInterval = PostRateEstimator.MIN_INTERVAL;
         clearPendingRunnable();
     }
 
@@ -234,26 +343,64 @@ public class ChanThreadLoader {
         if (call != null) {
             return 0L;
         } else {
-            long waitTime = WATCH_TIMEOUTS[Math.max(0, currentTimeout)] * 1000L;
-            return lastLoadTime + waitTime - System.currentTimeMillis();
+            return lastLoadTime + loadInterval - System.currentTimeMillis();
         }
     }
 
     private Call getData() {
-        List<Post> cachedClones = new ArrayList<>();
+        final List<Post> cached;
+        final Headers conditionalHeaders;
+        final int generation;
         synchronized (this) {
-            List<Post> cached = thread == null ? new ArrayList<>() : thread.getPosts();
-            for (Post p : cached) {
-                cachedClones.add(p.clone());
-            }
+            cached = thread == null ? new ArrayList<>() : thread.getPosts();
+            conditionalHeaders = getConditionalHeaders();
+            generation = loadGeneration;
         }
-
-        return NetUtils.makeJsonRequest(
+        final Priority priority = getParsePriority();
+
+        // Catalogs show their first page as soon as it's parsed, until the full catalog replaces it
+        final AtomicBoolean fullyParsed = new AtomicBoolean();
+        final ChanReaderParser.FirstPageCallback firstPageCallback =
+                loadable.isCatalogMode() ? firstPage -> onFirstPage(firstPage, generation, fullyParsed) : null;
+
+        // The parser is only constructed once a full response has arrived; a 304 never gets this far
+        // Cached posts are given as-is, the parser copies any of them that it needs to change
+        Converter<ChanLoaderResponse, Response> converter = response -> {
+            ChanLoaderResponse parsed =
+                    new ChainConverter<>(new ChanReaderParser(loadable, cached, null, priority, firstPageCallback)).chain(
+                            JSON_CONVERTER).convert(response);
+
+            synchronized (ChanThreadLoader.this) {
+                fullyParsed.set(true);
+                lastModified = response.header("Last-Modified");
+                etag = response.header("ETag");
+            }
+            return parsed;
+        };
+
+        // a cached response only saves a request when something asks again right away, so it is never used for long;
+        // the interval can be up to an hour, and a refresh by the user shouldn't get a response that old
+        // conditional requests skip the cache entirely, as OkHttp passes those straight to the network
+        CacheControl cacheControl = new CacheControl.Builder().maxAge((int) Math.min(MAX_CACHE_AGE_SECONDS,
+                TimeUnit.MILLISECONDS.toSeconds(loadInterval) - 1
+        ), TimeUnit.SECONDS).build();
+        CallOptions options = new CallOptions().cacheControl(cacheControl)
+                .extraHeaders(conditionalHeaders)
+                // background watching is spread out over time, the same as its parsing
+                .priority(priority);
+
+        return NetUtils.makeCall(
+                NetUtils.applicationClient,
                 getChanUrl(loadable),
+                converter,
                 new ResponseResult<ChanLoaderResponse>() {
                     @Override
                     public void onFailure(Exception e) {
-                        notifyAboutError(new ChanLoaderException(e));
+                        if (e instanceof HttpCodeException && ((HttpCodeException) e).isNotModified()) {
+                            onNotModified();
+                        } else {
+                            notifyAboutError(new ChanLoaderException(e));
+                        }
                     }
 
                     @Override
@@ -262,12 +409,36 @@ public class ChanThreadLoader {
                         BackgroundUtils.runOnBackgroundThread(() -> onResponse(result));
                     }
                 },
-                new ChanReaderParser(loadable, cachedClones, null),
-                // todo change this so that If-Modified-Since takes care of stuff
-                // cache this for the amount of time of the current timeout, minus a second to ensure it is purged upon the next request
-                new CacheControl.Builder().maxAge(WATCH_TIMEOUTS[Math.max(0, currentTimeout)] - 1, TimeUnit.SECONDS)
-                        .build()
-        );
+                options
+        ).first;
+    }
+
+    // the most urgent of all listeners
+    private Priority getParsePriority() {
+        Priority priority = Priority.LOW;
+        for (ChanLoaderCallback l : listeners) {
+            Priority listenerPriority = l.getParsePriority();
+            if (listenerPriority.compareTo(priority) < 0) {
+                priority = listenerPriority;
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * @return headers for a conditional request if there is a loaded thread and the server gave validators for it
+     */
+    @Nullable
+    private synchronized Headers getConditionalHeaders() {
+        if (thread == null || !loadable.isThreadMode() || (lastModified == null && etag == null)) return null;
+        Headers.Builder builder = new Headers.Builder();
+        if (lastModified != null) {
+            builder.add("If-Modified-Since", lastModified);
+        }
+        if (etag != null) {
+            builder.add("If-None-Match", etag);
+        }
+        return builder.build();
     }
 
     private HttpUrl getChanUrl(Loadable loadable) {
@@ -306,68 +477,173 @@ public class ChanThreadLoader {
         }
     }
 
-    private void onResponseInternal(ChanLoaderResponse response) {
-        BackgroundUtils.ensureBackgroundThread();
+    /**
+     * Show the first page of a catalog while the rest is still being parsed. Dropped if the full catalog already came
+     * through, or if another load was started since.
+     */
+    private void onFirstPage(ChanLoaderResponse response, int generation, AtomicBoolean fullyParsed) {
+        if (response.posts.isEmpty()) return;
 
         synchronized (this) {
+            if (fullyParsed.get() || generation != loadGeneration) return;
+
+            List<Post> posts = preparePosts(response);
             if (thread == null) {
                 thread = new ChanThread(loadable, new ArrayList<>());
             }
+            thread.setNewPosts(posts);
 
-            thread.setNewPosts(response.posts);
+            ChanThread localThread = thread;
+            // posted while holding the lock, so this always arrives before the full catalog does
+            BackgroundUtils.runOnMainThread(() -> {
+                for (ChanLoaderCallback l : listeners) {
+                    l.onChanLoaderPartialData(localThread);
+                }
+            });
         }
+    }
 
-        ChanThread localThread = thread;
-        if (loadable.isThreadMode() && thread.getPosts().size() > 0) {
+    private List<Post> preparePosts(ChanLoaderResponse response) {
+        // Reused posts are the same instances as the ones in the previous thread, which are possibly being displayed;
+        // copy them before changing anything, so that the change is visible when comparing old and new posts
+        List<Post> posts = new ArrayList<>(response.posts);
+
+        if (loadable.isThreadMode()) {
             // Replace some op parameters to the real op (index 0).
-            // This is done on the main thread to avoid race conditions.
-            Post realOp = thread.getOp();
             if (response.op != null) {
-                realOp.setClosed(response.op.closed);
-                realOp.setArchived(response.op.archived);
-                realOp.setSticky(response.op.sticky);
-                realOp.setReplies(response.op.replies);
-                realOp.setImagesCount(response.op.imagesCount);
-                realOp.setUniqueIps(response.op.uniqueIps);
-                realOp.setLastModified(response.op.lastModified);
-
-                thread.setClosed(realOp.isClosed());
-                thread.setArchived(realOp.isArchived());
+                Post realOp = posts.get(0);
+                if (realOp.isClosed() != response.op.closed || realOp.isArchived() != response.op.archived
+                        || realOp.isSticky() != response.op.sticky || realOp.getReplies() != response.op.replies
+                        || realOp.getImagesCount() != response.op.imagesCount
+                        || realOp.getUniqueIps() != response.op.uniqueIps
+                        || realOp.getLastModified() != response.op.lastModified) {
+                    realOp = realOp.clone();
+                    realOp.setClosed(response.op.closed);
+                    realOp.setArchived(response.op.archived);
+                    realOp.setSticky(response.op.sticky);
+                    realOp.setReplies(response.op.replies);
+                    realOp.setImagesCount(response.op.imagesCount);
+                    realOp.setUniqueIps(response.op.uniqueIps);
+                    realOp.setLastModified(response.op.lastModified);
+                    posts.set(0, realOp);
+                }
             } else {
                 Logger.e(this, "Thread has no op!");
             }
         }
 
-        loadable.title = PostHelper.getTitle(localThread.getOp(), loadable);
+        loadable.title = PostHelper.getTitle(posts.get(0), loadable);
         try {
-            loadable.thumbnailUrl = localThread.getOp().image().getThumbnailUrl();
+            loadable.thumbnailUrl = posts.get(0).image().getThumbnailUrl();
         } catch (Exception e) {
             loadable.thumbnailUrl = null;
         }
 
-        for (Post post : localThread.getPosts()) {
-            post.setTitle(loadable.title);
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (post.getTitle().equals(loadable.title)) continue;
+            if (post.getTitle().isEmpty()) {
+                // freshly parsed, never displayed
+                post.setTitle(loadable.title);
+            } else {
+                Post copy = post.clone();
+                copy.setTitle(loadable.title);
+                posts.set(i, copy);
+            }
         }
+        return posts;
+    }
 
-        lastLoadTime = System.currentTimeMillis();
+    private void onResponseInternal(ChanLoaderResponse response) {
+        BackgroundUtils.ensureBackgroundThread();
 
-        int postCount = localThread.getPosts().size();
-        if (postCount > lastPostCount) {
-            // fresh posts, reset timer to minimum 10 seconds, or if sticky 30
-            lastPostCount = postCount;
-            currentTimeout = localThread.getOp().isSticky() ? 3 : 0;
-        } else {
-            // no new posts, increase timer
-            currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+        List<Post> posts = preparePosts(response);
+
+        synchronized (this) {
+            if (thread == null) {
+                thread = new ChanThread(loadable, new ArrayList<>());
+            }
+
+            thread.setNewPosts(posts);
+            if (loadable.isThreadMode()) {
+                thread.setClosed(posts.get(0).isClosed());
+                thread.setArchived(posts.get(0).isArchived());
+            }
         }
 
-        DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
+        ChanThread localThread = thread;
+
+        lastLoadTime = System.currentTimeMillis();
+        if (loadable.isThreadMode()) {
+            postRate.addPosts(localThread.getPosts());
+        }
+        loadInterval = getNextInterval(localThread);
+
+        DatabaseUtils.runWriteBehind(DatabaseUtils.row(Loadable.class, loadable.id),
+                databaseLoadableManager.updateLoadable(loadable, false)
+        );
 
         BackgroundUtils.runOnMainThread(() -> {
             for (ChanLoaderCallback l : listeners) {
                 l.onChanLoaderData(localThread);
             }
         });
+
+        if (response.cacheRecords != null) {
+            String cacheLastModified;
+            String cacheEtag;
+            synchronized (this) {
+                cacheLastModified = lastModified;
+                cacheEtag = etag;
+            }
+            ThreadDiskCache.write(loadable,
+                    response.cacheRecords,
+                    response.cacheComplete,
+                    cacheLastModified,
+                    cacheEtag
+            );
+            ThreadArchive.update(localThread,
+                    response.cacheRecords,
+                    response.cacheComplete,
+                    cacheLastModified,
+                    cacheEtag
+            );
+        }
+    }
+
+    /**
+     * The server said nothing changed since the last load; nothing needs to be parsed, so only update the timing info
+     * and let listeners know that the load completed.
+     */
+    private void onNotModified() {
+        call = null;
+        clearPendingRunnable();
+
+        ChanThread localThread;
+        synchronized (this) {
+            localThread = thread;
+        }
+
+        if (localThread == null) {
+            notifyAboutError(new ChanLoaderException(new Exception("Not modified, but no thread loaded!")));
+            return;
+        }
+
+        lastLoadTime = System.currentTimeMillis();
+        // the thread has been quiet for longer now
+        loadInterval = getNextInterval(localThread);
+
+        BackgroundUtils.runOnMainThread(() -> {
+            for (ChanLoaderCallback l : listeners) {
+                l.onChanLoaderUnchanged(localThread);
+            }
+        });
+    }
+
+    private long getNextInterval(ChanThread localThread) {
+        // catalogs have no single page, and asking for one would request the board's pages
+        ChanPage page = loadable.isThreadMode() ? PageRepository.getPage(loadable) : null;
+        return postRate.getInterval(localThread.getOp(), page, loadable.board);
     }
 
     private void notifyAboutError(ChanLoaderException exception) {
@@ -375,11 +651,55 @@ public class ChanThreadLoader {
         clearTimer();
 
         Logger.e(this, "Loading error", exception);
+        if (loadable.isThreadMode() && exception.isNotFound()) {
+            // the thread is gone, don't show it again from the cache; a saved copy is kept, that's what it's for
+            ThreadDiskCache.remove(loadable);
+        }
 
-        BackgroundUtils.runOnMainThread(() -> {
-            for (ChanLoaderCallback l : listeners) {
-                l.onChanLoaderError(exception);
+        if (!loadable.isThreadMode()) {
+            BackgroundUtils.runOnMainThread(() -> {
+                for (ChanLoaderCallback l : listeners) {
+                    l.onChanLoaderError(exception);
+                }
+            });
+            return;
+        }
+
+        // a saved thread is shown from its saved copy instead, whenever it can't be loaded
+        final int generation;
+        synchronized (this) {
+            generation = loadGeneration;
+        }
+        final Priority priority = getParsePriority();
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            ChanThread savedThread = null;
+            if (ThreadArchive.isSaved(loadable)) {
+                try {
+                    setCachedThread(ThreadArchive.read(loadable), generation, priority);
+                    synchronized (this) {
+                        if (generation == loadGeneration) {
+                            savedThread = thread;
+                        }
+                    }
+                } catch (Exception e) {
+                    Logger.e(ChanThreadLoader.this, "Error loading saved thread", e);
+                }
+            }
+            if (savedThread != null && exception.isNotFound()) {
+                // the thread is gone, so stop refreshing it
+                savedThread.setArchived(true);
             }
+
+            final ChanThread localThread = savedThread;
+            BackgroundUtils.runOnMainThread(() -> {
+                for (ChanLoaderCallback l : listeners) {
+                    if (localThread != null) {
+                        l.onChanLoaderData(localThread);
+                    } else {
+                        l.onChanLoaderError(exception);
+                    }
+                }
+            });
         });
     }
 
@@ -394,6 +714,29 @@ public class ChanThreadLoader {
         void onChanLoaderData(ChanThread result);
 
         void onChanLoaderError(ChanLoaderException error);
+
+        /**
+         * Called instead of {@link #onChanLoaderData(ChanThread)} when a refresh returned no changes from the server.
+         *
+         * @param result the same thread that was last given through {@link #onChanLoaderData(ChanThread)}
+         */
+        default void onChanLoaderUnchanged(ChanThread result) {}
+
+        /**
+         * Called with the first page of a catalog before the rest of it is done, if the site's catalog has pages.
+         * {@link #onChanLoaderData(ChanThread)} follows with the full catalog.
+         *
+         * @param result the thread containing just the first page
+         */
+        default void onChanLoaderPartialData(ChanThread result) {}
+
+        /**
+         * @return how soon this listener needs loaded data compared to other loads; a loader parses at the most urgent
+         * priority of all of its listeners
+         */
+        default Priority getParsePriority() {
+            return Priority.NORMAL;
+        }
     }
 
     public static class ChanLoaderException
@@ -0,0 +1,117 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Predicts when a thread will get its next post, to decide when it should be loaded again.<br>
+ * Keeps an exponentially weighted moving average of the time between posts, so recent activity counts the most. The
+ * next post is expected one average gap after the last one; once a thread has been quiet for longer than that, the
+ * wait grows with how long it has been quiet, so dead threads end up being checked about once an hour.<br>
+ * Threads that are about to go away, because they are past the bump limit or on the last page, are checked at least
+ * every few minutes so that the end of the thread isn't missed.
+ */
+class PostRateEstimator {
+    static final long MIN_INTERVAL = SECONDS.toMillis(10);
+    private static final long MIN_STICKY_INTERVAL = SECONDS.toMillis(30);
+    private static final long MAX_INTERVAL = HOURS.toMillis(1);
+    private static final long ENDING_MAX_INTERVAL = MINUTES.toMillis(5);
+    // weight of the newest gap in the average
+    private static final double SMOOTHING = 0.25;
+
+    // in milliseconds, negative if there were never two posts to measure
+    private double averageGap = -1;
+    // the time of the newest post seen, in milliseconds
+    private long lastPostTime = -1;
+
+    synchronized void reset() {
+        averageGap = -1;
+        lastPostTime = -1;
+    }
+
+    /**
+     * Adds the gaps between any posts that are newer than the ones seen before to the average.
+     */
+    synchronized void addPosts(List<Post> posts) {
+        for (Post post : posts) {
+            addPostTime(post.time);
+        }
+    }
+
+    /**
+     * @param seconds the time of a post, in seconds as the server sends it
+     */
+    synchronized void addPostTime(long seconds) {
+        long time = SECONDS.toMillis(seconds);
+        if (time <= lastPostTime) return;
+
+        if (lastPostTime >= 0) {
+            long gap = time - lastPostTime;
+            averageGap = averageGap < 0 ? gap : SMOOTHING * gap + (1 - SMOOTHING) * averageGap;
+        }
+        lastPostTime = time;
+    }
+
+    /**
+     * @param op    the thread's OP, or the first thread for catalogs
+     * @param page  the page the thread is on, if known
+     * @param board the board of the thread
+     * @return the time in milliseconds from now until the thread should be loaded again
+     */
+    synchronized long getInterval(@Nullable Post op, @Nullable ChanPage page, Board board) {
+        boolean sticky = op != null && op.isSticky();
+        boolean pastBumpLimit = op != null && board.bumpLimit > 0 && op.getReplies() >= board.bumpLimit;
+        boolean onLastPage = page != null && page.page >= board.pages;
+        return getInterval(System.currentTimeMillis(), sticky, pastBumpLimit || onLastPage);
+    }
+
+    /**
+     * @param now    the current time in milliseconds
+     * @param sticky true if the thread is stickied
+     * @param ending true if the thread is past the bump limit or on the last page
+     * @return the time in milliseconds from now until the thread should be loaded again
+     */
+    synchronized long getInterval(long now, boolean sticky, boolean ending) {
+        long interval = MIN_INTERVAL;
+        if (averageGap >= 0) {
+            // post times come from the server, so don't trust them to be in the past
+            long quiet = Math.max(0, now - lastPostTime);
+            interval = quiet < averageGap ? (long) averageGap - quiet : quiet / 2;
+        }
+
+        if (sticky) {
+            interval = Math.max(interval, MIN_STICKY_INTERVAL);
+        }
+
+        if (ending) {
+            interval = Math.min(interval, ENDING_MAX_INTERVAL);
+        }
+
+        return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.ChanThread;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.BackgroundUtils.BackgroundResult;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
+import com.github.adamantcheese.chan.utils.SearchIndex;
+import com.github.adamantcheese.chan.utils.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Cache;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getAppContext;
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+
+/**
+ * Threads the user chose to keep, so that they can still be read, media included, once they're gone from the site or
+ * there's no connection.<br>
+ * Each saved thread has a directory of its own: the posts in the format of {@link ThreadDiskCache}, which the loader
+ * keeps up to date alongside the cache and falls back to when the cache doesn't have the thread; the plain text of the
+ * posts, for searching across all saved threads; and the thread's images and thumbnails, which are served from disk by
+ * {@link #MEDIA_INTERCEPTOR} instead of being requested again.<br>
+ * Unlike the caches this lives in the app's files, so the system doesn't clear it; once it grows past
+ * {@link ChanSettings#savedThreadsSize}, the threads that were least recently opened or updated are removed.
+ */
+public class ThreadArchive {
+    private static final String TAG = "ThreadArchive";
+
+    private static final String POSTS = "posts";
+    private static final String TEXT = "text";
+    private static final String MEDIA = "media";
+
+    private static final File archiveDir = new File(getAppContext().getFilesDir(), "saved_threads");
+
+    // names of the saved thread directories, null until first listed
+    private static Set<String> savedThreads;
+    // media file name -> file, for every finished download in every saved thread; loaded on the first request
+    private static final Map<String, File> media = new ConcurrentHashMap<>();
+    private static volatile boolean mediaLoaded;
+    // media file names that are being downloaded
+    private static final Set<String> downloading = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // built on the first search, dropped when a thread changes or memory is needed
+    private static SoftReference<SavedText> savedText = new SoftReference<>(null);
+    // -1 until the directory is first scanned, and again after threads are removed
+    private static long archiveSize = -1;
+
+    /**
+     * Answers requests for archived media from disk, ranges included; anything else goes to the network as usual.
+     */
+    public static final Interceptor MEDIA_INTERCEPTOR = chain -> {
+        Request request = chain.request();
+        File file = "GET".equals(request.method()) ? getMedia(request.url()) : null;
+        if (file == null) return chain.proceed(request);
+
+        long length = file.length();
+        long start = 0;
+        String range = request.header("Range");
+        // only the open-ended ranges that resumed downloads and video playback ask for; anything else gets the whole
+        // file, which both of those can deal with
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            try {
+                long rangeStart = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+                if (rangeStart > 0 && rangeStart < length) {
+                    start = rangeStart;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        boolean partial = start > 0;
+        // files are named by the url's cache key, so the type comes from the url; players go by it
+        String extension = MimeTypeMap.getFileExtensionFromUrl(request.url().toString()).toLowerCase(Locale.ENGLISH);
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        MediaType contentType = mimeType == null ? null : MediaType.parse(mimeType);
+
+        BufferedSource source;
+        try {
+            source = Okio.buffer(Okio.source(file));
+            source.skip(start);
+        } catch (IOException e) {
+            // removed since it was looked up
+            media.remove(file.getName());
+            return chain.proceed(request);
+        }
+        Response.Builder response = new Response.Builder().request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(partial ? 206 : 200)
+                .message(partial ? "Partial Content" : "OK")
+                .header("Content-Length", String.valueOf(length - start))
+                .header("Accept-Ranges", "bytes")
+                .body(ResponseBody.create(source, contentType, length - start));
+        if (contentType != null) {
+            response.header("Content-Type", contentType.toString());
+        }
+        if (partial) {
+            response.header("Content-Range", "bytes " + start + "-" + (length - 1) + "/" + length);
+        }
+        return response.build();
+    };
+
+    /**
+     * Cheap after the first call, which lists the saved threads.
+     */
+    public static synchronized boolean isSaved(Loadable loadable) {
+        return getSavedThreads().contains(getName(loadable));
+    }
+
+    /**
+     * Saves the thread as it is now and starts downloading its media; the thread has to have been loaded, so that its
+     * posts are in the disk cache.
+     *
+     * @param result true if the thread was saved, called on the main thread
+     */
+    public static void save(@NonNull ChanThread thread, @NonNull BackgroundResult<Boolean> result) {
+        BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            Loadable loadable = thread.getLoadable();
+            String name = getName(loadable);
+            File dir = new File(archiveDir, name);
+            synchronized (ThreadArchive.class) {
+                if (!new File(dir, MEDIA).exists() && !new File(dir, MEDIA).mkdirs()) {
+                    Logger.e(TAG, "Couldn't create the directory for " + loadable);
+                    return false;
+                }
+                if (!ThreadDiskCache.copy(loadable, new File(dir, POSTS))) {
+                    deleteDirectory(dir);
+                    return false;
+                }
+                writeText(dir, thread.getPosts());
+                getSavedThreads().add(name);
+                savedText.clear();
+            }
+            downloadMedia(dir, thread.getPosts());
+            added(new File(dir, POSTS).length());
+            return true;
+        }, result);
+    }
+
+    /**
+     * Removes the thread and its media, on a background thread.
+     */
+    public static void remove(@NonNull Loadable loadable) {
+        String name = getName(loadable);
+        synchronized (ThreadArchive.class) {
+            getSavedThreads().remove(name);
+            savedText.clear();
+        }
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            removeDirectory(new File(archiveDir, name));
+            synchronized (ThreadArchive.class) {
+                archiveSize = -1;
+            }
+        });
+    }
+
+    /**
+     * @return the saved posts of the thread, or null if it isn't saved
+     */
+    @Nullable
+    public static synchronized ThreadDiskCache.CachedThread read(Loadable loadable) {
+        if (!isSaved(loadable)) return null;
+        File file = new File(new File(archiveDir, getName(loadable)), POSTS);
+        ThreadDiskCache.CachedThread thread = ThreadDiskCache.read(loadable, file);
+        if (thread != null) {
+            // for trimming, this thread is still wanted
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return thread;
+    }
+
+    /**
+     * Keeps a saved thread in step with a load from the network; does nothing for threads that aren't saved. Call this
+     * on a background thread, with the same records that went to {@link ThreadDiskCache}.
+     */
+    static void update(
+            @NonNull ChanThread thread,
+            byte[] records,
+            boolean complete,
+            @Nullable String lastModified,
+            @Nullable String etag
+    ) {
+        File dir = new File(archiveDir, getName(thread.getLoadable()));
+        synchronized (ThreadArchive.class) {
+            if (!isSaved(thread.getLoadable())) return;
+            if (!ThreadDiskCache.write(new File(dir, POSTS), records, complete, lastModified, etag)) return;
+            writeText(dir, thread.getPosts());
+            savedText.clear();
+        }
+        downloadMedia(dir, thread.getPosts());
+    }
+
+    /**
+     * Blocks on disk the first time, and after any saved thread changed; don't call this on the main thread.
+     *
+     * @return the directory names, as in {@link #isSaved(Loadable)}, of the saved threads with a post containing the
+     * query
+     */
+    public static Set<String> findThreads(@NonNull String query) {
+        BackgroundUtils.ensureBackgroundThread();
+        SavedText text = getSavedText();
+        IntHashSet candidates = text.index.search(query);
+        Set<String> threads = new HashSet<>();
+        for (int i = 0; i < text.texts.size(); i++) {
+            if (candidates != null && !candidates.contains(i)) continue;
+            String thread = text.threads.get(i);
+            if (!threads.contains(thread) && StringUtils.containsIgnoreCase(text.texts.get(i), query)) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * @return the name that {@link #findThreads(String)} gives for this thread
+     */
+    public static String getName(Loadable loadable) {
+        return ThreadDiskCache.getFileName(loadable);
+    }
+
+    private static Set<String> getSavedThreads() {
+        if (savedThreads == null) {
+            savedThreads = new HashSet<>();
+            String[] names = archiveDir.list();
+            if (names != null) {
+                savedThreads.addAll(Arrays.asList(names));
+            }
+        }
+        return savedThreads;
+    }
+
+    @Nullable
+    private static File getMedia(HttpUrl url) {
+        if (!mediaLoaded) {
+            synchronized (ThreadArchive.class) {
+                if (!mediaLoaded) {
+                    for (String thread : getSavedThreads()) {
+                        File[] files = new File(new File(archiveDir, thread), MEDIA).listFiles();
+                        if (files == null) continue;
+                        for (File file : files) {
+                            media.put(file.getName(), file);
+                        }
+                    }
+                    mediaLoaded = true;
+                }
+            }
+        }
+        return media.isEmpty() ? null : media.get(Cache.key(url));
+    }
+
+    // the searchable text of every post, replaced as a whole as the thread is small next to its media
+    private static void writeText(File dir, List<Post> posts) {
+        File file = new File(dir, TEXT);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (Post post : posts) {
+                StringBuilder text = new StringBuilder();
+                text.append(post.subject).append('\n').append(post.name).append('\n').append(post.comment);
+                for (PostImage image : post.images) {
+                    text.append('\n').append(image.filename);
+                }
+                out.writeInt(post.no);
+                ThreadDiskCache.writeString(out, text.toString());
+            }
+        } catch (IOException e) {
+            Logger.e(TAG, "Error writing the text of " + dir.getName(), e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static synchronized SavedText getSavedText() {
+        SavedText text = savedText.get();
+        if (text != null) return text;
+
+        text = new SavedText();
+        for (String thread : getSavedThreads()) {
+            File file = new File(new File(archiveDir, thread), TEXT);
+            if (!file.exists()) continue;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    try {
+                        in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String postText = ThreadDiskCache.readString(in);
+                    text.index.add(text.texts.size(), 0, postText);
+                    text.threads.add(thread);
+                    text.texts.add(postText);
+                }
+            } catch (IOException e) {
+                Logger.e(TAG, "Error reading the text of " + thread, e);
+            }
+        }
+        savedText = new SoftReference<>(text);
+        return text;
+    }
+
+    private static void downloadMedia(File dir, List<Post> posts) {
+        File mediaDir = new File(dir, MEDIA);
+        for (Post post : posts) {
+            for (PostImage image : post.images) {
+                if (image.deleted) continue;
+                downloadMedia(mediaDir, image.thumbnailUrl);
+                downloadMedia(mediaDir, image.imageUrl);
+            }
+        }
+    }
+
+    private static void downloadMedia(File mediaDir, @Nullable HttpUrl url) {
+        if (url == null) return;
+        String name = Cache.key(url);
+        File file = new File(mediaDir, name);
+        if (file.exists() || !downloading.add(name)) return;
+
+        File partialFile = new File(mediaDir, name + ".part");
+        // these go after anything the user is looking at
+        NetUtils.makeResumableFileRequest(url, partialFile, new ResponseResult<File>() {
+            @Override
+            public void onFailure(Exception e) {
+                downloading.remove(name);
+                Logger.w(TAG, "Failed to save " + url, e);
+            }
+
+            @Override
+            public void onSuccess(File result) {
+                downloading.remove(name);
+                if (partialFile.renameTo(file)) {
+                    media.put(name, file);
+                    BackgroundUtils.runOnBackgroundThread(() -> added(file.length()));
+                }
+            }
+        }, null, Priority.LOW);
+    }
+
+    private static void added(long size) {
+        List<File> removed;
+        synchronized (ThreadArchive.class) {
+            if (archiveSize < 0) {
+                archiveSize = directorySize(archiveDir);
+            } else {
+                archiveSize += size;
+            }
+            if (archiveSize <= getMaxSize()) return;
+            removed = trim();
+        }
+        // the threads are already gone as far as anything else is concerned, so this doesn't need to hold things up
+        for (File dir : removed) {
+            removeDirectory(dir);
+        }
+    }
+
+    private static long getMaxSize() {
+        return (long) ChanSettings.savedThreadsSize.get() * MB;
+    }
+
+    // forget the least recently used threads until everything fits again, keeping at least the newest one
+    private static List<File> trim() {
+        List<File> removed = new ArrayList<>();
+        File[] dirs = archiveDir.listFiles();
+        if (dirs == null) return removed;
+
+        long[] sizes = new long[dirs.length];
+        long total = 0;
+        Integer[] order = new Integer[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            sizes[i] = directorySize(dirs[i]);
+            total += sizes[i];
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(new File(dirs[a], POSTS).lastModified(),
+                new File(dirs[b], POSTS).lastModified()
+        ));
+        long maxSize = getMaxSize();
+        for (int i = 0; i < order.length - 1 && total > maxSize; i++) {
+            File dir = dirs[order[i]];
+            Logger.d(TAG, "Archive is full, removing " + dir.getName());
+            getSavedThreads().remove(dir.getName());
+            savedText.clear();
+            removed.add(dir);
+            total -= sizes[order[i]];
+        }
+        archiveSize = total;
+        return removed;
+    }
+
+    private static void removeDirectory(File dir) {
+        File[] files = new File(dir, MEDIA).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                media.remove(file.getName());
+            }
+        }
+        deleteDirectory(dir);
+    }
+
+    private static long directorySize(File file) {
+        File[] files = file.listFiles();
+        if (files == null) return file.length();
+        long size = 0;
+        for (File child : files) {
+            size += directorySize(child);
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteDirectory(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static class SavedText {
+        private final SearchIndex index = new SearchIndex();
+        // by the index key: the thread a post is in, and its text
+        private final List<String> threads = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostHttpIcon;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
+import com.github.adamantcheese.chan.core.site.SiteEndpoints;
+import com.github.adamantcheese.chan.core.site.SiteEndpoints.ICON_TYPE;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument;
+
+/**
+ * Keeps the posts of recently loaded threads on disk, so that a thread that isn't in memory anymore (after it was
+ * evicted from {@link com.github.adamantcheese.chan.core.manager.ChanLoaderManager}, or the app was restarted) can be
+ * shown without waiting on the network, and then refreshed like any other loaded thread.<br>
+ * Posts are stored as they come out of the site's reader, before any HTML is parsed; the spans made from the comment
+ * depend on the theme and settings at the time, so those are always made fresh.<br>
+ * Each thread has a single file of records, where each load appends the posts new since the previous load, along with
+ * the numbers of the posts that the server no longer sends, so that those still show as deleted when read back. A load
+ * that contains the whole thread starts the file over.
+ */
+public class ThreadDiskCache {
+    private static final int MAGIC = 0x4B544843; // KTHC
+    private static final int VERSION = 2;
+
+    private static final int RECORD_POST = 1;
+    private static final int RECORD_OP = 2;
+    private static final int RECORD_VALIDATORS = 3;
+    private static final int RECORD_DELETED = 4;
+
+    private static final int MAX_FILES = 100;
+    private static final long MAX_SIZE = 20 * 1024 * 1024;
+
+    public static class CachedThread {
+        public final Post.Builder op;
+        public final List<Post.Builder> posts;
+        // as of the last load that was written
+        public final IntHashSet deletedNos;
+        @Nullable
+        public final String lastModified;
+        @Nullable
+        public final String etag;
+
+        private CachedThread(
+                Post.Builder op,
+                List<Post.Builder> posts,
+                IntHashSet deletedNos,
+                @Nullable String lastModified,
+                @Nullable String etag
+        ) {
+            this.op = op;
+            this.posts = posts;
+            this.deletedNos = deletedNos;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * The op's counts and flags, which are stored with every load as they change even when the op itself doesn't.
+     */
+    static class OpStats {
+        final int replies;
+        final int images;
+        final int uniqueIps;
+        final boolean sticky;
+        final boolean closed;
+        final boolean archived;
+        final long lastModified;
+
+        OpStats(
+                int replies,
+                int images,
+                int uniqueIps,
+                boolean sticky,
+                boolean closed,
+                boolean archived,
+                long lastModified
+        ) {
+            this.replies = replies;
+            this.images = images;
+            this.uniqueIps = uniqueIps;
+            this.sticky = sticky;
+            this.closed = closed;
+            this.archived = archived;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Everything from the loads in a file that were written in full.
+     *
+     * @param <P> the type of the posts
+     */
+    static class Records<P> {
+        // in the order they were written, so later copies of a post come after earlier ones
+        final List<P> posts = new ArrayList<>();
+        @Nullable
+        OpStats opStats;
+        IntHashSet deletedNos = new IntHashSet();
+        @Nullable
+        String lastModified;
+        @Nullable
+        String etag;
+        // true if the file ended in the middle of a load
+        boolean cutShort;
+    }
+
+    interface PostWriter<P> {
+        void write(DataOutputStream out, P post)
+                throws IOException;
+    }
+
+    interface PostReader<P> {
+        P read(DataInputStream in)
+                throws IOException;
+    }
+
+    /**
+     * Encode the given posts; this must be done before they are parsed, as parsing replaces the HTML in them.
+     *
+     * @param op         the op from the response, used for the thread's counts
+     * @param posts      posts that aren't in the cache yet
+     * @param deletedNos every post in the thread that the server doesn't send anymore; posts are never removed from
+     *                   the file, so this is what keeps them from coming back as live ones
+     */
+    public static byte[] encode(Post.Builder op, List<Post.Builder> posts, List<Integer> deletedNos)
+            throws IOException {
+        OpStats opStats = new OpStats(op.replies,
+                op.imagesCount,
+                op.uniqueIps,
+                op.sticky,
+                op.closed,
+                op.archived,
+                op.lastModified
+        );
+        return encode(posts, ThreadDiskCache::writePost, opStats, deletedNos);
+    }
+
+    static <P> byte[] encode(List<P> posts, PostWriter<P> postWriter, OpStats op, List<Integer> deletedNos)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(posts.size() * 512 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (P post : posts) {
+            out.writeByte(RECORD_POST);
+            postWriter.write(out, post);
+        }
+        out.writeByte(RECORD_OP);
+        out.writeInt(op.replies);
+        out.writeInt(op.images);
+        out.writeInt(op.uniqueIps);
+        out.writeBoolean(op.sticky);
+        out.writeBoolean(op.closed);
+        out.writeBoolean(op.archived);
+        out.writeLong(op.lastModified);
+        out.writeByte(RECORD_DELETED);
+        out.writeInt(deletedNos.size());
+        for (int no : deletedNos) {
+            out.writeInt(no);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param records  from {@link #encode(Post.Builder, List, List)}
+     * @param complete true if the records contain every post in the thread, in which case any previous file is
+     *                 replaced; otherwise the records are added to the existing file, if there is one
+     */
+    public static synchronized void write(
+            Loadable loadable,
+            byte[] records,
+            boolean complete,
+            @Nullable String lastModified,
+            @Nullable String etag
+    ) {
+        File cacheDir = getCacheDirectory();
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Logger.e("ThreadDiskCache", "Couldn't create the thread cache directory");
+            return;
+        }
+
+        if (write(getFile(loadable), records, complete, lastModified, etag) && complete) {
+            trim();
+        }
+    }
+
+    /**
+     * Writes records to the given file in this class's format; for {@link ThreadArchive}, which keeps its own copy.
+     *
+     * @return true if the records were written
+     */
+    static boolean write(
+            File file, byte[] records, boolean complete, @Nullable String lastModified, @Nullable String etag
+    ) {
+        // can't add to something that's gone, the next full load remakes it
+        if (!complete && !file.exists()) return false;
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, !complete))) {
+            if (complete) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.write(records);
+            out.writeByte(RECORD_VALIDATORS);
+            writeString(out, lastModified);
+            writeString(out, etag);
+            return true;
+        } catch (IOException e) {
+            Logger.e("ThreadDiskCache", "Error writing thread records to " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return false;
+        }
+    }
+
+    /**
+     * @return the cached thread, or null if there isn't one or it can't be read
+     */
+    @Nullable
+    public static synchronized CachedThread read(Loadable loadable) {
+        return read(loadable, getFile(loadable));
+    }
+
+    /**
+     * Reads a file in this class's format; for {@link ThreadArchive}, which keeps its own copy.
+     */
+    @Nullable
+    static CachedThread read(Loadable loadable, File file) {
+        if (!file.exists()) return null;
+
+        Records<Post.Builder> records;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            records = readRecords(in, postIn -> readPost(postIn, loadable));
+        } catch (Exception e) {
+            Logger.e("ThreadDiskCache", "Error reading thread records for " + loadable + " from " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+        if (records.cutShort) {
+            Logger.w("ThreadDiskCache", "Thread cache for " + loadable + " was cut short");
+        }
+
+        Map<Integer, Post.Builder> posts = new LinkedHashMap<>();
+        Post.Builder op = null;
+        for (Post.Builder post : records.posts) {
+            posts.put(post.no, post);
+            if (post.op) op = post;
+        }
+        if (op == null) return null;
+        OpStats opStats = records.opStats;
+        if (opStats != null) {
+            op.replies(opStats.replies)
+                    .images(opStats.images)
+                    .uniqueIps(opStats.uniqueIps)
+                    .sticky(opStats.sticky)
+                    .closed(opStats.closed)
+                    .archived(opStats.archived)
+                    .lastModified(opStats.lastModified);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        return new CachedThread(op,
+                new ArrayList<>(posts.values()),
+                records.deletedNos,
+                records.lastModified,
+                records.etag
+        );
+    }
+
+    /**
+     * Reads every load from a file written by {@link #write(File, byte[], boolean, String, String)}.<br>
+     * A load's records only count once the validators at the end of it are there, so that a write that was cut short
+     * only loses the load that was being written.
+     *
+     * @throws IOException if the file is in another format or can't be read at all
+     */
+    static <P> Records<P> readRecords(DataInputStream in, PostReader<P> postReader)
+            throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown thread cache format");
+        }
+
+        Records<P> records = new Records<>();
+        List<P> pending = new ArrayList<>();
+        OpStats pendingOpStats = null;
+        IntHashSet pendingDeletedNos = null;
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                records.cutShort = !pending.isEmpty() || pendingOpStats != null || pendingDeletedNos != null;
+                return records;
+            }
+
+            try {
+                switch (type) {
+                    case RECORD_POST:
+                        pending.add(postReader.read(in));
+                        break;
+                    case RECORD_OP:
+                        pendingOpStats = new OpStats(in.readInt(),
+                                in.readInt(),
+                                in.readInt(),
+                                in.readBoolean(),
+                                in.readBoolean(),
+                                in.readBoolean(),
+                                in.readLong()
+                        );
+                        break;
+                    case RECORD_DELETED:
+                        int count = in.readInt();
+                        pendingDeletedNos = new IntHashSet(count);
+                        for (int i = 0; i < count; i++) {
+                            pendingDeletedNos.add(in.readInt());
+                        }
+                        break;
+                    case RECORD_VALIDATORS:
+                        String lastModified = readString(in);
+                        String etag = readString(in);
+                        records.posts.addAll(pending);
+                        pending.clear();
+                        if (pendingOpStats != null) {
+                            records.opStats = pendingOpStats;
+                            pendingOpStats = null;
+                        }
+                        if (pendingDeletedNos != null) {
+                            // each load lists all of them, so the latest one is all there is to know
+                            records.deletedNos = pendingDeletedNos;
+                            pendingDeletedNos = null;
+                        }
+                        records.lastModified = lastModified;
+                        records.etag = etag;
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                records.cutShort = true;
+                return records;
+            }
+        }
+    }
+
+    public static synchronized void remove(Loadable loadable) {
+        //noinspection ResultOfMethodCallIgnored
+        getFile(loadable).delete();
+    }
+
+    /**
+     * Copies the cached thread to the given file, if there is one.
+     *
+     * @return true if it was copied
+     */
+    static synchronized boolean copy(Loadable loadable, File destination) {
+        File file = getFile(loadable);
+        if (!file.exists()) return false;
+        try (BufferedSource source = Okio.buffer(Okio.source(file));
+             BufferedSink sink = Okio.buffer(Okio.sink(destination))) {
+            sink.writeAll(source);
+            return true;
+        } catch (IOException e) {
+            Logger.e("ThreadDiskCache", "Error copying thread cache for " + loadable, e);
+            //noinspection ResultOfMethodCallIgnored
+            destination.delete();
+            return false;
+        }
+    }
+
+    static String getFileName(Loadable loadable) {
+        return loadable.siteId + "_" + loadable.boardCode.replaceAll("[^A-Za-z0-9]", "_") + "_" + loadable.no;
+    }
+
+    private static File getFile(Loadable loadable) {
+        return new File(getCacheDirectory(), getFileName(loadable));
+    }
+
+    private static File getCacheDirectory() {
+        return new File(getCacheDir(), "threads");
+    }
+
+    // keep the most recently used threads
+    private static void trim() {
+        File[] files = getCacheDirectory().listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        long size = 0;
+        for (int i = 0; i < files.length; i++) {
+            size += files[i].length();
+            if (i >= MAX_FILES || size > MAX_SIZE) {
+                //noinspection ResultOfMethodCallIgnored
+                files[i].delete();
+            }
+        }
+    }
+
+    private static void writePost(DataOutputStream out, Post.Builder post)
+            throws IOException {
+        out.writeInt(post.no);
+        out.writeInt(post.opId);
+        out.writeBoolean(post.op);
+        out.writeInt(post.replies);
+        out.writeInt(post.imagesCount);
+        out.writeInt(post.uniqueIps);
+        out.writeBoolean(post.sticky);
+        out.writeBoolean(post.closed);
+        out.writeBoolean(post.archived);
+        out.writeLong(post.lastModified);
+        writeString(out, post.subject);
+        writeString(out, post.name);
+        writeString(out, post.comment.toString());
+        writeString(out, post.tripcode);
+        out.writeLong(post.unixTimestampSeconds);
+        writeString(out, post.posterId);
+        out.writeInt(post.idColor);
+        writeString(out, post.moderatorCapcode);
+
+        out.writeInt(post.images.size());
+        for (PostImage image : post.images) {
+            writeString(out, image.serverFilename);
+            writeString(out, image.thumbnailUrl == null ? null : image.thumbnailUrl.toString());
+            writeString(out, image.spoilerThumbnailUrl == null ? null : image.spoilerThumbnailUrl.toString());
+            writeString(out, image.imageUrl.toString());
+            writeString(out, image.filename);
+            writeString(out, image.extension);
+            out.writeInt(image.imageWidth);
+            out.writeInt(image.imageHeight);
+            out.writeBoolean(image.isSpoilered());
+            out.writeBoolean(image.isInlined);
+            out.writeLong(image.size);
+            writeString(out, image.fileHash);
+            out.writeBoolean(image.deleted);
+        }
+
+        // only the icons a site reader makes are kept, those can be made again from their code
+        List<PostHttpIcon> icons = new ArrayList<>();
+        if (post.httpIcons != null) {
+            for (PostHttpIcon icon : post.httpIcons) {
+                if (icon.type != ICON_TYPE.OTHER) {
+                    icons.add(icon);
+                }
+            }
+        }
+        out.writeInt(icons.size());
+        for (PostHttpIcon icon : icons) {
+            out.writeByte(icon.type.ordinal());
+            writeString(out, icon.code);
+            writeString(out, icon.description);
+        }
+    }
+
+    private static Post.Builder readPost(DataInputStream in, Loadable loadable)
+            throws IOException {
+        Post.Builder post = new Post.Builder().board(loadable.board)
+                .no(in.readInt())
+                .opId(in.readInt())
+                .op(in.readBoolean())
+                .replies(in.readInt())
+                .images(in.readInt())
+                .uniqueIps(in.readInt())
+                .sticky(in.readBoolean())
+                .closed(in.readBoolean())
+                .archived(in.readBoolean())
+                .lastModified(in.readLong())
+                .subject(readString(in))
+                .name(readString(in))
+                .comment(readString(in))
+                .tripcode(readString(in))
+                .setUnixTimestampSeconds(in.readLong())
+                .posterId(readString(in))
+                .idColor(in.readInt())
+                .moderatorCapcode(readString(in));
+
+        int imageCount = in.readInt();
+        List<PostImage> images = new ArrayList<>(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            PostImage.Builder image = new PostImage.Builder().serverFilename(readString(in))
+                    .thumbnailUrl(readUrl(in))
+                    .spoilerThumbnailUrl(readUrl(in))
+                    .imageUrl(HttpUrl.get(readString(in)))
+                    .filename(readString(in))
+                    .extension(readString(in))
+                    .imageWidth(in.readInt())
+                    .imageHeight(in.readInt())
+                    .spoiler(in.readBoolean());
+            if (in.readBoolean()) {
+                image.isInlined();
+            }
+            images.add(image.size(in.readLong()).fileHash(readString(in), false).deleted(in.readBoolean()).build());
+        }
+        post.images(images);
+
+        int iconCount = in.readInt();
+        SiteEndpoints endpoints = loadable.site.endpoints();
+        for (int i = 0; i < iconCount; i++) {
+            ICON_TYPE type = ICON_TYPE.values()[in.readByte()];
+            String code = readString(in);
+            String description = readString(in);
+            Map<String, String> arg;
+            switch (type) {
+                case COUNTRY_FLAG:
+                    arg = makeArgument("country_code", code);
+                    break;
+                case BOARD_FLAG:
+                    arg = makeArgument("board_code", loadable.boardCode, "board_flag_code", code);
+                    break;
+                default:
+                    arg = null;
+                    break;
+            }
+            Pair<HttpUrl, PassthroughBitmapResult> resultPair = endpoints.icon(type, arg);
+            post.addHttpIcon(new PostHttpIcon(type, resultPair.first, resultPair.second, code, description));
+        }
+        return post;
+    }
+
+    @Nullable
+    private static HttpUrl readUrl(DataInputStream in)
+            throws IOException {
+        String url = readString(in);
+        return url == null ? null : HttpUrl.get(url);
+    }
+
+    // writeUTF is limited to 64KB, which a long comment can go over
+    static void writeString(DataOutputStream out, @Nullable String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    static String readString(DataInputStream in)
+            throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
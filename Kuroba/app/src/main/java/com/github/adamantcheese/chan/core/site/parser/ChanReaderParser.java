@@ -23,16 +23,20 @@ import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.Post;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.site.loader.ChanLoaderResponse;
+import com.github.adamantcheese.chan.core.site.loader.ThreadDiskCache;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,11 +44,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
@@ -57,6 +64,12 @@ import static com.github.adamantcheese.chan.Chan.inject;
  */
 public class ChanReaderParser
         implements NetUtilsClasses.Converter<ChanLoaderResponse, JsonReader> {
+    // totals over every processed load, see getSummary()
+    private static final AtomicLong processed = new AtomicLong();
+    private static final AtomicLong processNanos = new AtomicLong();
+    private static final AtomicLong reusedPosts = new AtomicLong();
+    private static final AtomicLong copiedPosts = new AtomicLong();
+    private static final AtomicLong parsedPosts = new AtomicLong();
 
     @Inject
     FilterEngine filterEngine;
@@ -71,29 +84,49 @@ public class ChanReaderParser
     private final List<Post> cached;
     private final ChanReader reader;
 
-    private final List<Filter> filters;
+    private final CompiledFilters filters;
+
+    private final Priority priority;
+    @Nullable
+    private final FirstPageCallback firstPageCallback;
+    @Nullable
+    private FirstPage firstPage;
 
     /**
      * @param loadable    The loadable associated with this parser
-     * @param cachedPosts A list of cached posts; may be an empty list for no cached post processing
+     * @param cachedPosts A list of cached posts; may be an empty list for no cached post processing. These are reused by
+     *                    reference and never modified; a post that needs changes is copied first.
      * @param reader      A reader to process posts for a request; if null, the reader associated with the loadable's site will be used
      */
     public ChanReaderParser(Loadable loadable, @NonNull List<Post> cachedPosts, @Nullable ChanReader reader) {
+        this(loadable, cachedPosts, reader, Priority.NORMAL, null);
+    }
+
+    /**
+     * @param priority          The priority of the parse tasks compared to other loads
+     * @param firstPageCallback For catalogs, if set, this gets the first page of the catalog as soon as it is parsed,
+     *                          while the rest of the catalog is still being read. Called on a background thread, and
+     *                          not at all if the reader doesn't read the catalog page by page.
+     * @see #ChanReaderParser(Loadable, List, ChanReader)
+     */
+    public ChanReaderParser(
+            Loadable loadable,
+            @NonNull List<Post> cachedPosts,
+            @Nullable ChanReader reader,
+            Priority priority,
+            @Nullable FirstPageCallback firstPageCallback
+    ) {
         inject(this);
+        this.priority = priority;
+        this.firstPageCallback = firstPageCallback;
 
         // Copy the loadable and cached list. The cached array may changed/cleared by other threads.
         this.loadable = loadable.clone();
         cached = new ArrayList<>(cachedPosts);
         this.reader = reader == null ? this.loadable.site.chanReader() : reader;
 
-        filters = new ArrayList<>();
-        List<Filter> enabledFilters = filterEngine.getEnabledFilters();
-        for (Filter filter : enabledFilters) {
-            if (filterEngine.matchesBoard(filter, this.loadable.board)) {
-                // copy the filter because it will get used on other threads
-                filters.add(filter.clone());
-            }
-        }
+        // shared with every other load for this board until filters change; no database access unless they did
+        filters = filterEngine.getCompiledFilters(this.loadable.board);
     }
 
     @Override
@@ -104,37 +137,168 @@ public class ChanReaderParser
         if (loadable.isThreadMode()) {
             this.reader.loadThread(reader, processing);
         } else if (loadable.isCatalogMode()) {
+            if (firstPageCallback != null) {
+                processing.setPageListener(() -> {
+                    if (firstPage == null) {
+                        firstPage = parseFirstPage(processing);
+                    }
+                });
+            }
             this.reader.loadCatalog(reader, processing);
         } else {
             throw new IllegalArgumentException("Unknown mode");
         }
 
-        List<PostHide> removedPosts;
-        try {
-            removedPosts = databaseHideManager.getRemovedPostsWithThreadNo(processing.getOp().no);
-        } catch (Exception e) {
-            removedPosts = Collections.emptyList();
+        byte[] cacheRecords = null;
+        if (loadable.isThreadMode()) {
+            try {
+                cacheRecords = ThreadDiskCache.encode(processing.getOp(),
+                        processing.getToParse(),
+                        getDeletedNos(processing)
+                );
+            } catch (Exception e) {
+                Logger.e(this, "Error encoding posts for the thread cache", e);
+            }
         }
 
-        // add in extra removed posts from filters (for cached posts)
+        ChanLoaderResponse response = process(processing);
+        response.cacheRecords = cacheRecords;
+        response.cacheComplete = processing.getToReuse().isEmpty();
+        return response;
+    }
+
+    /**
+     * Parse a thread that was read back from the disk cache, the same as if it came from the network.
+     */
+    public ChanLoaderResponse convert(ThreadDiskCache.CachedThread cachedThread)
+            throws Exception {
+        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
+        for (Post.Builder post : cachedThread.posts) {
+            processing.addForParse(post);
+        }
+        processing.setOp(cachedThread.op);
+        ChanLoaderResponse response = process(processing);
+        // these are all fresh posts, nothing is showing them yet
+        for (Post post : response.posts) {
+            if (cachedThread.deletedNos.contains(post.no)) {
+                post.deleted.set(true);
+            }
+        }
+        return response;
+    }
+
+    // the posts that were loaded before but aren't in this response; the same ones processPosts marks as deleted
+    private List<Integer> getDeletedNos(ChanReaderProcessingQueue processing) {
+        IntHashSet serverNos = new IntHashSet(processing.getToParse().size() + processing.getToReuse().size());
+        for (Post.Builder post : processing.getToParse()) {
+            serverNos.add(post.no);
+        }
         for (Post post : processing.getToReuse()) {
+            serverNos.add(post.no);
+        }
+        List<Integer> deletedNos = new ArrayList<>();
+        for (Post post : cached) {
+            if (!serverNos.contains(post.no)) {
+                deletedNos.add(post.no);
+            }
+        }
+        return deletedNos;
+    }
+
+    private ChanLoaderResponse process(ChanReaderProcessingQueue processing)
+            throws Exception {
+        long start = System.nanoTime();
+        IntHashSet removedNos = getRemovedNos(processing);
+        List<Post> list = parsePosts(processing, removedNos);
+        ChanLoaderResponse response = processPosts(processing.getOp(), list, removedNos, true);
+        processNanos.addAndGet(System.nanoTime() - start);
+        processed.incrementAndGet();
+        return response;
+    }
+
+    public static String getSummary() {
+        long count = processed.get();
+        return String.format(Locale.ENGLISH,
+                "Loads: %d (average %d ms)\nPosts reused: %d, copied: %d, parsed: %d",
+                count,
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(processNanos.get() / count),
+                reusedPosts.get(),
+                copiedPosts.get(),
+                parsedPosts.get()
+        );
+    }
+
+    private IntHashSet getRemovedNos(ChanReaderProcessingQueue queue) {
+        List<PostHide> removedPosts =
+                databaseHideManager.getRemovedPosts(loadable.board.siteId, loadable.board.code, queue.getOp().no);
+
+        // Everything parsed here is for this loadable's board, so removed posts can be looked up by number alone
+        IntHashSet removedNos = new IntHashSet(removedPosts.size());
+        for (PostHide hide : removedPosts) {
+            removedNos.add(hide.no);
+        }
+
+        // add in extra removed posts from filters (for cached posts)
+        for (Post post : queue.getToReuse()) {
             if (post.filterRemove) {
-                removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
+                removedNos.add(post.no);
             }
         }
+        return removedNos;
+    }
+
+    /**
+     * Start parsing the posts read so far, without waiting for them; once they're done, the first page callback gets a
+     * response with just those posts. The rest of the catalog is read in the meantime.
+     * Posts on this page only know about each other as internal posts, as the rest haven't been read yet.
+     */
+    private FirstPage parseFirstPage(ChanReaderProcessingQueue queue) {
+        List<Post> reused = new ArrayList<>(queue.getToReuse());
+        List<Post.Builder> toParse = new ArrayList<>(queue.getToParse());
+        Post.Builder op = queue.getOp();
+        // separate from the set used for the whole catalog, as this one is read while the catalog is still being read
+        IntHashSet removedNos = getRemovedNos(queue);
+
+        List<Future<Post>> futures = new ArrayList<>(toParse.size());
+        for (Callable<Post> task : createTasks(reused, toParse, removedNos)) {
+            futures.add(BackgroundUtils.parseService.submit(task, priority));
+        }
 
-        List<Post> list = parsePosts(processing, removedPosts);
-        return processPosts(processing.getOp(), list, removedPosts);
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            try {
+                List<Post> posts = new ArrayList<>(reused);
+                addResults(posts, futures);
+                firstPageCallback.onFirstPage(processPosts(op, posts, removedNos, false));
+            } catch (Exception e) {
+                // the full catalog will still come through, or fail with the same error there
+                Logger.e(ChanReaderParser.this, "Error parsing first catalog page", e);
+            }
+        });
+        return new FirstPage(toParse.size(), futures);
     }
 
     // Concurrently parses the new posts with an executor
-    private List<Post> parsePosts(ChanReaderProcessingQueue queue, List<PostHide> removedPosts)
+    private List<Post> parsePosts(ChanReaderProcessingQueue queue, IntHashSet removedNos)
             throws InterruptedException, ExecutionException {
         List<Post> cached = queue.getToReuse();
         List<Post> total = new ArrayList<>(cached);
 
         List<Post.Builder> toParse = queue.getToParse();
+        List<Callable<Post>> tasks = createTasks(cached, toParse, removedNos);
+
+        if (firstPage != null) {
+            // these were started while the catalog was still being read, and are at the start of the parse list
+            addResults(total, firstPage.futures);
+            tasks = tasks.subList(firstPage.count, tasks.size());
+        }
 
+        addResults(total, BackgroundUtils.parseService.invokeAll(tasks, priority));
+        return total;
+    }
+
+    private List<Callable<Post>> createTasks(
+            List<Post> cached, List<Post.Builder> toParse, IntHashSet removedNos
+    ) {
         // A set of all post numbers in the thread. Used for checking if a quote if for the current thread or externally.
         Set<Integer> internalNums = new HashSet<>();
         // All nos of cached posts.
@@ -156,27 +320,38 @@ public class ChanReaderParser
                     databaseSavedReplyManager,
                     post,
                     reader,
-                    removedPosts,
+                    removedNos,
                     internalNums,
                     currentTheme
             ));
         }
+        return tasks;
+    }
 
-        List<Future<Post>> futures = BackgroundUtils.backgroundService.invokeAll(tasks);
+    private void addResults(List<Post> total, List<Future<Post>> futures)
+            throws InterruptedException, ExecutionException {
         for (Future<Post> f : futures) {
             Post p = f.get();
             if (p != null) {
                 total.add(p);
             }
         }
-        return total;
     }
 
-    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost, List<PostHide> removedPosts) {
+    /**
+     * @param countPosts whether to add the reused, copied and new posts to the totals in getSummary(); false for the
+     *                   first catalog page, which is processed again with the rest of the catalog
+     */
+    private ChanLoaderResponse processPosts(
+            Post.Builder op, List<Post> allPost, IntHashSet removedNos, boolean countPosts
+    ) {
         ChanLoaderResponse response = new ChanLoaderResponse(op);
 
         List<Post> cachedPosts = new ArrayList<>();
         List<Post> newPosts = new ArrayList<>();
+        // Cached posts are the same instances that are currently being displayed, so they are copy-on-write;
+        // any post in this set is either freshly parsed or already a copy, and can be changed in place
+        Set<Integer> writableNos = new HashSet<>();
         if (cached.size() > 0) {
             // Add all posts that were parsed before
             cachedPosts.addAll(cached);
@@ -193,8 +368,15 @@ public class ChanReaderParser
 
             // If there's a cached post but it's not in the list received from the server, mark it as deleted
             if (loadable.isThreadMode()) {
-                for (Post cachedPost : cachedPosts) {
-                    cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
+                for (int i = 0; i < cachedPosts.size(); i++) {
+                    Post cachedPost = cachedPosts.get(i);
+                    boolean deleted = !serverPostsByNo.containsKey(cachedPost.no);
+                    if (cachedPost.deleted.get() != deleted) {
+                        Post copy = cachedPost.clone();
+                        copy.deleted.set(deleted);
+                        cachedPosts.set(i, copy);
+                        writableNos.add(copy.no);
+                    }
                 }
             }
 
@@ -208,6 +390,10 @@ public class ChanReaderParser
             newPosts.addAll(allPost);
         }
 
+        for (Post post : newPosts) {
+            writableNos.add(post.no);
+        }
+
         List<Post> allPosts = new ArrayList<>(cachedPosts.size() + newPosts.size());
         allPosts.addAll(cachedPosts);
         allPosts.addAll(newPosts);
@@ -215,14 +401,14 @@ public class ChanReaderParser
         // add in removed posts from new posts
         for (Post post : newPosts) {
             if (post.filterRemove) {
-                removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
+                removedNos.add(post.no);
             }
         }
 
         if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
-            for (Post post : allPosts) {
-                postsByNo.put(post.no, post);
+            Map<Integer, Integer> indexByNo = new HashMap<>();
+            for (int i = 0; i < allPosts.size(); i++) {
+                indexByNo.put(allPosts.get(i).no, i);
             }
 
             // Maps post no's to a list of no's that that post received replies from
@@ -245,19 +431,25 @@ public class ChanReaderParser
             for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
                 int key = entry.getKey();
                 List<Integer> value = entry.getValue();
-                Post subject = postsByNo.get(key);
+                Integer subjectIndex = indexByNo.get(key);
 
                 // Sometimes a post replies to a ghost, a post that doesn't exist.
-                if (subject != null) {
+                if (subjectIndex != null) {
+                    Post subject = allPosts.get(subjectIndex);
                     // If a post has been removed, remove it from the replies list
                     Iterator<Integer> repliesFrom = value.iterator();
                     while (repliesFrom.hasNext()) {
-                        Integer replyFrom = repliesFrom.next();
-                        if (removedPosts.contains(new PostHide(subject.board.siteId, subject.board.code, replyFrom))) {
+                        if (removedNos.contains(repliesFrom.next())) {
                             repliesFrom.remove();
                         }
                     }
 
+                    if (subject.repliesFrom.equals(value)) continue;
+                    if (!writableNos.contains(subject.no)) {
+                        subject = subject.clone();
+                        allPosts.set(subjectIndex, subject);
+                        writableNos.add(subject.no);
+                    }
                     subject.repliesFrom.clear();
                     subject.repliesFrom.addAll(value);
                 }
@@ -266,6 +458,27 @@ public class ChanReaderParser
 
         response.posts.addAll(allPosts);
 
+        if (countPosts) {
+            reusedPosts.addAndGet(allPosts.size() - writableNos.size());
+            copiedPosts.addAndGet(writableNos.size() - newPosts.size());
+            parsedPosts.addAndGet(newPosts.size());
+        }
+
         return response;
     }
+
+    public interface FirstPageCallback {
+        void onFirstPage(ChanLoaderResponse firstPage);
+    }
+
+    private static class FirstPage {
+        // the number of posts to parse that were read as part of the first page
+        private final int count;
+        private final List<Future<Post>> futures;
+
+        private FirstPage(int count, List<Future<Post>> futures) {
+            this.count = count;
+            this.futures = futures;
+        }
+    }
 }
@@ -16,6 +16,8 @@
  */
 package com.github.adamantcheese.chan.core.site.parser;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 
@@ -31,6 +33,8 @@ public class ChanReaderProcessingQueue {
     private final List<Post> toReuse = new ArrayList<>();
     private final List<Post.Builder> toParse = new ArrayList<>();
     private Post.Builder op;
+    @Nullable
+    private Runnable pageListener;
 
     public ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable) {
         this.loadable = loadable;
@@ -56,6 +60,20 @@ public class ChanReaderProcessingQueue {
         this.op = op;
     }
 
+    /**
+     * Catalog readers that read the catalog page by page should call this after each page, so that the posts read so
+     * far can be processed before the rest of the catalog is read.
+     */
+    public void endPage() {
+        if (pageListener != null) {
+            pageListener.run();
+        }
+    }
+
+    void setPageListener(@Nullable Runnable pageListener) {
+        this.pageListener = pageListener;
+    }
+
     List<Post> getToReuse() {
         return toReuse;
     }
@@ -102,6 +102,8 @@ public class CommentParser {
 
     private static Typeface submona;
 
+    private boolean singlePass = false;
+
     public CommentParser() {
         // Required tags.
         rule(tagRule("p"));
@@ -187,6 +189,20 @@ public class CommentParser {
         list.add(rule);
     }
 
+    /**
+     * Parse comments in a single pass over the HTML instead of through a Jsoup document. Only for sites whose comments
+     * are simple, well-formed HTML and whose rules only look at an element's attributes and text; comments that need
+     * more still go through Jsoup.
+     */
+    public CommentParser singlePass() {
+        singlePass = true;
+        return this;
+    }
+
+    public boolean isSinglePass() {
+        return singlePass;
+    }
+
     /**
      * @param quotePattern The quote pattern to use for quotes within a thread, matching the href of an 'a' element<br>
      *                     Should contain a single matching group that resolves to the post number for the quote
@@ -214,6 +230,23 @@ public class CommentParser {
             String tag,
             CharSequence text,
             Element element
+    ) {
+        return handleTag(callback, theme, post, tag, text, element, element.nextSibling() != null);
+    }
+
+    /**
+     * For elements that aren't in a tree, like the ones from the single-pass parser.
+     *
+     * @param hasNextSibling whether anything follows the element in its parent; block elements get a line break then
+     */
+    public CharSequence handleTag(
+            PostParser.Callback callback,
+            @NonNull Theme theme,
+            Post.Builder post,
+            String tag,
+            CharSequence text,
+            Element element,
+            boolean hasNextSibling
     ) {
         List<StyleRule> rules = this.rules.get(tag);
         if (rules != null) {
@@ -221,7 +254,7 @@ public class CommentParser {
                 boolean highPriority = i == 0;
                 for (StyleRule rule : rules) {
                     if (rule.highPriority() == highPriority && rule.applies(element)) {
-                        return rule.apply(theme, callback, post, text, element);
+                        return rule.apply(theme, callback, post, text, element, hasNextSibling);
                     }
                 }
             }
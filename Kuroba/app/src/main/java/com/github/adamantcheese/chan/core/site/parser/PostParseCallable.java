@@ -19,32 +19,31 @@ package com.github.adamantcheese.chan.core.site.parser;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.model.Post;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
-import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
 
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
 // Called concurrently to parse the post html and the filters on it belong to ChanReaderRequest
 class PostParseCallable
         implements Callable<Post> {
-    private final List<Filter> filters;
+    private final CompiledFilters filters;
     private final DatabaseSavedReplyManager savedReplyManager;
     private final Post.Builder postBuilder;
     private final ChanReader reader;
-    private final List<PostHide> removedPosts;
+    private final IntHashSet removedNos;
     private final Set<Integer> internalNos;
     private final Theme theme;
 
     public PostParseCallable(
-            List<Filter> filters,
+            CompiledFilters filters,
             DatabaseSavedReplyManager savedReplyManager,
             Post.Builder builder,
             ChanReader reader,
-            List<PostHide> removedPosts,
+            IntHashSet removedNos,
             Set<Integer> internalNos,
             @NonNull Theme theme
     ) {
@@ -52,7 +51,7 @@ class PostParseCallable
         this.savedReplyManager = savedReplyManager;
         this.postBuilder = builder;
         this.reader = reader;
-        this.removedPosts = removedPosts;
+        this.removedNos = removedNos;
         this.internalNos = internalNos;
         this.theme = theme;
     }
@@ -74,7 +73,7 @@ class PostParseCallable
             }
 
             public boolean isRemoved(int postNo) {
-                return removedPosts.contains(new PostHide(postBuilder.board.siteId, postBuilder.board.code, postNo));
+                return removedNos.contains(postNo);
             }
         });
     }
@@ -202,7 +202,12 @@ public class StyleRule {
     }
 
     public CharSequence apply(
-            @NonNull Theme theme, PostParser.Callback callback, Post.Builder post, CharSequence text, Element element
+            @NonNull Theme theme,
+            PostParser.Callback callback,
+            Post.Builder post,
+            CharSequence text,
+            Element element,
+            boolean hasNextSibling
     ) {
         if (nullify) {
             return null;
@@ -301,7 +306,7 @@ public class StyleRule {
         }
 
         // Apply break if not the last element.
-        if (blockElement && element.nextSibling() != null) {
+        if (blockElement && hasNextSibling) {
             result = TextUtils.concat(result, "\n");
         }
 
@@ -0,0 +1,338 @@
+package com.github.adamantcheese.chan.features.embedding;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.di.AppModule;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+
+/**
+ * Keeps embed results across sessions, so that titles and durations aren't requested again every time a thread is
+ * opened. Lookups only ever hit memory; the file is an append-only log of binary records that is read once in the
+ * background and appended to in small batches, also in the background.<br>
+ * Records older than {@link #TTL} are dropped when read, and the log is rewritten with only the live entries once it
+ * holds a lot more records than the memory cache does. A record that was cut short, by a failed append or by the
+ * process dying mid-write, is truncated away so that later appends follow the last complete record.
+ */
+class EmbedResultStore {
+    private static final String TAG = "EmbedResultStore";
+    private static final int CACHE_SIZE = 1500;
+    private static final long TTL = TimeUnit.DAYS.toMillis(30);
+    // wait for a few more results before appending, a thread with embeds usually produces them in bursts
+    private static final long WRITE_DELAY_MS = 2000;
+    private static final int MAGIC = 0x4B454D42;
+    private static final int VERSION = 1;
+
+    private static final File logFile = new File(getCacheDir(), "embed_results.bin");
+    private static final File legacyFile = new File(getCacheDir(), "video_title_cache.json");
+
+    // all file access happens in order on the single thread of this executor
+    private static final ScheduledExecutorService executor = BackgroundUtils.backgroundScheduledService;
+    // the length of the log up to the end of its last complete record, -1 if not known yet
+    private static long logLength = -1;
+
+    private static final LruCache<String, Entry> cache = new LruCache<>(CACHE_SIZE);
+    private static final List<Entry> pending = new ArrayList<>();
+    private static boolean writeScheduled;
+    private static boolean loadStarted;
+
+    /**
+     * Reads the log in the background; only the first call does anything.
+     */
+    static synchronized void load() {
+        if (loadStarted) return;
+        loadStarted = true;
+        executor.execute(EmbedResultStore::readLog);
+    }
+
+    /**
+     * @return the stored result, or null if there is none or the log hasn't been read yet
+     */
+    @Nullable
+    static EmbedResult get(@NonNull String url) {
+        Entry entry = cache.get(url);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.savedAt > TTL) {
+            cache.remove(url);
+            return null;
+        }
+        return entry.result;
+    }
+
+    static void put(@NonNull String url, @NonNull EmbedResult result) {
+        Entry entry = new Entry(url, result, System.currentTimeMillis());
+        cache.put(url, entry);
+        synchronized (EmbedResultStore.class) {
+            pending.add(entry);
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        executor.schedule(EmbedResultStore::appendPending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes out anything that is still waiting, without waiting for the usual delay.
+     */
+    static void flush() {
+        executor.execute(EmbedResultStore::appendPending);
+    }
+
+    static void clear() {
+        cache.evictAll();
+        synchronized (EmbedResultStore.class) {
+            pending.clear();
+        }
+        executor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            logFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            legacyFile.delete();
+            logLength = -1;
+        });
+    }
+
+    private static void readLog() {
+        long start = System.currentTimeMillis();
+        int records = 0;
+        if (logFile.exists()) {
+            try {
+                long goodLength;
+                CountingInputStream counter =
+                        new CountingInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+                try (DataInputStream in = new DataInputStream(counter)) {
+                    if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Unknown log format");
+                    goodLength = counter.count;
+                    while (true) {
+                        Entry entry;
+                        try {
+                            entry = readEntry(in);
+                        } catch (EOFException e) {
+                            break;
+                        } catch (Exception e) {
+                            Logger.w(TAG, "Dropping a broken embed result record at " + goodLength, e);
+                            break;
+                        }
+                        goodLength = counter.count;
+                        records++;
+                        if (start - entry.savedAt > TTL) continue;
+                        // results from this session are newer than anything in the log
+                        if (cache.get(entry.url) == null) {
+                            cache.put(entry.url, entry);
+                        }
+                    }
+                }
+                // anything after the last complete record was cut short, appends have to start from there
+                if (goodLength < logFile.length()) {
+                    truncateLog(goodLength);
+                }
+                logLength = goodLength;
+            } catch (Exception e) {
+                Logger.w(TAG, "Failed to read embed results, starting over", e);
+                records = Integer.MAX_VALUE;
+            }
+        }
+        boolean migrated = readLegacyFile(start);
+
+        if (migrated || records > CACHE_SIZE * 2) {
+            rewriteLog();
+        }
+        Logger.d(TAG, "Loaded " + cache.size() + " embed results from " + records + " records");
+    }
+
+    // the old cache was a JSON dump of the whole map, written on every stop
+    private static boolean readLegacyFile(long now) {
+        if (!legacyFile.exists()) return false;
+        try (FileReader reader = new FileReader(legacyFile)) {
+            Type type = new TypeToken<Map<String, EmbedResult>>() {}.getType();
+            Map<String, EmbedResult> results = AppModule.gson.fromJson(reader, type);
+            if (results != null) {
+                for (Map.Entry<String, EmbedResult> result : results.entrySet()) {
+                    if (result.getValue() == null || cache.get(result.getKey()) != null) continue;
+                    cache.put(result.getKey(), new Entry(result.getKey(), result.getValue(), now));
+                }
+            }
+        } catch (Exception e) {
+            Logger.w(TAG, "Failed to migrate the old embed cache", e);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        legacyFile.delete();
+        return true;
+    }
+
+    // compacts the log down to what is in memory; anything pending is included, so it is dropped from the queue
+    private static void rewriteLog() {
+        File tempFile = new File(logFile.getPath() + ".tmp");
+        synchronized (EmbedResultStore.class) {
+            pending.clear();
+        }
+        try {
+            try (DataOutputStream out = openLog(tempFile, false)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                // oldest first, so the most recently used entries are also the last read back
+                for (Entry entry : cache.snapshot().values()) {
+                    writeEntry(out, entry);
+                }
+            }
+            if (!tempFile.renameTo(logFile)) throw new IOException("Could not move compacted log into place");
+            logLength = logFile.length();
+        } catch (Exception e) {
+            Logger.w(TAG, "Failed to compact embed results", e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            logFile.delete();
+            logLength = -1;
+        }
+    }
+
+    private static void appendPending() {
+        List<Entry> toWrite;
+        synchronized (EmbedResultStore.class) {
+            writeScheduled = false;
+            if (pending.isEmpty()) return;
+            toWrite = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        boolean newFile = !logFile.exists();
+        long goodLength = newFile ? 0 : logLength >= 0 ? logLength : logFile.length();
+        try {
+            try (DataOutputStream out = openLog(logFile, true)) {
+                if (newFile) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                }
+                for (Entry entry : toWrite) {
+                    writeEntry(out, entry);
+                }
+            }
+            logLength = logFile.length();
+        } catch (Exception e) {
+            Logger.w(TAG, "Failed to append embed results", e);
+            // a partial record would make everything appended after it unreadable
+            try {
+                if (newFile) {
+                    //noinspection ResultOfMethodCallIgnored
+                    logFile.delete();
+                    logLength = -1;
+                } else {
+                    truncateLog(goodLength);
+                    logLength = goodLength;
+                }
+            } catch (Exception e1) {
+                Logger.w(TAG, "Failed to truncate embed results, starting over", e1);
+                //noinspection ResultOfMethodCallIgnored
+                logFile.delete();
+                logLength = -1;
+            }
+        }
+    }
+
+    private static void truncateLog(long length)
+            throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(length);
+        }
+    }
+
+    private static DataOutputStream openLog(File file, boolean append)
+            throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry)
+            throws IOException {
+        EmbedResult result = entry.result;
+        out.writeLong(entry.savedAt);
+        out.writeUTF(entry.url);
+        out.writeUTF(result.title);
+        out.writeBoolean(result.duration != null);
+        if (result.duration != null) out.writeUTF(result.duration);
+        // only a few embedders make images, which have too many fields to be worth their own format
+        out.writeBoolean(result.extraImage != null);
+        if (result.extraImage != null) out.writeUTF(AppModule.gson.toJson(result.extraImage));
+    }
+
+    private static Entry readEntry(DataInputStream in)
+            throws IOException {
+        long savedAt = in.readLong();
+        String url = in.readUTF();
+        String title = in.readUTF();
+        String duration = in.readBoolean() ? in.readUTF() : null;
+        PostImage extraImage = in.readBoolean() ? AppModule.gson.fromJson(in.readUTF(), PostImage.class) : null;
+        return new Entry(url, new EmbedResult(title, duration, extraImage), savedAt);
+    }
+
+    private static class CountingInputStream
+            extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+            int read = super.read();
+            if (read >= 0) count++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+                throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n)
+                throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class Entry {
+        private final String url;
+        private final EmbedResult result;
+        private final long savedAt;
+
+        private Entry(String url, EmbedResult result, long savedAt) {
+            this.url = url;
+            this.result = result;
+            this.savedAt = savedAt;
+        }
+    }
+}
@@ -8,7 +8,6 @@ import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.ImageSpan;
-import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.ComponentActivity;
@@ -18,7 +17,6 @@ import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 
 import com.github.adamantcheese.chan.BuildConfig;
-import com.github.adamantcheese.chan.core.di.AppModule;
 import com.github.adamantcheese.chan.core.manager.ArchivesManager;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
@@ -45,25 +43,19 @@ import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.StringUtils;
-import com.google.gson.reflect.TypeToken;
 
 import org.jetbrains.annotations.NotNull;
 import org.nibor.autolink.LinkExtractor;
 import org.nibor.autolink.LinkSpan;
 import org.nibor.autolink.LinkType;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
@@ -75,7 +67,6 @@ import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.Response;
 
-import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
 
@@ -85,11 +76,6 @@ public class EmbeddingEngine
     private static Handler mainHandler;
     private static final List<Embedder> embedders = new NoDeleteArrayList<>();
 
-    private static final int CACHE_SIZE = 1500;
-    // a cache for titles and durations to prevent extra api calls if not necessary
-    // maps a URL to a title and duration string; if durations are disabled, the second argument is an empty string
-    private static LruCache<String, EmbedResult> videoTitleDurCache = new LruCache<>(CACHE_SIZE);
-
     private static final LinkExtractor LINK_EXTRACTOR =
             LinkExtractor.builder().linkTypes(EnumSet.of(LinkType.URL)).build();
 
@@ -113,6 +99,8 @@ public class EmbeddingEngine
         }
 
         context.getLifecycle().addObserver(this);
+        // titles and durations from previous sessions, to prevent extra api calls if not necessary
+        EmbedResultStore.load();
     }
 
     /**
@@ -391,7 +379,7 @@ public class EmbeddingEngine
         Set<Pair<String, HttpUrl>> toReplace = generateReplacements(embedder, commentCopy);
 
         for (Pair<String, HttpUrl> urlPair : toReplace) {
-            EmbedResult result = videoTitleDurCache.get(urlPair.first);
+            EmbedResult result = EmbedResultStore.get(urlPair.first);
             if (result != null) {
                 // we've previously cached this embed and we don't need additional information; ignore failures because there's no actual call going on
                 calls.add(getStandardCachedCallPair(theme,
@@ -414,10 +402,9 @@ public class EmbeddingEngine
                                 urlPair.first,
                                 embedder
                         ),
-                        null,
-                        NetUtilsClasses.ONE_DAY_CACHE,
-                        embedder.getTimeoutMillis(),
-                        false
+                        new NetUtilsClasses.CallOptions().cacheControl(NetUtilsClasses.ONE_DAY_CACHE)
+                                .timeoutMs(embedder.getTimeoutMillis())
+                                .noEnqueue()
                 ));
             }
         }
@@ -455,7 +442,7 @@ public class EmbeddingEngine
             public void onSuccess(EmbedResult result) {
                 //got a result, replace with the result and also cache the result
                 if (embedder.shouldCacheResults()) {
-                    videoTitleDurCache.put(URL, result);
+                    EmbedResultStore.put(URL, result);
                 }
                 performStandardEmbedding(theme,
                         commentCopy,
@@ -557,36 +544,13 @@ public class EmbeddingEngine
     //endregion
 
     public void clearCache() {
-        videoTitleDurCache.evictAll();
-        cacheFile.delete();
-    }
-
-    private static final Type lruType = new TypeToken<Map<String, EmbedResult>>() {}.getType();
-    private static final File cacheFile = new File(getCacheDir(), "video_title_cache.json");
-
-    @OnLifecycleEvent(Lifecycle.Event.ON_START)
-    public void onStart() {
-        try (FileReader reader = new FileReader(cacheFile)) {
-            //restore parsed media title stuff
-            Map<String, EmbedResult> titles = AppModule.gson.fromJson(reader, lruType);
-            //reconstruct
-            videoTitleDurCache = new LruCache<>(CACHE_SIZE);
-            for (Map.Entry<String, EmbedResult> entry : titles.entrySet()) {
-                videoTitleDurCache.put(entry.getKey(), entry.getValue());
-            }
-        } catch (Exception e) {
-            cacheFile.delete(); // bad file probably
-        }
+        EmbedResultStore.clear();
     }
 
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void onStop() {
-        //store parsed media title stuff, extra prevention of unneeded API calls
-        try (FileWriter writer = new FileWriter(cacheFile)) {
-            AppModule.gson.toJson(videoTitleDurCache.snapshot(), lruType, writer);
-        } catch (Exception e) {
-            cacheFile.delete();
-        }
+        // results are written in the background as they come in, this just doesn't wait for the rest of the batch
+        EmbedResultStore.flush();
     }
 
     public interface InvalidateFunction {
@@ -2,6 +2,7 @@ package com.github.adamantcheese.chan.ui.adapter;
 
 import android.graphics.drawable.ColorDrawable;
 import android.text.SpannableString;
+import android.text.TextUtils;
 import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,19 +10,29 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager.History;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.model.orm.Pin;
+import com.github.adamantcheese.chan.core.site.loader.ThreadArchive;
 import com.github.adamantcheese.chan.ui.layout.SearchLayout;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
 import com.github.adamantcheese.chan.ui.view.ThumbnailView;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.BackgroundUtils.Cancelable;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+import com.github.adamantcheese.chan.utils.SearchIndex;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import static android.graphics.Typeface.BOLD;
 import static android.view.Gravity.CENTER;
@@ -46,6 +57,10 @@ public class DrawerHistoryAdapter
     private final List<History> historyList = new ArrayList<>();
 
     private String searchQuery = "";
+    private SearchIndex searchIndex = new SearchIndex();
+    // positions in the history list that match the search query, null if there's no query
+    private IntHashSet searchMatches;
+    private Cancelable savedThreadSearch;
     private History highlighted;
     private final Callback callback;
 
@@ -65,16 +80,78 @@ public class DrawerHistoryAdapter
         highlighted = null;
         notifyDataSetChanged();
 
-        DatabaseUtils.runTaskAsync(instance(DatabaseLoadableManager.class).getHistory(), (result) -> {
+        Callable<List<History>> getHistory = instance(DatabaseLoadableManager.class).getHistory();
+        DatabaseUtils.runTaskAsync(DatabaseUtils.touching(() -> {
+            List<History> history = getHistory.call();
+            // titles are indexed by their position in the list, as that's all they need to be looked up by
+            SearchIndex index = new SearchIndex();
+            for (int i = 0; i < history.size(); i++) {
+                index.add(i, 0, history.get(i).loadable.title);
+            }
+            return new Pair<>(history, index);
+        }, Loadable.class, Pin.class), (result) -> {
             historyList.clear();
-            if (result.isEmpty()) {
-                result.add(NO_HISTORY);
+            if (result.first.isEmpty()) {
+                result.first.add(NO_HISTORY);
             }
-            historyList.addAll(result);
+            historyList.addAll(result.first);
+            searchIndex = result.second;
+            searchMatches = findSearchMatches(searchQuery);
             notifyDataSetChanged();
+            findSavedThreadMatches(searchQuery);
         });
     }
 
+    /**
+     * @return the positions of the history entries whose titles contain the query, or null if there's no query
+     */
+    @Nullable
+    private IntHashSet findSearchMatches(String query) {
+        if (TextUtils.isEmpty(query)) return null;
+
+        IntHashSet candidates = searchIndex.search(query);
+        IntHashSet matches = new IntHashSet();
+        for (int i = 0; i < historyList.size(); i++) {
+            History history = historyList.get(i);
+            if (history.loadable == null || (candidates != null && !candidates.contains(i))) continue;
+            if (StringUtils.containsIgnoreCase(history.loadable.title, query)) {
+                matches.add(i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Saved threads also match on the text of their posts; that takes the disk, so they're added to the matches once
+     * the search is done, if the query is still the same.
+     */
+    private void findSavedThreadMatches(String query) {
+        if (savedThreadSearch != null) {
+            savedThreadSearch.cancel();
+            savedThreadSearch = null;
+        }
+        if (TextUtils.isEmpty(query)) return;
+
+        savedThreadSearch = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService,
+                () -> ThreadArchive.findThreads(query),
+                (threads) -> {
+                    savedThreadSearch = null;
+                    if (!query.equals(searchQuery) || searchMatches == null || threads.isEmpty()) return;
+                    boolean added = false;
+                    for (int i = 0; i < historyList.size(); i++) {
+                        History history = historyList.get(i);
+                        if (history.loadable == null) continue;
+                        if (threads.contains(ThreadArchive.getName(history.loadable)) && searchMatches.add(i)) {
+                            added = true;
+                        }
+                    }
+                    if (added) {
+                        notifyDataSetChanged();
+                    }
+                }
+        );
+    }
+
     @Override
     public HistoryCell onCreateViewHolder(ViewGroup parent, int viewType) {
         return new HistoryCell(LayoutInflater.from(parent.getContext()).inflate(R.layout.cell_history, parent, false));
@@ -84,7 +161,7 @@ public class DrawerHistoryAdapter
     public void onBindViewHolder(HistoryCell holder, int position) {
         History history = historyList.get(position);
         if (history != LOADING && history != NO_HISTORY) {
-            if (!StringUtils.containsIgnoreCase(history.loadable.title, searchQuery)) {
+            if (searchMatches != null && !searchMatches.contains(position)) {
                 holder.itemView.setVisibility(View.GONE);
                 ViewGroup.LayoutParams oldParams = holder.itemView.getLayoutParams();
                 oldParams.height = 0;
@@ -158,13 +235,17 @@ public class DrawerHistoryAdapter
     @Override
     public void onSearchEntered(String entered) {
         searchQuery = entered;
+        searchMatches = findSearchMatches(entered);
         notifyDataSetChanged();
+        findSavedThreadMatches(entered);
     }
 
     @Override
     public void onClearPressedWhenEmpty() {
         searchQuery = "";
+        searchMatches = null;
         notifyDataSetChanged();
+        findSavedThreadMatches(searchQuery);
     }
 
     public class HistoryCell
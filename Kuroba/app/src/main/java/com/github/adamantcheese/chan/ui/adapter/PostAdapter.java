@@ -25,6 +25,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.view.OneShotPreDrawListener;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
@@ -37,6 +38,7 @@ import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.cell.PostCell;
 import com.github.adamantcheese.chan.ui.cell.PostCellInterface;
+import com.github.adamantcheese.chan.ui.cell.PostTextCache;
 import com.github.adamantcheese.chan.ui.cell.ThreadStatusCell;
 import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
@@ -68,6 +70,8 @@ public class PostAdapter
 
     private final ThreadStatusCell.Callback statusCellCallback;
     private final List<Post> displayList = new ArrayList<>();
+    // per adapter, as the positions it makes text around are this adapter's
+    private final PostTextCache postTextCache = new PostTextCache();
 
     private Loadable loadable = null;
     private String highlightedId;
@@ -75,6 +79,12 @@ public class PostAdapter
     private String highlightedTripcode;
     public int lastSeenIndicatorPosition = Integer.MIN_VALUE;
     private PostsFilter currentFilter = new PostsFilter(PostsFilter.Order.BUMP, null);
+    // These are only used on the main thread; the background part of setThread only gets copies of what it needs.
+    // generation is bumped on every setThread, so that a background update that was overtaken by a newer one is
+    // dropped; appliedGeneration is the one the display list reflects, and pendingApplied is run once it catches up.
+    private int generation;
+    private int appliedGeneration;
+    private final List<Runnable> pendingApplied = new ArrayList<>();
 
     private ChanSettings.PostViewMode postViewMode = LIST;
     private boolean compact = false;
@@ -186,8 +196,11 @@ public class PostAdapter
                         isInPopup(),
                         shouldHighlight(post),
                         isCompact(),
-                        theme
+                        theme,
+                        postTextCache
                 );
+                // so that the next few posts are ready by the time they're bound
+                postTextCache.makeAround(displayList, position, postCellCallback.getSearchQuery(), theme);
                 // apply embedding
                 boolean embedInProgress = EmbeddingEngine.getInstance()
                         .embed(theme, post, () -> recyclerView.post(() -> notifyItemChanged(position)));
@@ -217,7 +230,8 @@ public class PostAdapter
                         isInPopup(),
                         shouldHighlight(post),
                         isCompact(),
-                        theme
+                        theme,
+                        postTextCache
                 );
 
                 if (postAdapterCallback != null) {
@@ -315,77 +329,126 @@ public class PostAdapter
         }
     }
 
-    public void setThread(ChanThread thread, PostsFilter newFilter) {
+    /**
+     * Shows the thread with the given filter applied. The first time a loadable is shown, this happens right away, so
+     * that it can be scrolled in immediately after; updates to a loadable that is already shown are filtered and diffed
+     * in the background, and only applied if no newer call was made in the meantime.
+     *
+     * @param onApplied run once the display list reflects this call (or a newer one), may be null
+     */
+    public void setThread(ChanThread thread, PostsFilter newFilter, @Nullable Runnable onApplied) {
         BackgroundUtils.ensureMainThread();
-
-        boolean prevUseStatusView = showStatusView();
-        boolean loadableChanged = !thread.getLoadable().equals(loadable);
-        this.loadable = thread.getLoadable();
-
-        List<Post> newList = newFilter == null ? thread.getPosts() : newFilter.apply(thread);
-        boolean filterChanged = !Objects.equals(currentFilter, newFilter);
-        currentFilter = newFilter;
-
-        boolean newUseStatusView = showStatusView();
-
-        lastSeenIndicatorPosition = Integer.MIN_VALUE;
-        // Do not process the last post, the indicator does not have to appear at the bottom
-        for (int i = 0; i < newList.size() - 1; i++) {
-            if (newList.get(i).no == loadable.lastViewed) {
-                lastSeenIndicatorPosition = i;
-                break;
-            }
+        final int thisGeneration = ++generation;
+        if (onApplied != null) {
+            pendingApplied.add(onApplied);
         }
 
         // shortcut for performance, if the loadable has changed just invalidate everything
-        if (loadableChanged) {
+        if (!thread.getLoadable().equals(loadable)) {
+            loadable = thread.getLoadable();
+            currentFilter = newFilter;
+            postTextCache.clear();
+            List<Post> newList = newFilter == null ? thread.getPosts() : newFilter.apply(thread);
+            lastSeenIndicatorPosition = findLastSeenIndicatorPosition(newList, loadable.lastViewed);
             displayList.clear();
             displayList.addAll(newList);
             notifyDataSetChanged();
+            runPendingApplied(thisGeneration);
             return;
         }
 
-        // otherwise, use a diff to calculate adapter changes more efficiently and not refresh items that haven't changed
-        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-            // +1 for status cells
-            @Override
-            public int getOldListSize() {
-                return displayList.size() + (prevUseStatusView ? 1 : 0);
-            }
+        final List<Post> oldList = new ArrayList<>(displayList);
+        final boolean prevUseStatusView = showStatusView();
+        final boolean newUseStatusView = showStatusView(newFilter);
+        final boolean filterChanged = !Objects.equals(currentFilter, newFilter);
+        final int lastViewed = loadable.lastViewed;
+
+        BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            List<Post> newList = newFilter == null ? thread.getPosts() : newFilter.apply(thread);
+            // use a diff to calculate adapter changes more efficiently and not refresh items that haven't changed
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                // +1 for status cells
+                @Override
+                public int getOldListSize() {
+                    return oldList.size() + (prevUseStatusView ? 1 : 0);
+                }
 
-            @Override
-            public int getNewListSize() {
-                return newList.size() + (newUseStatusView ? 1 : 0);
-            }
+                @Override
+                public int getNewListSize() {
+                    return newList.size() + (newUseStatusView ? 1 : 0);
+                }
 
-            @Override
-            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                Post oldPost = oldItemPosition >= displayList.size() ? null : displayList.get(oldItemPosition);
-                Post newPost = newItemPosition >= newList.size() ? null : newList.get(newItemPosition);
-                // if one of these posts is out-of-range, return true so that we can check contents
-                // we want to call notifyItemChanged in this case, and that's how to do it with this method
-                if (oldPost == null || newPost == null) return true;
-                return oldPost.no == newPost.no;
-            }
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    Post oldPost = oldItemPosition >= oldList.size() ? null : oldList.get(oldItemPosition);
+                    Post newPost = newItemPosition >= newList.size() ? null : newList.get(newItemPosition);
+                    // if one of these posts is out-of-range, return true so that we can check contents
+                    // we want to call notifyItemChanged in this case, and that's how to do it with this method
+                    if (oldPost == null || newPost == null) return true;
+                    return oldPost.no == newPost.no;
+                }
 
-            @Override
-            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                // if the filter has changed, all other locations have new contents
-                if (filterChanged) return false;
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    // if the filter has changed, all other locations have new contents
+                    if (filterChanged) return false;
 
-                Post oldPost = oldItemPosition >= displayList.size() ? null : displayList.get(oldItemPosition);
-                Post newPost = newItemPosition >= newList.size() ? null : newList.get(newItemPosition);
+                    Post oldPost = oldItemPosition >= oldList.size() ? null : oldList.get(oldItemPosition);
+                    Post newPost = newItemPosition >= newList.size() ? null : newList.get(newItemPosition);
 
-                if (oldPost == null || newPost == null) return false;
-                // check equality of posts to see if they have changed
-                return oldPost.equals(newPost);
-            }
+                    if (oldPost == null || newPost == null) return false;
+                    // check equality of posts to see if they have changed
+                    return oldPost.equals(newPost);
+                }
+            });
+            return new DisplayUpdate(newList, findLastSeenIndicatorPosition(newList, lastViewed), diff);
+        }, update -> {
+            // a newer thread or filter was set while this one was being worked out
+            if (thisGeneration != generation) return;
+
+            currentFilter = newFilter;
+            lastSeenIndicatorPosition = update.lastSeenIndicatorPosition;
+            displayList.clear();
+            displayList.addAll(update.posts);
+
+            update.diff.dispatchUpdatesTo(this); // better than notifyDataSetChanged for small UI updates, but can also act as a full refresh if needed
+            runPendingApplied(thisGeneration);
         });
+    }
 
-        displayList.clear();
-        displayList.addAll(newList);
+    public void setThread(ChanThread thread, PostsFilter newFilter) {
+        setThread(thread, newFilter, null);
+    }
 
-        result.dispatchUpdatesTo(this); // better than notifyDataSetChanged for small UI updates, but can also act as a full refresh if needed
+    /**
+     * Runs the given runnable right away if the display list is up to date, or once the pending update is applied.
+     */
+    public void runWhenApplied(Runnable runnable) {
+        BackgroundUtils.ensureMainThread();
+        if (appliedGeneration == generation) {
+            runnable.run();
+        } else {
+            pendingApplied.add(runnable);
+        }
+    }
+
+    private void runPendingApplied(int appliedGeneration) {
+        this.appliedGeneration = appliedGeneration;
+        List<Runnable> toRun = new ArrayList<>(pendingApplied);
+        pendingApplied.clear();
+        for (Runnable runnable : toRun) {
+            runnable.run();
+        }
+    }
+
+    private static int findLastSeenIndicatorPosition(List<Post> posts, int lastViewed) {
+        // Do not process the last post, the indicator does not have to appear at the bottom
+        for (int i = 0; i < posts.size() - 1; i++) {
+            if (posts.get(i).no == lastViewed) {
+                return i;
+            }
+        }
+        return Integer.MIN_VALUE;
     }
 
     public List<Post> getDisplayList() {
@@ -393,6 +456,7 @@ public class PostAdapter
     }
 
     public void cleanup() {
+        generation++; // drop any update that is still being worked out
         highlightedId = null;
         highlightedNo = -1;
         highlightedTripcode = null;
@@ -450,11 +514,19 @@ public class PostAdapter
     }
 
     public boolean showStatusView() {
+        return showStatusView(currentFilter);
+    }
+
+    /**
+     * @param filter the filter the display list is or will be filtered with
+     * @return whether there is a status cell at the end of the list with the given filter
+     */
+    protected boolean showStatusView(@Nullable PostsFilter filter) {
         // the loadable can be null while this adapter is used between cleanup and the removal
         // of the recyclerview from the view hierarchy, although it's rare.
         // also don't show the status view if there's a search query going
-        return postAdapterCallback != null && TextUtils.isEmpty(currentFilter.getQuery()) && loadable != null
-                && loadable.isThreadMode();
+        return postAdapterCallback != null && (filter == null || TextUtils.isEmpty(filter.getQuery()))
+                && loadable != null && loadable.isThreadMode();
     }
 
     public static class PostViewHolder
@@ -468,6 +540,18 @@ public class PostAdapter
         }
     }
 
+    private static class DisplayUpdate {
+        private final List<Post> posts;
+        private final int lastSeenIndicatorPosition;
+        private final DiffUtil.DiffResult diff;
+
+        private DisplayUpdate(List<Post> posts, int lastSeenIndicatorPosition, DiffUtil.DiffResult diff) {
+            this.posts = posts;
+            this.lastSeenIndicatorPosition = lastSeenIndicatorPosition;
+            this.diff = diff;
+        }
+    }
+
     public static class StatusViewHolder
             extends RecyclerView.ViewHolder {
         public StatusViewHolder(ThreadStatusCell threadStatusCell) {
@@ -26,6 +26,7 @@ import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
 import java.util.ArrayList;
@@ -119,10 +120,16 @@ public class PostsFilter {
 
         // Process search
         if (!TextUtils.isEmpty(query)) {
+            // posts that can't contain the query are skipped without looking at them, the rest are checked as usual
+            IntHashSet candidates = thread.findSearchCandidates(query);
             boolean add;
             Iterator<Post> i = posts.iterator();
             while (i.hasNext()) {
                 Post item = i.next();
+                if (candidates != null && !candidates.contains(item.no)) {
+                    i.remove();
+                    continue;
+                }
                 add = false;
                 if (StringUtils.containsIgnoreCase(item.comment, query)) {
                     add = true;
@@ -25,6 +25,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.cardview.widget.CardView;
+import androidx.core.widget.TextViewCompat;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.Post;
@@ -52,7 +53,6 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.setClipboardContent;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
-import static com.github.adamantcheese.chan.utils.StringUtils.applySearchSpans;
 
 public class CardPostCell
         extends CardView
@@ -61,6 +61,9 @@ public class CardPostCell
 
     private Post post;
     private PostCellInterface.PostCellCallback callback;
+    private PostTextCache textCache;
+    // the text being shown, which no other cell is given while this one has it
+    private PostTextCache.PostText postText;
 
     private int iconSizePx;
 
@@ -157,12 +160,15 @@ public class CardPostCell
             boolean inPopup,
             boolean highlighted,
             boolean compact,
-            Theme theme
+            Theme theme,
+            PostTextCache textCache
     ) {
         this.callback = callback;
+        this.textCache = textCache;
 
-        bindPost(theme, post, highlighted);
+        // before binding, the text size is part of what the comment is measured with
         setCompact(compact);
+        bindPost(theme, post, highlighted);
     }
 
     public Post getPost() {
@@ -216,13 +222,16 @@ public class CardPostCell
 
         icons.setWithoutText(post, iconSizePx);
 
+        if (postText != null) {
+            postText.release();
+        }
+        postText = textCache.get(post, callback.getSearchQuery(), theme, TextViewCompat.getTextMetricsParams(comment));
+
         title.setVisibility(TextUtils.isEmpty(post.subjectSpan) ? GONE : VISIBLE);
-        title.setText(TextUtils.isEmpty(post.subjectSpan)
-                ? null
-                : applySearchSpans(theme, post.subjectSpan, callback.getSearchQuery()));
+        title.setText(TextUtils.isEmpty(post.subjectSpan) ? null : postText.subject);
 
         comment.setMaxLines(ChanSettings.getBoardColumnCount() != 1 ? COMMENT_MAX_LINES : COMMENT_MAX_LINES * 2);
-        comment.setText(applySearchSpans(theme, post.comment, callback.getSearchQuery()));
+        TextViewCompat.setPrecomputedText(comment, postText.comment);
 
         String status = getString(R.string.card_stats, post.getReplies(), post.getImagesCount());
         if (!ChanSettings.neverShowPages.get()) {
@@ -241,6 +250,10 @@ public class CardPostCell
         thumbView.setPostImage(null, 0);
         thumbView.setOnClickListener(null);
         thumbView.setOnLongClickListener(null);
+        if (postText != null) {
+            postText.release();
+            postText = null;
+        }
         post = null;
     }
 
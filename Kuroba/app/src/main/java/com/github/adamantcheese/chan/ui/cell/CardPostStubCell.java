@@ -93,7 +93,8 @@ public class CardPostStubCell
             boolean inPopup,
             boolean highlighted,
             boolean compact,
-            Theme theme
+            Theme theme,
+            PostTextCache textCache
     ) {
         this.post = post;
         this.callback = callback;
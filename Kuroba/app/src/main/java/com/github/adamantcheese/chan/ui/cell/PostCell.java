@@ -48,6 +48,7 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.adamantcheese.chan.R;
@@ -123,10 +124,15 @@ public class PostCell
     private Loadable loadable;
     private Post post;
     private PostCellCallback callback;
+    private PostTextCache textCache;
+    // the text being shown, which no other cell is given while this one has it
+    private PostTextCache.PostText postText;
     private boolean inPopup;
     private boolean highlighted;
 
     private GestureDetector doubleTapComment;
+    // kept for the life of the cell, so that its thumbnail views can be reused from one post to the next
+    private final PostImagesAdapter imagesAdapter = new PostImagesAdapter();
 
     private final PostViewMovementMethod commentMovementMethod = new PostViewMovementMethod();
 
@@ -251,10 +257,12 @@ public class PostCell
             boolean inPopup,
             boolean highlighted,
             boolean compact,
-            Theme theme
+            Theme theme,
+            PostTextCache textCache
     ) {
         this.loadable = loadable;
         this.callback = callback;
+        this.textCache = textCache;
         this.inPopup = inPopup;
         this.highlighted = highlighted;
 
@@ -310,16 +318,34 @@ public class PostCell
         if (post.images.isEmpty() || ChanSettings.textOnly.get()) {
             thumbnailViews.setVisibility(GONE);
         } else {
-            thumbnailViews.setAdapter(new PostImagesAdapter());
+            if (thumbnailViews.getAdapter() == null) {
+                thumbnailViews.setAdapter(imagesAdapter);
+            } else {
+                imagesAdapter.notifyDataSetChanged();
+            }
             thumbnailViews.setVisibility(VISIBLE);
         }
 
+        // the comment's text parameters depend on the typeface
+        if (!theme.altFontIsMain && ChanSettings.fontAlternate.get()) {
+            comment.setTypeface(theme.altFont);
+        }
+
+        if (theme.altFontIsMain) {
+            comment.setTypeface(ChanSettings.fontAlternate.get() ? Typeface.DEFAULT : theme.altFont);
+        }
+
+        if (postText != null) {
+            postText.release();
+        }
+        postText = textCache.get(post, callback.getSearchQuery(), theme, TextViewCompat.getTextMetricsParams(comment));
+
         SpannableStringBuilder titleParts = new SpannableStringBuilder();
 
-        if (post.subjectSpan != null) {
-            titleParts.append(applySearchSpans(theme, post.subjectSpan, callback.getSearchQuery())).append("\n");
+        if (postText.subject != null) {
+            titleParts.append(postText.subject).append("\n");
         }
-        titleParts.append(applySearchSpans(theme, post.nameTripcodeIdCapcodeSpan, callback.getSearchQuery()));
+        titleParts.append(postText.name);
 
         int detailsColor = getAttrColor(getContext(), R.attr.post_details_color);
         CharSequence dubs = ChanSettings.addDubs.get() ? getRepeatDigits(post.no) : "";
@@ -380,21 +406,13 @@ public class PostCell
             comment.setEllipsize(null);
         }
 
-        if (!theme.altFontIsMain && ChanSettings.fontAlternate.get()) {
-            comment.setTypeface(theme.altFont);
-        }
-
-        if (theme.altFontIsMain) {
-            comment.setTypeface(ChanSettings.fontAlternate.get() ? Typeface.DEFAULT : theme.altFont);
-        }
-
         if (ChanSettings.shiftPostFormat.get()) {
             comment.setVisibility(isEmpty(post.comment) ? GONE : VISIBLE);
         } else {
             comment.setVisibility(isEmpty(post.comment) && post.images.isEmpty() ? GONE : VISIBLE);
         }
 
-        comment.setText(applySearchSpans(theme, post.comment, callback.getSearchQuery()));
+        TextViewCompat.setPrecomputedText(comment, postText.comment);
 
         if (threadMode) {
             comment.setTextIsSelectable(true);
@@ -558,13 +576,18 @@ public class PostCell
 
     @Override
     public void unsetPost() {
-        thumbnailViews.setAdapter(null);
+        // recycles the thumbnail views, but keeps them around for the next post
+        thumbnailViews.swapAdapter(imagesAdapter, true);
         icons.clear();
         headerWrapper.setOnLongClickListener(null);
         headerWrapper.setLongClickable(false);
         comment.setOnTouchListener(null);
         comment.setMovementMethod(null);
         post.comment.removeSpan(BACKGROUND_SPAN);
+        if (postText != null) {
+            postText.release();
+            postText = null;
+        }
         bodyWrapper.setLayoutParams(DEFAULT_BODY_PARAMS);
         post = null;
     }
@@ -717,7 +740,7 @@ public class PostCell
 
         @Override
         public int getItemCount() {
-            return post.images.size();
+            return post == null ? 0 : post.images.size();
         }
 
         @Override
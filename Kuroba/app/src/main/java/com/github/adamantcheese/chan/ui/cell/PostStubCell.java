@@ -106,7 +106,8 @@ public class PostStubCell
             boolean inPopup,
             boolean highlighted,
             boolean compact,
-            Theme theme
+            Theme theme,
+            PostTextCache textCache
     ) {
         this.post = post;
         this.callback = callback;
@@ -0,0 +1,197 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.ui.cell;
+
+import android.text.SpannedString;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static com.github.adamantcheese.chan.utils.StringUtils.applySearchSpans;
+
+/**
+ * The text of post cells, made ahead of binding. Binding a post means copying its subject, name and comment to apply
+ * the search highlights, and then the comment TextView measures every character of the comment again; for a long
+ * comment, that's most of the time a bind takes on the main thread.<br>
+ * While a post is bound, the posts around it are made here on a background thread: the highlighted subject and name,
+ * and the highlighted comment as {@link PrecomputedTextCompat}, measured with the text parameters of the cells that
+ * were bound last. A cell uses what was made if it was made from the same comment (embedding replaces it), search
+ * query, theme and text parameters; otherwise it makes it on the spot, and keeps that for the next bind.<br>
+ * The comment is a Spannable that the cell showing it sets spans on, so a text is only given to one cell at a time,
+ * until that cell releases it; each adapter has its own cache.
+ */
+public class PostTextCache {
+    private static final int CACHE_SIZE = 200;
+    // how many posts are made ahead of the one being bound, and behind it for scrolling back up
+    private static final int MAKE_AHEAD = 8;
+    private static final int MAKE_BEHIND = 3;
+
+    // behind any post parsing, so that a fling doesn't hold up loading; posts that were scrolled past while waiting
+    // are skipped
+    private static final Executor executor =
+            command -> BackgroundUtils.parseService.submit(Executors.callable(command), Priority.LOW);
+
+    // everything but making the texts happens on the main thread
+    private final LruCache<Integer, PostText> texts = new LruCache<>(CACHE_SIZE);
+    private final Set<Integer> pending = new HashSet<>();
+    @Nullable
+    private PrecomputedTextCompat.Params commentParams;
+    private volatile int boundPosition;
+
+    /**
+     * @return the text for the post, made now if it wasn't made ahead or another cell has it; release it when unbound
+     */
+    @NonNull
+    public PostText get(
+            @NonNull Post post,
+            @Nullable String searchQuery,
+            @NonNull Theme theme,
+            @NonNull PrecomputedTextCompat.Params params
+    ) {
+        BackgroundUtils.ensureMainThread();
+        commentParams = params;
+        PostText text = texts.get(post.no);
+        if (text == null || !text.isFor(post, searchQuery, theme, params)) {
+            text = new PostText(post, post.comment, post.comment, searchQuery, theme, params);
+            texts.put(post.no, text);
+        } else if (text.bound) {
+            // shown by another cell, e.g. the old one during a change animation
+            text = new PostText(post, post.comment, post.comment, searchQuery, theme, params);
+        }
+        text.bound = true;
+        return text;
+    }
+
+    /**
+     * Makes the text of the posts around the given position in the background, once a cell has been bound so that
+     * there are text parameters to make it with.
+     */
+    public void makeAround(
+            @NonNull List<Post> posts, int position, @Nullable String searchQuery, @NonNull Theme theme
+    ) {
+        BackgroundUtils.ensureMainThread();
+        PrecomputedTextCompat.Params params = commentParams;
+        if (params == null) return;
+        boundPosition = position;
+
+        List<Post> toMake = new ArrayList<>();
+        List<CharSequence> sources = new ArrayList<>();
+        List<CharSequence> comments = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = Math.max(0, position - MAKE_BEHIND); i <= position + MAKE_AHEAD && i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (pending.contains(post.no)) continue;
+            PostText text = texts.get(post.no);
+            if (text != null && text.isFor(post, searchQuery, theme, params)) continue;
+            pending.add(post.no);
+            toMake.add(post);
+            // embedding swaps out the comment on this thread, so take the one that is current now; cells set spans on
+            // it on this thread too, so the background gets a copy
+            sources.add(post.comment);
+            comments.add(new SpannedString(post.comment));
+            positions.add(i);
+        }
+        if (toMake.isEmpty()) return;
+
+        BackgroundUtils.runWithExecutor(executor, () -> {
+            List<PostText> made = new ArrayList<>();
+            for (int i = 0; i < toMake.size(); i++) {
+                if (Math.abs(positions.get(i) - boundPosition) > MAKE_AHEAD + MAKE_BEHIND) continue;
+                made.add(new PostText(toMake.get(i), sources.get(i), comments.get(i), searchQuery, theme, params));
+            }
+            return made;
+        }, (made) -> {
+            for (Post post : toMake) {
+                pending.remove(post.no);
+            }
+            for (PostText text : made) {
+                texts.put(text.no, text);
+            }
+        });
+    }
+
+    public void clear() {
+        texts.evictAll();
+    }
+
+    public static class PostText {
+        private final int no;
+        private final CharSequence source;
+        @Nullable
+        private final String searchQuery;
+        private final Theme theme;
+        private final PrecomputedTextCompat.Params params;
+        private boolean bound;
+
+        @Nullable
+        public final CharSequence subject;
+        public final CharSequence name;
+        public final PrecomputedTextCompat comment;
+
+        /**
+         * @param source  the post's comment when this was made, to tell when embedding has replaced it
+         * @param comment the text to make the comment from; the source, or a copy of it off the main thread
+         */
+        private PostText(
+                Post post,
+                CharSequence source,
+                CharSequence comment,
+                @Nullable String searchQuery,
+                Theme theme,
+                PrecomputedTextCompat.Params params
+        ) {
+            no = post.no;
+            this.source = source;
+            this.searchQuery = searchQuery;
+            this.theme = theme;
+            this.params = params;
+
+            subject = post.subjectSpan == null ? null : applySearchSpans(theme, post.subjectSpan, searchQuery);
+            name = applySearchSpans(theme, post.nameTripcodeIdCapcodeSpan, searchQuery);
+            this.comment = PrecomputedTextCompat.create(applySearchSpans(theme, comment, searchQuery), params);
+        }
+
+        /**
+         * Lets the text be given to another cell; called on the main thread.
+         */
+        public void release() {
+            bound = false;
+        }
+
+        private boolean isFor(
+                Post post, @Nullable String searchQuery, Theme theme, PrecomputedTextCompat.Params params
+        ) {
+            return no == post.no && source == post.comment && theme == this.theme
+                    && TextUtils.equals(searchQuery, this.searchQuery) && params.equals(this.params);
+        }
+    }
+}
@@ -373,6 +373,7 @@ public class FiltersController
             sourceList.add(to, filter);
             sourceList = setOrders(sourceList);
             DatabaseUtils.runTask(databaseFilterManager.updateFilters(sourceList));
+            filterEngine.invalidateSnapshot();
             displayList.clear();
             displayList.addAll(sourceList);
             notifyDataSetChanged();
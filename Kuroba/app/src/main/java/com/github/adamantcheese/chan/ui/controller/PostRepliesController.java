@@ -21,6 +21,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -132,7 +133,7 @@ public class PostRepliesController
             }
 
             @Override
-            public boolean showStatusView() {
+            protected boolean showStatusView(@Nullable PostsFilter filter) {
                 return false;
             }
         };
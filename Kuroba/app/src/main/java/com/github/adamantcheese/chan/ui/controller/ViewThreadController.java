@@ -35,6 +35,7 @@ import com.github.adamantcheese.chan.core.presenter.ThreadPresenter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.core.site.archives.ExternalSiteArchive;
+import com.github.adamantcheese.chan.core.site.loader.ThreadArchive;
 import com.github.adamantcheese.chan.core.site.sites.chan4.Chan4;
 import com.github.adamantcheese.chan.ui.layout.ArchivesLayout;
 import com.github.adamantcheese.chan.ui.layout.ThreadLayout;
@@ -61,6 +62,7 @@ import javax.inject.Inject;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.ui.widget.DefaultAlertDialog.getDefaultAlertBuilder;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAttrColor;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 
 public class ViewThreadController
         extends ThreadController
@@ -74,7 +76,8 @@ public class ViewThreadController
     private enum OverflowMenuId {
         REPLY,
         VIEW_ARCHIVE,
-        VIEW_REMOVED
+        VIEW_REMOVED,
+        SAVE_LOCALLY
     }
 
     @Inject
@@ -138,6 +141,7 @@ public class ViewThreadController
                 R.string.view_removed_posts,
                 () -> threadLayout.getPresenter().showRemovedPostsDialog()
         )
+                .withSubItem(OverflowMenuId.SAVE_LOCALLY, R.string.action_save_locally, this::saveLocallyClicked)
                 .withSubItem(R.string.view_my_posts, this::showYourPosts)
                 .withSubItem(R.string.action_open_browser, () -> handleShareAndOpenInBrowser(false))
                 .withSubItem(R.string.action_share, () -> handleShareAndOpenInBrowser(true))
@@ -171,6 +175,35 @@ public class ViewThreadController
         updateDrawerHighlighting(loadable);
     }
 
+    private void saveLocallyClicked() {
+        if (ThreadArchive.isSaved(loadable)) {
+            ThreadArchive.remove(loadable);
+            showToast(context, R.string.thread_local_copy_removed);
+            updateSaveLocallyItem();
+            return;
+        }
+
+        ChanThread thread = threadLayout.getPresenter().getChanThread();
+        if (thread == null) {
+            showToast(context, R.string.thread_save_locally_failed);
+            return;
+        }
+        ThreadArchive.save(thread, (saved) -> {
+            showToast(context, saved ? R.string.thread_saved_locally : R.string.thread_save_locally_failed);
+            updateSaveLocallyItem();
+        });
+    }
+
+    private void updateSaveLocallyItem() {
+        ToolbarMenuSubItem saveLocally = navigation.findSubItem(OverflowMenuId.SAVE_LOCALLY);
+        if (saveLocally != null) {
+            saveLocally.enabled = !(loadable.site instanceof ExternalSiteArchive);
+            saveLocally.text = getString(ThreadArchive.isSaved(loadable)
+                    ? R.string.action_remove_local_copy
+                    : R.string.action_save_locally);
+        }
+    }
+
     public void showYourPosts() {
         if (!threadLayout.getPresenter().isBound() || threadLayout.getPresenter().getChanThread() == null) return;
         List<Post> yourPosts = new ArrayList<>();
@@ -311,6 +344,8 @@ public class ViewThreadController
             removed.enabled = !(loadable.site instanceof ExternalSiteArchive);
         }
 
+        updateSaveLocallyItem();
+
         ToolbarMenuItem item = navigation.findItem(MenuId.PIN);
         item.setVisible(!(loadable.site instanceof ExternalSiteArchive));
         ((ToolbarNavigationController) navigationController).toolbar.invalidate();
@@ -33,11 +33,16 @@ import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
 import com.github.adamantcheese.chan.core.manager.WakeManager;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.RequestLimiter;
+import com.github.adamantcheese.chan.core.net.ThumbnailDiskCache;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.settings.primitives.Setting;
+import com.github.adamantcheese.chan.core.site.common.DefaultPostParser;
+import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.controller.LogsController;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import java.lang.reflect.Field;
@@ -103,6 +108,55 @@ public class DeveloperSettingsController
         summaryText.setPadding(0, dp(5), 0, 0);
         wrapper.addView(summaryText);
 
+        //PARSE EXECUTOR STATS
+        TextView parseStatsText = new TextView(context);
+        parseStatsText.setText("Post parsing (tap to refresh):\n" + BackgroundUtils.parseService.getSummary());
+        parseStatsText.setOnClickListener(v -> parseStatsText.setText(
+                "Post parsing (tap to refresh):\n" + BackgroundUtils.parseService.getSummary()));
+        parseStatsText.setPadding(0, dp(5), 0, 0);
+        wrapper.addView(parseStatsText);
+
+        //COMMENT PARSING STATS
+        TextView commentStatsText = new TextView(context);
+        commentStatsText.setText("Comment parsing (tap to refresh):\n" + DefaultPostParser.getSummary());
+        commentStatsText.setOnClickListener(v -> commentStatsText.setText(
+                "Comment parsing (tap to refresh):\n" + DefaultPostParser.getSummary()));
+        commentStatsText.setPadding(0, dp(5), 0, 0);
+        wrapper.addView(commentStatsText);
+
+        // compare against the stats above by reloading the same threads with this off
+        Switch singlePassSwitch = new Switch(context);
+        singlePassSwitch.setText("Single pass comment parsing");
+        singlePassSwitch.setTextColor(getAttrColor(context, android.R.attr.textColor));
+        singlePassSwitch.setChecked(ChanSettings.singlePassCommentParsing.get());
+        singlePassSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> ChanSettings.singlePassCommentParsing
+                .toggle());
+        wrapper.addView(singlePassSwitch);
+
+        //POST REUSE STATS
+        TextView reuseStatsText = new TextView(context);
+        reuseStatsText.setText("Thread and catalog loads (tap to refresh):\n" + ChanReaderParser.getSummary());
+        reuseStatsText.setOnClickListener(v -> reuseStatsText.setText(
+                "Thread and catalog loads (tap to refresh):\n" + ChanReaderParser.getSummary()));
+        reuseStatsText.setPadding(0, dp(5), 0, 0);
+        wrapper.addView(reuseStatsText);
+
+        //REQUEST LIMITER STATS
+        TextView requestStatsText = new TextView(context);
+        requestStatsText.setText("Requests per host (tap to refresh):\n" + RequestLimiter.getSummary());
+        requestStatsText.setOnClickListener(v -> requestStatsText.setText(
+                "Requests per host (tap to refresh):\n" + RequestLimiter.getSummary()));
+        requestStatsText.setPadding(0, dp(5), 0, 0);
+        wrapper.addView(requestStatsText);
+
+        //THUMBNAIL CACHE STATS
+        TextView thumbnailStatsText = new TextView(context);
+        thumbnailStatsText.setText("Thumbnail disk cache (tap to refresh):\n" + ThumbnailDiskCache.getSummary());
+        thumbnailStatsText.setOnClickListener(v -> thumbnailStatsText.setText(
+                "Thumbnail disk cache (tap to refresh):\n" + ThumbnailDiskCache.getSummary()));
+        thumbnailStatsText.setPadding(0, dp(5), 0, 0);
+        wrapper.addView(thumbnailStatsText);
+
         //APP RESET
         Button resetDbButton = new Button(context);
         resetDbButton.setOnClickListener(v -> {
@@ -242,10 +242,17 @@ public class MediaSettingsController
             requiresRestart.add(loading.add(new IntegerSettingView(this,
                     ChanSettings.fileCacheSize,
                     "File cache size (in MB)",
-                    "File cache size in MB\n(x2 if prefetch enabled)",
+                    "File cache size in MB, half of it for videos\n(x2 if prefetch enabled)",
                     new Pair<>(100, 2000)
             )));
 
+            loading.add(new IntegerSettingView(this,
+                    ChanSettings.savedThreadsSize,
+                    "Saved threads size (in MB)",
+                    "Saved threads size in MB, media included\n(least recently opened threads are removed past this)",
+                    new Pair<>(100, 5000)
+            ));
+
             groups.add(loading);
         }
     }
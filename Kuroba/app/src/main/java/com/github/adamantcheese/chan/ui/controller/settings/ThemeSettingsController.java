@@ -39,6 +39,7 @@ import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
 import com.github.adamantcheese.chan.controller.Controller;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.manager.FilterType;
 import com.github.adamantcheese.chan.core.model.ChanThread;
@@ -71,6 +72,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import javax.inject.Inject;
+
 import okhttp3.HttpUrl;
 
 import static androidx.viewpager2.widget.ViewPager2.ORIENTATION_HORIZONTAL;
@@ -86,6 +89,9 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 public class ThemeSettingsController
         extends Controller {
 
+    @Inject
+    FilterEngine filterEngine;
+
     private final Loadable dummyLoadable = Loadable.emptyLoadable();
 
     {
@@ -334,7 +340,8 @@ public class ThemeSettingsController
         pager.setCurrentItem(i, false);
     }
 
-    final List<Filter> filters = Collections.singletonList(new Filter(true,
+    // injection happens in the Controller constructor, before this is initialized
+    final CompiledFilters filters = filterEngine.compileFilters(Collections.singletonList(new Filter(true,
             FilterType.SUBJECT.flag | FilterType.COMMENT.flag,
             "spacer",
             true,
@@ -345,7 +352,7 @@ public class ThemeSettingsController
             0,
             false,
             false
-    ));
+    )));
     final PostParser postParser = new DefaultPostParser(new CommentParser().addDefaultRules());
 
     private class ThemePostsAdapter
@@ -465,7 +472,7 @@ public class ThemeSettingsController
                 public void onListStatusClicked() {}
             }, holder.theme) {
                 @Override
-                public boolean showStatusView() {
+                protected boolean showStatusView(@Nullable PostsFilter filter) {
                     return false;
                 }
             };
@@ -46,6 +46,7 @@ public class WatchSettingsController
     private SettingView notifyMode;
     private SettingView soundMode;
     private SettingView peekMode;
+    private SettingView boardPagesMode;
 
     public WatchSettingsController(Context context) {
         super(context);
@@ -85,6 +86,7 @@ public class WatchSettingsController
         notifyMode.setEnabled(enabled && ChanSettings.watchEnabled.get());
         soundMode.setEnabled(enabled && ChanSettings.watchEnabled.get());
         peekMode.setEnabled(enabled && ChanSettings.watchEnabled.get());
+        boardPagesMode.setEnabled(ChanSettings.watchEnabled.get());
     }
 
     @Override
@@ -157,6 +159,12 @@ public class WatchSettingsController
                 R.string.setting_watch_peek_description
         ));
 
+        boardPagesMode = settings.add(new BooleanSettingView(this,
+                ChanSettings.watchBoardPages,
+                R.string.setting_watch_board_pages,
+                R.string.setting_watch_board_pages_description
+        ));
+
         groups.add(settings);
     }
 }
@@ -7,14 +7,13 @@ import androidx.annotation.Nullable;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.controller.Controller;
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
-import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.presenter.ThreadPresenter;
 import com.github.adamantcheese.chan.ui.controller.RemovedPostsController;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -38,32 +37,31 @@ public class RemovedPostsHelper {
     }
 
     public void showPosts(List<Post> threadPosts, int threadNo) {
-        DatabaseUtils.runTask(() -> {
-            List<Post> removedPosts = getRemovedPosts(threadPosts, threadNo);
-
+        Loadable loadable = presenter.getLoadable();
+        List<Post> posts = new ArrayList<>(threadPosts);
+        // hides are usually in memory already, but a board that wasn't filtered yet is loaded from the database
+        BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            List<Post> removedPosts = getRemovedPosts(loadable, posts, threadNo);
+            Collections.sort(removedPosts, (o1, o2) -> Integer.compare(o1.no, o2.no));
+            return removedPosts;
+        }, removedPosts -> {
             if (removedPosts.isEmpty()) {
                 showToast(context, R.string.no_removed_posts_for_current_thread);
-                return null;
+                return;
             }
 
-            Collections.sort(removedPosts, (o1, o2) -> Integer.compare(o1.no, o2.no));
-
-            BackgroundUtils.runOnMainThread(() -> {
-                if (controller == null) {
-                    controller = new RemovedPostsController(context, this);
-                    callbacks.presentController(controller);
-                }
-
-                controller.showRemovePosts(removedPosts);
-            });
+            if (controller == null) {
+                controller = new RemovedPostsController(context, this);
+                callbacks.presentController(controller);
+            }
 
-            return null;
+            controller.showRemovePosts(removedPosts);
         });
     }
 
-    private List<Post> getRemovedPosts(List<Post> threadPosts, int threadNo)
-            throws SQLException {
-        List<PostHide> hiddenPosts = instance(DatabaseHideManager.class).getRemovedPostsWithThreadNo(threadNo);
+    private List<Post> getRemovedPosts(Loadable loadable, List<Post> threadPosts, int threadNo) {
+        List<PostHide> hiddenPosts =
+                instance(DatabaseHideManager.class).getRemovedPosts(loadable.siteId, loadable.boardCode, threadNo);
         List<Post> removedPosts = new ArrayList<>();
 
         Map<Integer, PostHide> fastLookupMap = new HashMap<>();
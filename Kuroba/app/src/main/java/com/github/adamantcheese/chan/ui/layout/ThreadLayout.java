@@ -236,12 +236,12 @@ public class ThreadLayout
     }
 
     @Override
-    public void showPosts(ChanThread thread, PostsFilter filter) {
+    public void showPosts(ChanThread thread, PostsFilter filter, Runnable onApplied) {
         if (replyButton.getVisibility() != VISIBLE && !(thread.getLoadable().site instanceof ExternalSiteArchive)) {
             replyButton.show();
         }
 
-        threadListLayout.showPosts(thread, filter, visible != Visible.THREAD);
+        threadListLayout.showPosts(thread, filter, visible != Visible.THREAD, onApplied);
 
         switchVisible(Visible.THREAD);
         callback.onShowPosts(thread.getLoadable());
@@ -381,6 +381,11 @@ public class ThreadLayout
         }
     }
 
+    @Override
+    public void runWhenPostsApplied(Runnable runnable) {
+        threadListLayout.runWhenPostsApplied(runnable);
+    }
+
     @Override
     public void smoothScrollNewPosts(int displayPosition) {
         threadListLayout.smoothScrollNewPosts(displayPosition);
@@ -276,7 +276,7 @@ public class ThreadListLayout
         }
     }
 
-    public void showPosts(ChanThread thread, PostsFilter filter, boolean initial) {
+    public void showPosts(ChanThread thread, PostsFilter filter, boolean initial, Runnable onApplied) {
         showingThread = thread;
         if (initial) {
             reply.getPresenter().bindLoadable(thread.getLoadable());
@@ -306,7 +306,11 @@ public class ThreadListLayout
         setFastScroll(true);
 
         showError(null);
-        postAdapter.setThread(thread, filter);
+        postAdapter.setThread(thread, filter, onApplied);
+    }
+
+    public void runWhenPostsApplied(Runnable runnable) {
+        postAdapter.runWhenApplied(runnable);
     }
 
     public boolean onBack() {
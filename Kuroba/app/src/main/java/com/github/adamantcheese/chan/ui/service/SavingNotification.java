@@ -25,6 +25,7 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.text.format.DateUtils;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
@@ -33,12 +34,15 @@ import com.github.adamantcheese.chan.R;
 
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getNotificationManager;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.postToEventBus;
+import static com.github.adamantcheese.chan.utils.PostUtils.getReadableFileSize;
 
 public class SavingNotification
         extends Service {
     public static final String DONE_TASKS_KEY = "done_tasks";
     public static final String FAILED_TASKS_KEY = "failed_tasks";
     public static final String TOTAL_TASKS_KEY = "total_tasks";
+    public static final String BYTES_PER_SECOND_KEY = "bytes_per_second";
+    public static final String SECONDS_LEFT_KEY = "seconds_left";
     private static final String CANCEL_KEY = "cancel";
 
     private static final String NOTIFICATION_ID_STR = "3";
@@ -92,8 +96,12 @@ public class SavingNotification
                 int doneTasks = extras.getInt(DONE_TASKS_KEY);
                 int failedTasks = extras.getInt(FAILED_TASKS_KEY);
                 int totalTasks = extras.getInt(TOTAL_TASKS_KEY);
+                long bytesPerSecond = extras.getLong(BYTES_PER_SECOND_KEY, -1);
+                long secondsLeft = extras.getLong(SECONDS_LEFT_KEY, -1);
                 //replace the notification with the generated one
-                startForeground(NOTIFICATION_ID, getNotification(doneTasks, failedTasks, totalTasks));
+                startForeground(NOTIFICATION_ID,
+                        getNotification(doneTasks, failedTasks, totalTasks, bytesPerSecond, secondsLeft)
+                );
                 return START_STICKY;
             }
         }
@@ -106,7 +114,7 @@ public class SavingNotification
         return START_NOT_STICKY;
     }
 
-    private Notification getNotification(int done, int failed, int total) {
+    private Notification getNotification(int done, int failed, int total, long bytesPerSecond, long secondsLeft) {
         Intent intent = new Intent(this, SavingNotification.class);
         intent.putExtra(CANCEL_KEY, true);
         PendingIntent pendingIntent = PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
@@ -119,6 +127,17 @@ public class SavingNotification
                 .setContentInfo(done + "/" + failed + "/" + total)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true);
+        if (bytesPerSecond > 0) {
+            String speed = getReadableFileSize(bytesPerSecond);
+            if (secondsLeft >= 0) {
+                builder.setSubText(getString(R.string.image_save_notification_speed_left,
+                        speed,
+                        DateUtils.formatElapsedTime(secondsLeft)
+                ));
+            } else {
+                builder.setSubText(getString(R.string.image_save_notification_speed, speed));
+            }
+        }
 
         return builder.build();
     }
@@ -54,6 +54,10 @@ public class BackgroundUtils {
 
     public static final ScheduledExecutorService backgroundScheduledService = Executors.newScheduledThreadPool(1);
 
+    // Only for parsing posts, kept apart from the above so that a load isn't queued behind unrelated work
+    public static final PriorityExecutor parseService =
+            new PriorityExecutor(Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+
     public static boolean isInForeground() {
         return ((Chan) getAppContext()).getApplicationInForeground();
     }
@@ -0,0 +1,113 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of mutable bitmaps for {@link android.graphics.BitmapFactory.Options#inBitmap}, so that decoding
+ * thumbnails doesn't have to allocate a fresh bitmap for every image.<br>
+ * Bitmaps are kept in buckets by the power of two their allocation size rounds down to; a bitmap can be reused for any
+ * image that needs at most its allocation size, so a request looks in the bucket of the size it needs and the ones
+ * next to it.<br>
+ * Only give this bitmaps that nothing else can still be drawing, like the intermediate ones from decoding and scaling.
+ */
+public class BitmapPool {
+    private static final int MAX_POOL_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_PER_BUCKET = 4;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<Bitmap>[] buckets = new ArrayDeque[32];
+    private static int pooledBytes;
+
+    /**
+     * @return a bitmap that can be reused for an image of the given size, or null if there's none
+     */
+    @Nullable
+    public static synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        if (needed <= 0 || needed > MAX_POOL_BYTES) return null;
+
+        int bucket = ceilLog2(needed);
+        for (int i = Math.max(0, bucket - 1); i <= bucket + 1 && i < buckets.length; i++) {
+            ArrayDeque<Bitmap> candidates = buckets[i];
+            if (candidates == null) continue;
+            for (Bitmap candidate : candidates) {
+                if (candidate.getAllocationByteCount() >= needed) {
+                    candidates.remove(candidate);
+                    pooledBytes -= candidate.getAllocationByteCount();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands a bitmap that is no longer used to the pool, or recycles it if the pool is full.
+     */
+    public static synchronized void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+
+        int size = bitmap.getAllocationByteCount();
+        // a bitmap is only useful for images that fit in it, so bucket it by what it can surely hold
+        int bucket = floorLog2(size);
+        if (!bitmap.isMutable() || pooledBytes + size > MAX_POOL_BYTES || bucket < 0 || bucket >= buckets.length) {
+            bitmap.recycle();
+            return;
+        }
+
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new ArrayDeque<>();
+        }
+        ArrayDeque<Bitmap> bucketBitmaps = buckets[bucket];
+        if (bucketBitmaps.size() >= MAX_PER_BUCKET) {
+            Bitmap oldest = bucketBitmaps.removeFirst();
+            pooledBytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+        bucketBitmaps.addLast(bitmap);
+        pooledBytes += size;
+    }
+
+    public static synchronized void clear() {
+        for (ArrayDeque<Bitmap> bucket : buckets) {
+            if (bucket == null) continue;
+            for (Bitmap bitmap : bucket) {
+                bitmap.recycle();
+            }
+            bucket.clear();
+        }
+        pooledBytes = 0;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+
+    private static int floorLog2(long value) {
+        return 63 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static int ceilLog2(long value) {
+        return value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+    }
+}
@@ -19,6 +19,7 @@ import com.github.adamantcheese.chan.core.presenter.ImageReencodingPresenter;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.google.common.io.Files;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -46,6 +47,9 @@ public class BitmapUtils {
 
     private static final BitmapFactory.Options options = new BitmapFactory.Options();
 
+    private static final int BOUNDS_BUFFER_SIZE = 16 * 1024;
+    private static final int BOUNDS_MARK_LIMIT = 1024 * 1024;
+
     static {
         options.inMutable = true;
     }
@@ -183,7 +187,11 @@ public class BitmapUtils {
     }
 
     /**
-     * Decode the given byte data into a Bitmap, scaling it if necessary.
+     * Decode the given byte data into a Bitmap, scaling it if necessary.<br>
+     * When a max size is given, the image's bounds are read first so that it can be decoded at the largest power of
+     * two subsampling that still leaves it at least that size, instead of at full resolution; JPEGs, which can't have
+     * transparency, are then also decoded at 16 bits per pixel. Intermediate bitmaps are reused through the
+     * {@link BitmapPool}.
      *
      * @param data      bytes to decode
      * @param maxWidth  the max width of the image
@@ -191,14 +199,82 @@ public class BitmapUtils {
      * @return a bitmap, scaled to the max width and height if needed
      */
     public static Bitmap decode(InputStream data, int maxWidth, int maxHeight) {
-        Bitmap tempBitmap = BitmapFactory.decodeStream(data);
-        if (tempBitmap == null || options.outWidth == -1 || options.outHeight == -1) return null;
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            return BitmapFactory.decodeStream(data);
+        }
+
+        // bounds are in the image's header, this is only so that a large header doesn't break the reset
+        InputStream stream = new BufferedInputStream(data, BOUNDS_BUFFER_SIZE);
+        stream.mark(BOUNDS_MARK_LIMIT);
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(stream, null, decodeOptions);
+        try {
+            stream.reset();
+        } catch (IOException e) {
+            Logger.e(TAG, "Image header too large to decode bounds", e);
+            return null;
+        }
+        if (decodeOptions.outWidth <= 0 || decodeOptions.outHeight <= 0) return null;
+
+        int desiredWidth = getResizedDimension(maxWidth, maxHeight, decodeOptions.outWidth, decodeOptions.outHeight);
+        int desiredHeight = getResizedDimension(maxHeight, maxWidth, decodeOptions.outHeight, decodeOptions.outWidth);
+        int sampleSize = 1;
+        while (decodeOptions.outWidth / (sampleSize * 2) >= desiredWidth
+                && decodeOptions.outHeight / (sampleSize * 2) >= desiredHeight) {
+            sampleSize *= 2;
+        }
+
+        decodeOptions.inJustDecodeBounds = false;
+        decodeOptions.inSampleSize = sampleSize;
+        decodeOptions.inMutable = true;
+        decodeOptions.inPreferredConfig =
+                "image/jpeg".equals(decodeOptions.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        // the decoder rounds sampled dimensions up
+        decodeOptions.inBitmap = BitmapPool.get((decodeOptions.outWidth + sampleSize - 1) / sampleSize,
+                (decodeOptions.outHeight + sampleSize - 1) / sampleSize,
+                decodeOptions.inPreferredConfig
+        );
+
+        // marked again, so that a failed decode into the pooled bitmap can be retried without it
+        stream.mark(BOUNDS_MARK_LIMIT);
+        Bitmap tempBitmap;
+        try {
+            tempBitmap = BitmapFactory.decodeStream(stream, null, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap couldn't be reused after all
+            Logger.w(TAG, "Could not decode into a pooled bitmap, retrying without it", e);
+            if (decodeOptions.inBitmap != null) {
+                decodeOptions.inBitmap.recycle();
+                decodeOptions.inBitmap = null;
+            }
+            try {
+                stream.reset();
+                tempBitmap = BitmapFactory.decodeStream(stream, null, decodeOptions);
+            } catch (IOException | IllegalArgumentException e1) {
+                // more than the mark limit was read already
+                Logger.e(TAG, "Could not retry decoding without a pooled bitmap", e1);
+                return null;
+            }
+        }
+        if (tempBitmap == null) {
+            BitmapPool.put(decodeOptions.inBitmap);
+            return null;
+        }
 
         // Scale this image, if necessary
-        return scaleBitmap(tempBitmap, maxWidth, maxHeight);
+        Bitmap result = scaleBitmap(tempBitmap, maxWidth, maxHeight, false);
+        if (result != tempBitmap) {
+            BitmapPool.put(tempBitmap);
+        }
+        return result;
     }
 
     private static Bitmap scaleBitmap(Bitmap input, int maxWidth, int maxHeight) {
+        return scaleBitmap(input, maxWidth, maxHeight, true);
+    }
+
+    private static Bitmap scaleBitmap(Bitmap input, int maxWidth, int maxHeight, boolean recycleInput) {
         int actualWidth = input.getWidth();
         int actualHeight = input.getHeight();
 
@@ -210,7 +286,9 @@ public class BitmapUtils {
         Bitmap bitmap;
         if (actualWidth > desiredWidth || actualHeight > desiredHeight) {
             bitmap = Bitmap.createScaledBitmap(input, desiredWidth, desiredHeight, true);
-            input.recycle();
+            if (recycleInput) {
+                input.recycle();
+            }
         } else {
             bitmap = input;
         }
@@ -89,4 +89,87 @@ public class JavaUtils {
             throw new UnsupportedOperationException("Prevented in this class!");
         }
     }
+
+    /**
+     * A minimal open-addressed hash set of primitive ints, for hot lookups where boxing every check is wasteful.
+     * Writes are not thread-safe; once fully built it is safe to share for concurrent reads.
+     */
+    public static class IntHashSet {
+        private int[] table;
+        private int size;
+        // 0 marks an empty slot in the table, so it is tracked separately
+        private boolean containsZero;
+
+        public IntHashSet() {
+            this(8);
+        }
+
+        public IntHashSet(int expectedSize) {
+            // keep the load factor at or below 1/2
+            table = new int[Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1];
+        }
+
+        public boolean add(int value) {
+            if (value == 0) {
+                if (containsZero) return false;
+                containsZero = true;
+                size++;
+                return true;
+            }
+
+            if ((size + 1) * 2 > table.length) {
+                resize(table.length * 2);
+            }
+
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != 0) {
+                if (table[i] == value) return false;
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            size++;
+            return true;
+        }
+
+        public boolean contains(int value) {
+            if (value == 0) return containsZero;
+
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != 0) {
+                if (table[i] == value) return true;
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void resize(int capacity) {
+            int[] old = table;
+            table = new int[capacity];
+            int mask = capacity - 1;
+            for (int value : old) {
+                if (value == 0) continue;
+                int i = mix(value) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = value;
+            }
+        }
+
+        // post numbers are mostly sequential, so spread them out over the table
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
 }
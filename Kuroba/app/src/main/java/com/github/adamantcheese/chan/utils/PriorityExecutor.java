@@ -0,0 +1,172 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks on a work-stealing {@link ForkJoinPool}, but whenever a worker frees up it takes the highest priority task
+ * that is waiting, so that whatever is on screen isn't stuck behind background work that was submitted earlier.<br>
+ * Tasks of the same priority run in the order they were submitted.<br>
+ * Keeps some simple statistics on queueing and run times, see {@link #getSummary()}.
+ */
+public class PriorityExecutor {
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    private final ForkJoinPool pool;
+    private final PriorityBlockingQueue<Job<?>> pending = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    public PriorityExecutor(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Priority priority) {
+        Job<T> job = new Job<>(task, priority, sequence.getAndIncrement());
+        pending.add(job);
+        updateMax(maxQueued, pending.size());
+        // every submitted job gets exactly one run; which job that run picks up is decided when a worker is free
+        pool.execute(this::runNext);
+        return job;
+    }
+
+    /**
+     * Submits all of the given tasks and waits for them to complete, the same as
+     * {@link java.util.concurrent.ExecutorService#invokeAll(Collection)}.
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, Priority priority)
+            throws InterruptedException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(submit(task, priority));
+        }
+        try {
+            for (Future<T> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException | CancellationException ignored) {
+                    // retrieved by the caller through the returned future
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return futures;
+    }
+
+    private void runNext() {
+        Job<?> job = pending.poll();
+        if (job == null) return;
+
+        long start = System.nanoTime();
+        long wait = start - job.submitTime;
+        totalWaitNanos.addAndGet(wait);
+        updateMax(maxWaitNanos, wait);
+
+        running.incrementAndGet();
+        try {
+            job.run();
+        } finally {
+            running.decrementAndGet();
+            totalRunNanos.addAndGet(System.nanoTime() - start);
+            completed.incrementAndGet();
+        }
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public String getSummary() {
+        long done = completed.get();
+        long avgWait = done == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / done);
+        long avgRun = done == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRunNanos.get() / done);
+        return String.format(Locale.ENGLISH,
+                "Workers: %d (%d active), steals: %d\nQueued: %d (max %d), running: %d, completed: %d\n"
+                        + "Average wait: %d µs (max %d ms), average run: %d µs",
+                pool.getParallelism(),
+                pool.getActiveThreadCount(),
+                pool.getStealCount(),
+                pending.size(),
+                maxQueued.get(),
+                running.get(),
+                done,
+                avgWait,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                avgRun
+        );
+    }
+
+    private static class Job<T>
+            extends FutureTask<T>
+            implements Comparable<Job<?>> {
+        private final Priority priority;
+        private final long order;
+        private final long submitTime = System.nanoTime();
+
+        public Job(Callable<T> callable, Priority priority, long order) {
+            super(callable);
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(@NonNull Job<?> o) {
+            int byPriority = priority.compareTo(o.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, o.order);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index of every three-character run (trigram) in some texts, for narrowing down a case-insensitive substring
+ * search without scanning all of them. A text can only contain the query if it contains every trigram of the query, so
+ * a search here returns the texts that might match; they still have to be checked with
+ * {@link StringUtils#containsIgnoreCase(CharSequence, CharSequence)}, which is what decides.<br>
+ * Texts are added under an int key, like a post number, and a version of their contents. Adding is incremental: a key
+ * that was already indexed at the same version is skipped, so something that grows, like a thread, can just add
+ * everything again and only new or changed keys do any work. A changed key is indexed again as a new document; the old
+ * one is left behind, which only means a few more candidates to check.
+ */
+public class SearchIndex {
+    private static final int GRAM = 3;
+
+    // trigram -> the documents it appears in, in the order they were added
+    private final Map<Long, Postings> postings = new HashMap<>();
+    // key -> the version it was last indexed at
+    private final Map<Integer, Integer> indexedVersions = new HashMap<>();
+    // document -> the key it was added under
+    private int[] keys = new int[16];
+    private int documents;
+
+    /**
+     * Indexes all the given texts under the key, as one document; nothing happens if the key was already indexed at
+     * this version.
+     */
+    public synchronized void add(int key, int version, @NonNull CharSequence... texts) {
+        Integer indexedVersion = indexedVersions.put(key, version);
+        if (indexedVersion != null && indexedVersion == version) return;
+
+        int document = documents++;
+        if (document == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[document] = key;
+
+        for (CharSequence text : texts) {
+            if (text == null || text.length() < GRAM) continue;
+            // the same case folding as containsIgnoreCase, so that the two can't disagree
+            String lower = text.toString().toLowerCase(Locale.ENGLISH);
+            for (int i = 0; i + GRAM <= lower.length(); i++) {
+                long gram = gram(lower, i);
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(gram, list);
+                }
+                list.add(document);
+            }
+        }
+    }
+
+    /**
+     * @return the keys of everything that might contain the query, or null if the query is too short to narrow anything
+     * down and everything has to be checked
+     */
+    @Nullable
+    public synchronized IntHashSet search(@NonNull CharSequence query) {
+        if (query.length() < GRAM) return null;
+
+        String lower = query.toString().toLowerCase(Locale.ENGLISH);
+        List<Postings> needed = new ArrayList<>();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            Postings list = postings.get(gram(lower, i));
+            if (list == null) return new IntHashSet(); // nothing has this part of the query
+            needed.add(list);
+        }
+
+        // intersect the rarest ones first, the result can only get smaller
+        Collections.sort(needed, (a, b) -> Integer.compare(a.size, b.size));
+        int[] matches = Arrays.copyOf(needed.get(0).documents, needed.get(0).size);
+        int matchCount = matches.length;
+        for (int n = 1; n < needed.size() && matchCount > 0; n++) {
+            Postings list = needed.get(n);
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < matchCount; i++) {
+                // both are in ascending document order
+                while (j < list.size && list.documents[j] < matches[i]) j++;
+                if (j < list.size && list.documents[j] == matches[i]) {
+                    matches[kept++] = matches[i];
+                }
+            }
+            matchCount = kept;
+        }
+
+        IntHashSet result = new IntHashSet(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            result.add(keys[matches[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * @return how many documents have been indexed, including ones for keys that were indexed again since
+     */
+    public synchronized int size() {
+        return documents;
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    private static class Postings {
+        private int[] documents = new int[4];
+        private int size;
+
+        private void add(int document) {
+            // documents are indexed one at a time, so a repeat of a trigram in the same one is always the last entry
+            if (size > 0 && documents[size - 1] == document) return;
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilterAutomatonTest {
+    @Test
+    public void emptyAutomatonMatchesNothing() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().build();
+        assertTrue(automaton.isEmpty());
+        assertArrayEquals(new int[]{-1, -1, -1, -1}, automaton.scan("anything at all", 2));
+    }
+
+    @Test
+    public void findsTheFirstMatchOfEachFilter() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().add(0, "foo", false).add(1, "bar", false).build();
+        int[] hits = automaton.scan("xx bar foo bar", 3);
+        assertArrayEquals(new int[]{7, 10, 3, 6, -1, -1}, hits);
+    }
+
+    @Test
+    public void foldsAsciiCaseOnly() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().add(0, "FoO", false).add(1, "é", false).build();
+        int[] hits = automaton.scan("a FOO and É", 2);
+        assertEquals(2, hits[0]);
+        // the same as Pattern.CASE_INSENSITIVE without UNICODE_CASE
+        assertEquals(-1, hits[2]);
+    }
+
+    @Test
+    public void boundedLiteralsOnlyMatchWholeWords() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().add(0, "cat", true).build();
+        assertEquals(-1, automaton.scan("concatenate", 1)[0]);
+        assertEquals(-1, automaton.scan("cats", 1)[0]);
+        assertEquals(-1, automaton.scan("cat_", 1)[0]);
+        assertEquals(0, automaton.scan("cat", 1)[0]);
+        assertEquals(2, automaton.scan("a cat.", 1)[0]);
+        // the first one isn't a word, the second one is
+        assertEquals(12, automaton.scan("concatenate cat", 1)[0]);
+    }
+
+    @Test
+    public void findsOverlappingLiteralsThroughFailureLinks() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().add(0, "he", false)
+                .add(1, "she", false)
+                .add(2, "his", false)
+                .add(3, "hers", false)
+                .build();
+        assertArrayEquals(new int[]{2, 4, 1, 4, -1, -1, 2, 6}, automaton.scan("ushers", 4));
+    }
+
+    @Test
+    public void aFilterWithSeveralLiteralsMatchesOnTheEarliestEnd() {
+        FilterAutomaton automaton = new FilterAutomaton.Builder().add(0, "abc", false).add(0, "b", false).build();
+        assertArrayEquals(new int[]{1, 2}, automaton.scan("abc", 1));
+    }
+
+    @Test
+    public void agreesWithRegexes() {
+        Random random = new Random(1234);
+        int filterCount = 40;
+        FilterAutomaton.Builder builder = new FilterAutomaton.Builder();
+        String[] literals = new String[filterCount];
+        Pattern[] patterns = new Pattern[filterCount];
+        for (int filter = 0; filter < filterCount; filter++) {
+            String literal = randomText(random, 1 + random.nextInt(4), "abcAB");
+            literals[filter] = literal;
+            boolean bounded = random.nextBoolean();
+            builder.add(filter, literal, bounded);
+            String quoted = Pattern.quote(literal);
+            patterns[filter] = Pattern.compile(bounded ? "\\b" + quoted + "\\b" : quoted, Pattern.CASE_INSENSITIVE);
+        }
+        FilterAutomaton automaton = builder.build();
+
+        for (int t = 0; t < 500; t++) {
+            String text = randomText(random, random.nextInt(40), "abcAB _.");
+            int[] hits = automaton.scan(text, filterCount);
+            for (int filter = 0; filter < filterCount; filter++) {
+                boolean matched = hits[filter * 2] >= 0;
+                assertEquals(patterns[filter] + " in \"" + text + "\"", patterns[filter].matcher(text).find(), matched);
+                if (matched) {
+                    // the reported range has to be an actual occurrence
+                    String found = text.substring(hits[filter * 2], hits[filter * 2 + 1]);
+                    assertTrue(found + " for " + literals[filter], literals[filter].equalsIgnoreCase(found));
+                }
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
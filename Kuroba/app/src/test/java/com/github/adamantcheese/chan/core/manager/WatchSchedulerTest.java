@@ -0,0 +1,127 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WatchSchedulerTest {
+    private FakeMainThread mainThread;
+    private WatchScheduler<String> scheduler;
+
+    @Before
+    public void setUp() {
+        mainThread = new FakeMainThread();
+        scheduler = new WatchScheduler<>(mainThread);
+    }
+
+    @Test
+    public void itemsAreDueAfterTheirDelayPlusJitter() {
+        scheduler.schedule("a", 10000);
+        long wait = scheduler.getTimeUntilNextDue();
+        // up to a tenth of the delay, or a second for short ones
+        assertTrue(String.valueOf(wait), wait >= 10000 && wait < 11000);
+
+        mainThread.now = 9999;
+        assertEquals(Collections.emptyList(), scheduler.pollDue(0));
+        mainThread.now = 11000;
+        assertEquals(Collections.singletonList("a"), scheduler.pollDue(0));
+        assertEquals(Collections.emptyList(), scheduler.pollDue(0));
+        assertEquals(-1, scheduler.getTimeUntilNextDue());
+    }
+
+    @Test
+    public void dueItemsComeOutInOrder() {
+        scheduler.schedule("later", 60000);
+        scheduler.schedule("soon", 0);
+        scheduler.schedule("middle", 20000);
+        mainThread.now = 100000;
+        assertEquals(Arrays.asList("soon", "middle", "later"), scheduler.pollDue(0));
+    }
+
+    @Test
+    public void pollingCanLookAhead() {
+        scheduler.schedule("a", 10000);
+        assertEquals(Collections.emptyList(), scheduler.pollDue(5000));
+        assertEquals(Collections.singletonList("a"), scheduler.pollDue(11000));
+    }
+
+    @Test
+    public void schedulingAgainReplacesTheEarlierTime() {
+        scheduler.schedule("a", 1000);
+        scheduler.schedule("a", 100000);
+        mainThread.now = 50000;
+        assertEquals(Collections.emptyList(), scheduler.pollDue(0));
+
+        scheduler.scheduleIfAbsent("a", 0);
+        assertEquals(Collections.emptyList(), scheduler.pollDue(0));
+        mainThread.now = 200000;
+        assertEquals(Collections.singletonList("a"), scheduler.pollDue(0));
+    }
+
+    @Test
+    public void removedItemsAreNeverDue() {
+        scheduler.schedule("a", 0);
+        scheduler.schedule("b", 0);
+        scheduler.remove("a");
+        mainThread.now = 10000;
+        assertEquals(Collections.singletonList("b"), scheduler.pollDue(0));
+    }
+
+    @Test
+    public void dispatchSpacesOutWorkPerSite() {
+        List<String> ran = new ArrayList<>();
+        scheduler.dispatch(1, () -> ran.add("first"));
+        scheduler.dispatch(1, () -> ran.add("second"));
+        scheduler.dispatch(1, () -> ran.add("third"));
+        scheduler.dispatch(2, () -> ran.add("other site"));
+        assertEquals(Arrays.asList("first", "other site"), ran);
+        assertEquals(Arrays.asList(1000L, 2000L), mainThread.delays);
+
+        mainThread.now = 60000;
+        scheduler.dispatch(1, () -> ran.add("much later"));
+        assertEquals("much later", ran.get(ran.size() - 1));
+        assertEquals(2, mainThread.delays.size());
+    }
+
+    private static class FakeMainThread
+            implements WatchScheduler.MainThread {
+        private long now;
+        private final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            delays.add(delayMs);
+        }
+
+        @Override
+        public void ensureOn() {}
+    }
+}
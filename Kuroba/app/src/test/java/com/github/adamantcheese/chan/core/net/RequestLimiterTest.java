@@ -0,0 +1,206 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import com.github.adamantcheese.chan.utils.PriorityExecutor.Priority;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hosts are kept for the lifetime of the process, so every test uses its own host. None of them start more calls
+ * than a host has tokens for, so nothing waits on the token bucket to refill.
+ */
+public class RequestLimiterTest {
+    private static final Callback IGNORED = new Callback() {
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {}
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) {}
+    };
+
+    @Test
+    public void highPriorityStartsRightAwayAndIsNotCounted() {
+        String host = "high.test";
+        List<FakeCall> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FakeCall call = new FakeCall(host);
+            assertSame(call, RequestLimiter.enqueue(call, IGNORED, Priority.HIGH));
+            calls.add(call);
+        }
+        FakeCall low = new FakeCall(host);
+        RequestLimiter.enqueue(low, IGNORED, Priority.LOW);
+
+        for (FakeCall call : calls) {
+            assertTrue(call.isExecuted());
+        }
+        assertTrue(low.isExecuted());
+    }
+
+    @Test
+    public void lowPriorityWaitsForARunningCallToFinish() {
+        String host = "low.test";
+        FakeCall first = new FakeCall(host);
+        FakeCall second = new FakeCall(host);
+        FakeCall third = new FakeCall(host);
+        RecordingCallback callback = new RecordingCallback();
+        RequestLimiter.enqueue(first, callback, Priority.LOW);
+        RequestLimiter.enqueue(second, IGNORED, Priority.LOW);
+        RequestLimiter.enqueue(third, IGNORED, Priority.LOW);
+        assertTrue(first.isExecuted());
+        assertTrue(second.isExecuted());
+        assertFalse(third.isExecuted());
+
+        first.fail();
+        assertEquals(1, callback.failures);
+        assertTrue(third.isExecuted());
+    }
+
+    @Test
+    public void higherPrioritiesSkipTheQueue() {
+        String host = "order.test";
+        FakeCall first = new FakeCall(host);
+        FakeCall second = new FakeCall(host);
+        FakeCall queuedLow = new FakeCall(host);
+        FakeCall normal = new FakeCall(host);
+        RequestLimiter.enqueue(first, IGNORED, Priority.LOW);
+        RequestLimiter.enqueue(second, IGNORED, Priority.LOW);
+        RequestLimiter.enqueue(queuedLow, IGNORED, Priority.LOW);
+        RequestLimiter.enqueue(normal, IGNORED, Priority.NORMAL);
+        assertTrue(normal.isExecuted());
+        assertFalse(queuedLow.isExecuted());
+
+        // a finishing normal call doesn't free up room for low ones
+        normal.fail();
+        assertFalse(queuedLow.isExecuted());
+        second.fail();
+        assertTrue(queuedLow.isExecuted());
+    }
+
+    @Test
+    public void cancelingAQueuedCallDropsItFromTheQueue() {
+        String host = "cancel.test";
+        FakeCall first = new FakeCall(host);
+        FakeCall second = new FakeCall(host);
+        FakeCall queued = new FakeCall(host);
+        RecordingCallback callback = new RecordingCallback();
+        RequestLimiter.enqueue(first, IGNORED, Priority.LOW);
+        RequestLimiter.enqueue(second, IGNORED, Priority.LOW);
+        Call limited = RequestLimiter.enqueue(queued, callback, Priority.LOW);
+        assertNotSame(queued, limited);
+
+        limited.cancel();
+        assertTrue(queued.isCanceled());
+        // handed to OkHttp as is, so that it fails the callback with the usual cancellation
+        assertSame(callback, queued.callback);
+
+        FakeCall next = new FakeCall(host);
+        RequestLimiter.enqueue(next, IGNORED, Priority.LOW);
+        assertFalse(next.isExecuted());
+        first.fail();
+        assertTrue(next.isExecuted());
+    }
+
+    private static class RecordingCallback
+            implements Callback {
+        private int failures;
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            failures++;
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) {}
+    }
+
+    private static class FakeCall
+            implements Call {
+        private final Request request;
+        private Callback callback;
+        private boolean canceled;
+
+        private FakeCall(String host) {
+            request = new Request.Builder().url("https://" + host + "/").build();
+        }
+
+        private void fail() {
+            callback.onFailure(this, new IOException("failed"));
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @NotNull
+        @Override
+        public Response execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return callback != null;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @NotNull
+        @Override
+        public Call clone() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
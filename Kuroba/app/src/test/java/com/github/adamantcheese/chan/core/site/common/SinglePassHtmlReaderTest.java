@@ -0,0 +1,164 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.common;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the single-pass reader sees the same elements, text and next siblings as a walk over the Jsoup document,
+ * for comments the way 4chan sends them.
+ */
+public class SinglePassHtmlReaderTest {
+    private static final String[] COMMENTS = {
+            "plain text only",
+            "<a href=\"#p123456\" class=\"quotelink\">&gt;&gt;123456</a><br>I agree",
+            "<a href=\"#p123456\" class=\"quotelink\">&gt;&gt;123456</a><br><a href=\"#p123457\" "
+                    + "class=\"quotelink\">&gt;&gt;123457</a><br>both of you",
+            "<a href=\"/g/thread/1234#p1235\" class=\"quotelink\">&gt;&gt;1235</a>",
+            "<a href=\"//boards.4chan.org/v/\" class=\"quotelink\">&gt;&gt;&gt;/v/</a> is that way",
+            "<span class=\"quote\">&gt;be me</span><br><span class=\"quote\">&gt;post on 4chan</span><br>why",
+            "<span class=\"deadlink\">&gt;&gt;98765</span><br>deleted",
+            "<s>spoiler</s> after the spoiler",
+            "trailing space after a spoiler <s>here</s> ",
+            "<b>bold <i>and italic</i></b><u>underline</u>",
+            "<pre class=\"prettyprint\">int main() {\n    return 0;\n}</pre>after code",
+            "<pre class=\"prettyprint\">\nleading newline</pre>",
+            "<span class=\"fortune\" style=\"color:#ff0000\"><br><br><b>Your fortune: Very Bad Luck</b></span>",
+            "regular post<br><br><strong style=\"color: red;\">(USER WAS BANNED FOR THIS POST)</strong>",
+            "<span class=\"sjis\">(´･ω･`)</span>",
+            "http://example.com/some/very/long<wbr>/path",
+            "a &lt; b &amp;&amp; c &gt; d, it&#039;s &quot;quoted&quot;",
+            "entities like &hearts; and &#x263A; too",
+            "not a tag: 1 < 2 and <3",
+            "<b>x</b><!-- a comment -->",
+            "<b>x</b><!-- a comment -->after",
+            "<B>upper</B> case",
+            "<a href=#p1 class=quotelink>&gt;&gt;1</a>",
+            "<b>stray end tag</b></i>after it",
+            "<b>never closed",
+            "<p>first paragraph</p><p>second paragraph</p>",
+            "<p>first</p>\n<p>second</p>\n",
+            "<br/>self closing<br />",
+    };
+
+    // these get restructured by Jsoup's tree builder, so they're left to it
+    private static final String[] FULL_PARSE_COMMENTS = {
+            "<table class=\"exif\"><tr><td>Make</td><td>Canon</td></tr></table>",
+            "<ul><li>one</li><li>two</li></ul>",
+            "<b><i>misnested</b></i>",
+            "<p>paragraph<div>block</div></p>",
+            "<a href=\"#p1\">one<a href=\"#p2\">two</a></a>",
+            "stray</p>end",
+            "<td>cell outside of a table</td>",
+    };
+
+    @Test
+    public void sameTreeAsJsoup() {
+        for (String comment : COMMENTS) {
+            StringBuilder read = new StringBuilder();
+            assertTrue(comment, SinglePassHtmlReader.read(comment, read, new DumpHandler()));
+            assertEquals(comment, jsoupDump(comment), read.toString());
+        }
+    }
+
+    @Test
+    public void restructuredHtmlNeedsFullParse() {
+        for (String comment : FULL_PARSE_COMMENTS) {
+            assertFalse(comment, SinglePassHtmlReader.read(comment, new StringBuilder(), new DumpHandler()));
+        }
+    }
+
+    @Test
+    public void lastChildHasNoNextSibling() {
+        StringBuilder read = new StringBuilder();
+        SinglePassHtmlReader.read("<span class=\"quote\">&gt;text</span><br>", read, new DumpHandler());
+        assertEquals("<span class=\"quote\" +>&gt;text</span><br></br>", read.toString());
+    }
+
+    private static String jsoupDump(String html) {
+        StringBuilder dump = new StringBuilder();
+        for (Node node : Jsoup.parseBodyFragment(html).body().childNodes()) {
+            dumpNode(dump, node);
+        }
+        return dump.toString();
+    }
+
+    private static void dumpNode(StringBuilder dump, Node node) {
+        if (node instanceof TextNode) {
+            dump.append(escape(((TextNode) node).getWholeText()));
+        } else if (node instanceof Element) {
+            Element element = (Element) node;
+            StringBuilder content = new StringBuilder();
+            for (Node child : element.childNodes()) {
+                dumpNode(content, child);
+            }
+            dumpElement(dump, element.tagName(), element.attributes(), content, element.nextSibling() != null);
+        }
+        // comments don't show up, but they still count as siblings
+    }
+
+    private static void dumpElement(
+            StringBuilder dump, String name, Attributes attributes, CharSequence content, boolean hasNextSibling
+    ) {
+        List<String> sorted = new ArrayList<>();
+        for (Attribute attribute : attributes) {
+            sorted.add(attribute.getKey() + "=\"" + escape(attribute.getValue()) + "\"");
+        }
+        Collections.sort(sorted);
+        dump.append('<').append(name);
+        for (String attribute : sorted) {
+            dump.append(' ').append(attribute);
+        }
+        dump.append(hasNextSibling ? " +>" : ">").append(content).append("</").append(name).append('>');
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static class DumpHandler
+            implements SinglePassHtmlReader.Handler<StringBuilder> {
+        @Override
+        public StringBuilder open(String name, Attributes attributes) {
+            return new StringBuilder();
+        }
+
+        @Override
+        public void text(StringBuilder parent, String text) {
+            parent.append(escape(text));
+        }
+
+        @Override
+        public void close(StringBuilder parent, StringBuilder content, Element element, boolean hasNextSibling) {
+            dumpElement(parent, element.tagName(), element.attributes(), content, hasNextSibling);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+
+public class PostRateEstimatorTest {
+    // post times are in seconds, like the server sends them
+    private static final long START = 1600000000;
+
+    @Test
+    public void withoutTwoPostsLoadsAtTheShortestInterval() {
+        PostRateEstimator estimator = new PostRateEstimator();
+        assertEquals(PostRateEstimator.MIN_INTERVAL, estimator.getInterval(now(START), false, false));
+        estimator.addPostTime(START);
+        assertEquals(PostRateEstimator.MIN_INTERVAL, estimator.getInterval(now(START + 600), false, false));
+    }
+
+    @Test
+    public void expectsTheNextPostOneAverageGapAfterTheLast() {
+        PostRateEstimator estimator = withPostsEvery(60, 10);
+        long last = START + 9 * 60;
+        assertEquals(SECONDS.toMillis(40), estimator.getInterval(now(last + 20), false, false));
+    }
+
+    @Test
+    public void quietThreadsWaitHalfAsLongAsTheyHaveBeenQuiet() {
+        PostRateEstimator estimator = withPostsEvery(60, 10);
+        long last = START + 9 * 60;
+        assertEquals(SECONDS.toMillis(300), estimator.getInterval(now(last + 600), false, false));
+        assertEquals(HOURS.toMillis(1), estimator.getInterval(now(last + 10 * 3600), false, false));
+    }
+
+    @Test
+    public void recentGapsCountTheMost() {
+        PostRateEstimator estimator = new PostRateEstimator();
+        estimator.addPostTime(START);
+        estimator.addPostTime(START + 100);
+        estimator.addPostTime(START + 120);
+        // 0.25 * 20 + 0.75 * 100
+        assertEquals(SECONDS.toMillis(80), estimator.getInterval(now(START + 120), false, false));
+    }
+
+    @Test
+    public void olderPostsAreIgnored() {
+        PostRateEstimator estimator = new PostRateEstimator();
+        estimator.addPostTime(START);
+        estimator.addPostTime(START + 100);
+        estimator.addPostTime(START + 50);
+        estimator.addPostTime(START + 100);
+        assertEquals(SECONDS.toMillis(100), estimator.getInterval(now(START + 100), false, false));
+    }
+
+    @Test
+    public void postTimesInTheFutureCountAsJustNow() {
+        PostRateEstimator estimator = withPostsEvery(60, 3);
+        assertEquals(SECONDS.toMillis(60), estimator.getInterval(now(START), false, false));
+    }
+
+    @Test
+    public void stickiesAndEndingThreadsAreClamped() {
+        PostRateEstimator fast = withPostsEvery(12, 5);
+        long fastLast = START + 4 * 12;
+        assertEquals(SECONDS.toMillis(12), fast.getInterval(now(fastLast), false, false));
+        assertEquals(SECONDS.toMillis(30), fast.getInterval(now(fastLast), true, false));
+
+        PostRateEstimator slow = withPostsEvery(3600, 5);
+        long slowLast = START + 4 * 3600;
+        assertEquals(MINUTES.toMillis(30), slow.getInterval(now(slowLast + 1800), false, false));
+        assertEquals(MINUTES.toMillis(5), slow.getInterval(now(slowLast + 1800), false, true));
+        assertEquals(MINUTES.toMillis(5), slow.getInterval(now(slowLast + 1800), true, true));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        PostRateEstimator estimator = withPostsEvery(3600, 5);
+        estimator.reset();
+        assertEquals(PostRateEstimator.MIN_INTERVAL, estimator.getInterval(now(START), false, false));
+    }
+
+    private static PostRateEstimator withPostsEvery(long seconds, int count) {
+        PostRateEstimator estimator = new PostRateEstimator();
+        for (int i = 0; i < count; i++) {
+            estimator.addPostTime(START + i * seconds);
+        }
+        return estimator;
+    }
+
+    private static long now(long seconds) {
+        return SECONDS.toMillis(seconds);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import com.github.adamantcheese.chan.core.site.loader.ThreadDiskCache.OpStats;
+import com.github.adamantcheese.chan.core.site.loader.ThreadDiskCache.Records;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Posts here are plain strings, as the log itself doesn't care what's in a post record.
+ */
+public class ThreadDiskCacheTest {
+    private File file;
+
+    @Before
+    public void setUp()
+            throws IOException {
+        file = File.createTempFile("thread", null);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void readsBackACompleteLoad()
+            throws IOException {
+        writeLoad(true, Arrays.asList("op", "reply"), new OpStats(1, 2, 3, true, false, true, 1234), "Mon", "\"a\"", 7);
+
+        Records<String> records = read(file);
+        assertEquals(Arrays.asList("op", "reply"), records.posts);
+        assertEquals(1, records.opStats.replies);
+        assertEquals(2, records.opStats.images);
+        assertEquals(3, records.opStats.uniqueIps);
+        assertTrue(records.opStats.sticky);
+        assertFalse(records.opStats.closed);
+        assertTrue(records.opStats.archived);
+        assertEquals(1234, records.opStats.lastModified);
+        assertTrue(records.deletedNos.contains(7));
+        assertEquals(1, records.deletedNos.size());
+        assertEquals("Mon", records.lastModified);
+        assertEquals("\"a\"", records.etag);
+        assertFalse(records.cutShort);
+    }
+
+    @Test
+    public void filesStartWithTheFormatVersion()
+            throws IOException {
+        writeLoad(true, Collections.singletonList("op"), stats(1), null, null);
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            assertEquals(0x4B544843, in.readInt());
+            assertEquals(2, in.readInt());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4B544843);
+        out.writeInt(1);
+        out.write(ThreadDiskCache.encode(Collections.singletonList("op"),
+                ThreadDiskCache::writeString,
+                stats(1),
+                Collections.<Integer>emptyList()
+        ));
+        try {
+            read(bytes.toByteArray());
+            fail("Read a version 1 file");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void appendedLoadsAddPostsAndReplaceEverythingElse()
+            throws IOException {
+        writeLoad(true, Arrays.asList("op", "reply"), stats(1), "Mon", "\"a\"", 7);
+        writeLoad(false, Collections.singletonList("new reply"), stats(2), "Tue", null, 7, 8);
+
+        Records<String> records = read(file);
+        assertEquals(Arrays.asList("op", "reply", "new reply"), records.posts);
+        assertEquals(2, records.opStats.replies);
+        assertTrue(records.deletedNos.contains(8));
+        assertEquals(2, records.deletedNos.size());
+        assertEquals("Tue", records.lastModified);
+        assertNull(records.etag);
+    }
+
+    @Test
+    public void completeLoadsStartOver()
+            throws IOException {
+        writeLoad(true, Arrays.asList("op", "reply"), stats(1), null, null, 7);
+        writeLoad(true, Collections.singletonList("other op"), stats(0), null, null);
+
+        Records<String> records = read(file);
+        assertEquals(Collections.singletonList("other op"), records.posts);
+        assertTrue(records.deletedNos.isEmpty());
+    }
+
+    @Test
+    public void appendingNeedsAnExistingFile()
+            throws IOException {
+        assertTrue(file.delete());
+        assertFalse(writeLoad(false, Collections.singletonList("reply"), stats(1), null, null));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void aLoadThatWasCutShortIsDropped()
+            throws IOException {
+        writeLoad(true, Arrays.asList("op", "reply"), stats(1), "Mon", null, 7);
+        long firstLoadEnd = file.length();
+        writeLoad(false, Arrays.asList("second", "third"), stats(3), "Tue", null, 7, 8);
+        byte[] full = Files.readAllBytes(file.toPath());
+
+        for (int length = (int) firstLoadEnd; length < full.length; length++) {
+            Records<String> records = read(Arrays.copyOf(full, length));
+            assertEquals(Arrays.asList("op", "reply"), records.posts);
+            assertEquals(1, records.opStats.replies);
+            assertEquals(1, records.deletedNos.size());
+            assertEquals("Mon", records.lastModified);
+            assertEquals("cut at " + length, length > firstLoadEnd, records.cutShort);
+        }
+        assertEquals(Arrays.asList("op", "reply", "second", "third"), read(full).posts);
+    }
+
+    @Test
+    public void aCutShortFirstLoadLeavesNothing()
+            throws IOException {
+        writeLoad(true, Arrays.asList("op", "reply"), stats(1), "Mon", null);
+        byte[] full = Files.readAllBytes(file.toPath());
+
+        // past the header, the records are there but never counted
+        for (int length = 8; length < full.length; length++) {
+            Records<String> records = read(Arrays.copyOf(full, length));
+            assertTrue(records.posts.isEmpty());
+            assertNull(records.opStats);
+            assertNull(records.lastModified);
+        }
+        for (int length = 0; length < 8; length++) {
+            try {
+                read(Arrays.copyOf(full, length));
+                fail("Read a file without a header, cut at " + length);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void unknownRecordsFailTheWholeFile()
+            throws IOException {
+        writeLoad(true, Collections.singletonList("op"), stats(1), null, null);
+        byte[] full = Files.readAllBytes(file.toPath());
+        byte[] withUnknown = Arrays.copyOf(full, full.length + 1);
+        withUnknown[full.length] = 99;
+        try {
+            read(withUnknown);
+            fail("Read an unknown record");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void stringsCanBeLongOrMissing()
+            throws IOException {
+        StringBuilder longString = new StringBuilder();
+        while (longString.length() < 100000) {
+            longString.append("ÿ日本語 ");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ThreadDiskCache.writeString(out, longString.toString());
+        ThreadDiskCache.writeString(out, null);
+        ThreadDiskCache.writeString(out, "");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(longString.toString(), ThreadDiskCache.readString(in));
+        assertNull(ThreadDiskCache.readString(in));
+        assertEquals("", ThreadDiskCache.readString(in));
+    }
+
+    private boolean writeLoad(
+            boolean complete, List<String> posts, OpStats op, String lastModified, String etag, Integer... deletedNos
+    )
+            throws IOException {
+        byte[] records = ThreadDiskCache.encode(posts, ThreadDiskCache::writeString, op, Arrays.asList(deletedNos));
+        return ThreadDiskCache.write(file, records, complete, lastModified, etag);
+    }
+
+    private static OpStats stats(int replies) {
+        return new OpStats(replies, 0, 0, false, false, false, 0);
+    }
+
+    private static Records<String> read(File file)
+            throws IOException {
+        return read(Files.readAllBytes(file.toPath()));
+    }
+
+    private static Records<String> read(byte[] bytes)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        return ThreadDiskCache.readRecords(in, ThreadDiskCache::readString);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntHashSetTest {
+    @Test
+    public void addsEachValueOnce() {
+        IntHashSet set = new IntHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(12345));
+        assertFalse(set.add(12345));
+        assertTrue(set.contains(12345));
+        assertFalse(set.contains(12346));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void zeroIsAValueLikeAnyOther() {
+        IntHashSet set = new IntHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertFalse(set.isEmpty());
+    }
+
+    @Test
+    public void growsPastItsExpectedSize() {
+        IntHashSet set = new IntHashSet(4);
+        // sequential, like post numbers in a thread
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.add(400000000 + i));
+        }
+        assertEquals(10000, set.size());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.contains(400000000 + i));
+        }
+        assertFalse(set.contains(400000000 - 1));
+        assertFalse(set.contains(400000000 + 10000));
+    }
+
+    @Test
+    public void agreesWithHashSet() {
+        Random random = new Random(42);
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            // a small range so that there are plenty of repeats, and negative values and zero
+            int value = random.nextInt(4000) - 2000;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.contains(value), set.contains(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (int value = -2000; value < 2000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.utils;
+
+import com.github.adamantcheese.chan.utils.JavaUtils.IntHashSet;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+    @Test
+    public void queriesUnderThreeCharactersCantBeNarrowedDown() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, 0, "some text");
+        assertNull(index.search(""));
+        assertNull(index.search("so"));
+    }
+
+    @Test
+    public void findsTextsContainingTheQuery() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, 0, "Hello World");
+        index.add(2, 0, "goodbye world");
+        index.add(3, 0, "nothing to see");
+
+        IntHashSet hits = index.search("WORLD");
+        assertTrue(hits.contains(1));
+        assertTrue(hits.contains(2));
+        assertFalse(hits.contains(3));
+    }
+
+    @Test
+    public void allTextsOfAKeyAreOneDocument() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, 0, "subject", null, "a comment", "");
+        assertTrue(index.search("subject").contains(1));
+        assertTrue(index.search("comment").contains(1));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void missingTrigramMeansNoCandidates() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, 0, "abcdef");
+        assertTrue(index.search("xyz").isEmpty());
+        // every trigram of the query is there, but not the query itself; still a candidate, the caller checks
+        index.add(2, 0, "abca cab");
+        assertTrue(index.search("abcab").contains(2));
+    }
+
+    @Test
+    public void sameVersionIsOnlyIndexedOnce() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, 0, "first text");
+        index.add(1, 0, "first text");
+        assertEquals(1, index.size());
+
+        index.add(1, 1, "edited text");
+        assertEquals(2, index.size());
+        assertTrue(index.search("edited").contains(1));
+    }
+
+    @Test
+    public void neverMissesAMatch() {
+        Random random = new Random(7);
+        SearchIndex index = new SearchIndex();
+        String[] texts = new String[500];
+        for (int key = 0; key < texts.length; key++) {
+            texts[key] = randomText(random, 20 + random.nextInt(200));
+            index.add(key, 0, texts[key]);
+        }
+
+        for (int q = 0; q < 200; q++) {
+            String query;
+            if (q % 2 == 0) {
+                // taken from a text, so that there is at least one match
+                String source = texts[random.nextInt(texts.length)];
+                int start = random.nextInt(source.length() - 5);
+                query = source.substring(start, start + 3 + random.nextInt(3)).toUpperCase(Locale.ENGLISH);
+            } else {
+                query = randomText(random, 3 + random.nextInt(3));
+            }
+            IntHashSet candidates = index.search(query);
+            String lowerQuery = query.toLowerCase(Locale.ENGLISH);
+            for (int key = 0; key < texts.length; key++) {
+                if (texts[key].toLowerCase(Locale.ENGLISH).contains(lowerQuery)) {
+                    assertTrue(query + " in " + texts[key], candidates.contains(key));
+                }
+            }
+        }
+    }
+
+    // a small alphabet, so that trigrams repeat across texts
+    private static String randomText(Random random, int length) {
+        String alphabet = "abcdeABCDE ";
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}